@@ -0,0 +1,147 @@
+package com.slayerz.dfagame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds the DFAs, regexes and inputs the benchmarks run on. Everything is seeded, so runs are comparable.
+ */
+public class BenchmarkFixtures {
+
+    /**
+     * Regexes chosen to be hard on one engine or another: subset construction blowup, nested stars that make
+     * backtracking matchers explode, and long exact counts.
+     */
+    public static final String[] ADVERSARIAL_REGEXES = {
+            "(0|1)*1(0|1){9}",
+            "(0|0*)*(1|1*)*0",
+            "((0|1)(0|1)(0|1))*|(0|1){21}",
+            "(0*1*)*0{12}",
+    };
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * Builds a complete DFA over the game alphabet with random transitions and accept states.
+     *
+     * @param size The number of states.
+     * @param seed The seed of the random generator.
+     * @return The DFA.
+     */
+    public static DFA randomDFA(int size, long seed) {
+        Random random = new Random(seed);
+        DFA dfa = new DFA(0);
+
+        List<State> states = new ArrayList<State>();
+        states.add(dfa.getStart());
+        for (int i = 1; i < size; i++) {
+            states.add(dfa.addLaidOutState(random.nextBoolean()));
+        }
+        for (State q : states) {
+            for (char c : DFA.ALPHABET.toCharArray()) {
+                dfa.addTransition(q, states.get(random.nextInt(size)), String.valueOf(c));
+            }
+        }
+        return dfa;
+    }
+
+    /**
+     * Builds a complete DFA laid out on a square of the grid, with each transition going to a random state at most two
+     * spaces away, as a large drawn DFA would be.
+     *
+     * @param size The number of states.
+     * @param boxDIM The width of the boxes on the grid.
+     * @param seed The seed of the random generator.
+     * @return The DFA.
+     */
+    public static DFA gridDFA(int size, int boxDIM, long seed) {
+        Random random = new Random(seed);
+        DFA dfa = new DFA(boxDIM);
+        int side = (int) Math.ceil(Math.sqrt(size));
+
+        State[][] grid = new State[side][side];
+        grid[0][0] = dfa.getStart();
+        for (int i = 1; i < size; i++) {
+            State q = new State(random.nextBoolean(), boxDIM, dfa.STATE_RAD);
+            dfa.addState(1 + i / side, 1 + i % side, q);
+            grid[i / side][i % side] = q;
+        }
+        for (int i = 0; i < size; i++) {
+            for (char c : DFA.ALPHABET.toCharArray()) {
+                State target = null;
+                while (target == null) {
+                    int r = i / side + random.nextInt(5) - 2, col = i % side + random.nextInt(5) - 2;
+                    if (r >= 0 && r < side && col >= 0 && col < side) {
+                        target = grid[r][col];
+                    }
+                }
+                dfa.addTransition(grid[i / side][i % side], target, String.valueOf(c));
+            }
+        }
+        return dfa;
+    }
+
+    /**
+     * Builds the NFA of {@code (0|1)*1(0|1){n}}: strings whose (n + 1)th symbol from the end is a 1. It has n + 2 states,
+     * but the smallest DFA for the same language has 2^(n + 1).
+     *
+     * @param n The number of symbols after the 1.
+     * @return The NFA.
+     */
+    public static DFA suffixNFA(int n) {
+        DFA nfa = new DFA(0, Alphabet.BINARY, true);
+        State previous = nfa.getStart();
+        nfa.addTransition(previous, previous, DFA.ALPHABET);
+        for (int i = 0; i <= n; i++) {
+            State next = nfa.addLaidOutState(i == n);
+            nfa.addTransition(previous, next, i == 0 ? "1" : DFA.ALPHABET);
+            previous = next;
+        }
+        return nfa;
+    }
+
+    /**
+     * Builds a random regex over the game alphabet.
+     *
+     * @param size The number of literals in the regex.
+     * @param seed The seed of the random generator.
+     * @return The regex.
+     */
+    public static String randomRegex(int size, long seed) {
+        return randomRegex(size, new Random(seed));
+    }
+
+    private static String randomRegex(int size, Random random) {
+        if (size <= 1) {
+            return String.valueOf(DFA.ALPHABET.charAt(random.nextInt(DFA.ALPHABET.length())));
+        }
+
+        int left = 1 + random.nextInt(size - 1);
+        switch (random.nextInt(3)) {
+            case 0:
+                return "(" + randomRegex(left, random) + "|" + randomRegex(size - left, random) + ")";
+            case 1:
+                return randomRegex(left, random) + randomRegex(size - left, random);
+            default:
+                return "(" + randomRegex(left, random) + ")*" + randomRegex(size - left, random);
+        }
+    }
+
+    /**
+     * Builds a random string over the game alphabet.
+     *
+     * @param length The length of the string.
+     * @param seed The seed of the random generator.
+     * @return The string.
+     */
+    public static String randomString(int length, long seed) {
+        Random random = new Random(seed);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = DFA.ALPHABET.charAt(random.nextInt(DFA.ALPHABET.length()));
+        }
+        return new String(chars);
+    }
+}
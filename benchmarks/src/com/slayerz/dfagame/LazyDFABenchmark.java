@@ -0,0 +1,64 @@
+package com.slayerz.dfagame;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures running an NFA whose smallest DFA is exponentially large through a {@link LazyDFA}: with a cache large enough
+ * to hold every set the input reaches, with one so small it thrashes and falls back, and by plain set simulation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LazyDFABenchmark {
+
+    /**
+     * The NFA has n + 2 states and its smallest DFA 2^(n + 1).
+     */
+    @Param({"10", "30"})
+    public int n;
+
+    @Param({"1000"})
+    public int inputLength;
+
+    private LazyDFA warm;
+    private LazyDFA thrashing;
+    private String input;
+
+    @Setup
+    public void setUp() {
+        DFA nfa = BenchmarkFixtures.suffixNFA(n);
+        warm = new LazyDFA(nfa, LazyDFA.DEFAULT_CACHE_SIZE);
+        thrashing = new LazyDFA(nfa, 16);
+        input = BenchmarkFixtures.randomString(inputLength, 7);
+    }
+
+    @Benchmark
+    public boolean matches() {
+        return warm.matches(input);
+    }
+
+    @Benchmark
+    public boolean matchesThrashing() {
+        return thrashing.matches(input);
+    }
+
+    @Benchmark
+    public boolean simulate() {
+        return warm.simulate(input, 0, input.length());
+    }
+}
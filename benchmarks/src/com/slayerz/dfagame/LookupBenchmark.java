@@ -0,0 +1,87 @@
+package com.slayerz.dfagame;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures single transitions through {@link Delta} and whole-string runs through {@link DFA#acceptsString(String)} and
+ * through the compiled {@link Matcher}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LookupBenchmark {
+
+    @Param({"5", "50", "500", "5000"})
+    public int states;
+
+    @Param({"1000"})
+    public int inputLength;
+
+    private DFA dfa;
+    private Delta delta;
+    private com.slayerz.dfagame.State[] allStates;
+    private String input;
+    private Matcher matcher;
+    private char[] chars;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        dfa = BenchmarkFixtures.randomDFA(states, 42);
+        delta = dfa.getTransitionFunction();
+        allStates = dfa.getStates().toArray(new com.slayerz.dfagame.State[0]);
+        input = BenchmarkFixtures.randomString(inputLength, 7);
+        matcher = dfa.compile();
+        chars = input.toCharArray();
+    }
+
+    @Benchmark
+    public com.slayerz.dfagame.State getNextState() {
+        next = (next + 1) % allStates.length;
+        return delta.GetNextState(allStates[next], DFA.ALPHABET.charAt(next & 1));
+    }
+
+    @Benchmark
+    public int getNextStateById() {
+        next = (next + 1) % delta.stateCount();
+        return delta.GetNextState(next, DFA.ALPHABET.charAt(next & 1));
+    }
+
+    @Benchmark
+    public boolean acceptsString() {
+        return dfa.acceptsString(input);
+    }
+
+    @Benchmark
+    public boolean matcherOnString() {
+        return matcher.matches(input);
+    }
+
+    @Benchmark
+    public boolean matcherOnChars() {
+        return matcher.matches(chars, 0, chars.length);
+    }
+
+    @Benchmark
+    public void acceptsPrefixes(Blackhole blackhole) {
+        for (int length = 0; length <= input.length(); length += 100) {
+            blackhole.consume(dfa.acceptsString(input.substring(0, length)));
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.slayerz.dfagame;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures drawing a panel-sized view of a large board with {@link DFA#draw(Graphics2D)}, moving the view a little on
+ * every call as panning does, and finding the state under a point.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark {
+
+    private static final int BOX_DIM = 100;
+    private static final int VIEW = 800;
+
+    @Param({"100", "10000"})
+    public int states;
+
+    /**
+     * The pixels a unit of the board takes in the view, so 0.1 shows about a hundred times as many states as 1.
+     */
+    @Param({"1", "0.1"})
+    public double scale;
+
+    private DFA dfa;
+    private BufferedImage image;
+    private Graphics2D g2d;
+    private int side;
+    private int offset;
+
+    @Setup
+    public void setUp() {
+        dfa = BenchmarkFixtures.gridDFA(states, BOX_DIM, 42);
+        side = (int) Math.ceil(Math.sqrt(states)) * BOX_DIM;
+        image = new BufferedImage(VIEW, VIEW, BufferedImage.TYPE_INT_RGB);
+        g2d = image.createGraphics();
+        g2d.setClip(0, 0, VIEW, VIEW);
+        g2d.scale(scale, scale);
+        dfa.draw(g2d);
+    }
+
+    @TearDown
+    public void tearDown() {
+        g2d.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage drawView() {
+        offset = (offset + 16) % side;
+        g2d.translate(-offset, -offset);
+        dfa.draw(g2d);
+        g2d.translate(offset, offset);
+        return image;
+    }
+
+    @Benchmark
+    public boolean onState() {
+        offset = (offset + 16) % side;
+        return dfa.onState(offset, offset);
+    }
+}
@@ -0,0 +1,84 @@
+package com.slayerz.dfagame;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures checking a DFA against a regex: string enumeration, simulation over all strings and the full verification.
+ * <p>
+ * Enumeration is measured at a fixed length rather than at the pumping length, which is far too long to enumerate for
+ * the larger DFAs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VerificationBenchmark {
+
+    @Param({"5", "50", "500", "5000"})
+    public int states;
+
+    /**
+     * Either "random" for a seeded random regex or an index into {@link BenchmarkFixtures#ADVERSARIAL_REGEXES}.
+     */
+    @Param({"random", "0", "1", "2", "3"})
+    public String regexKind;
+
+    @Param({"16"})
+    public int enumerationLength;
+
+    private DFA dfa;
+    private String regex;
+
+    @Setup
+    public void setUp() {
+        dfa = BenchmarkFixtures.randomDFA(states, 42);
+        regex = regexKind.equals("random") ? BenchmarkFixtures.randomRegex(12, 11)
+                : BenchmarkFixtures.ADVERSARIAL_REGEXES[Integer.parseInt(regexKind)];
+    }
+
+    @Benchmark
+    public List<String> generateBinaryStrings() {
+        return dfa.GenerateBinaryStrings(enumerationLength);
+    }
+
+    @Benchmark
+    public BitSet testOnAllBits() {
+        return dfa.testOnAllBits(enumerationLength);
+    }
+
+    @Benchmark
+    public boolean matchesRegex() {
+        return dfa.MatchesRegex(regex);
+    }
+
+    @Benchmark
+    public Counterexample findCounterexample() {
+        return dfa.findCounterexample(regex);
+    }
+
+    @Benchmark
+    public DFA compileRegex() {
+        return RegexCompiler.compile(regex, DFA.ALPHABET);
+    }
+
+    @Benchmark
+    public MinimalForm minimize() {
+        return MinimalForm.of(dfa);
+    }
+}
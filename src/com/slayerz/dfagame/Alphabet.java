@@ -0,0 +1,346 @@
+package com.slayerz.dfagame;
+
+import java.util.Arrays;
+
+/**
+ * An immutable set of characters, stored as sorted, disjoint, non adjacent ranges.
+ * <p>
+ * Used both for the alphabet a DFA reads and for the characters a transition reads, so a transition on every lowercase
+ * letter is one range rather than 26 characters. Sets are written the way a regex character class is, without the
+ * brackets: single characters and ranges such as {@code a-z}, with a backslash escaping {@code -} and {@code \}. Runs of
+ * two characters are written out in full, so the binary alphabet is still {@code 01}.
+ */
+public final class Alphabet {
+
+    /**
+     * The alphabet of the game, {@code 01}.
+     */
+    public static final Alphabet BINARY = ofChars(DFA.ALPHABET);
+
+    public static final Alphabet EMPTY = new Alphabet(new int[0]);
+
+    /**
+     * Every character.
+     */
+    public static final Alphabet ALL = new Alphabet(new int[]{Character.MIN_VALUE, Character.MAX_VALUE});
+
+    /**
+     * Pairs of (low, high) bounds, both inclusive, in ascending order. Ranges neither overlap nor touch.
+     */
+    private final int[] ranges;
+
+    private Alphabet(int[] ranges) {
+        this.ranges = ranges;
+    }
+
+    /**
+     * @param low The first character of the range.
+     * @param high The last character of the range.
+     * @return The characters from low to high, both included. Empty if high comes before low.
+     */
+    public static Alphabet range(char low, char high) {
+        return low > high ? EMPTY : new Alphabet(new int[]{low, high});
+    }
+
+    /**
+     * @param chars Some characters, taken literally.
+     * @return The set of those characters.
+     */
+    public static Alphabet ofChars(String chars) {
+        int[] bounds = new int[2 * chars.length()];
+        for (int i = 0; i < chars.length(); i++) {
+            bounds[2 * i] = chars.charAt(i);
+            bounds[2 * i + 1] = chars.charAt(i);
+        }
+        return normalize(bounds, bounds.length);
+    }
+
+    /**
+     * Reads a set written like the inside of a regex character class, e.g. {@code 01}, {@code a-z} or {@code a-zA-Z_}.
+     * A backslash takes the next character literally, except for {@code \t}, {@code \n}, {@code \r}, {@code \s} (a space)
+     * and {@code \}{@code uXXXX}, which stand for characters that can't be written plainly.
+     *
+     * @param spec The set.
+     * @return The characters described.
+     * @throws IllegalArgumentException If a range is backwards or an escape is left dangling or malformed.
+     */
+    public static Alphabet parse(String spec) {
+        // Undo the escapes first, remembering which characters were escaped so an escaped '-' isn't taken for a range
+        char[] chars = new char[spec.length()];
+        boolean[] literal = new boolean[spec.length()];
+        int length = 0;
+        int pos = 0;
+        while (pos < spec.length()) {
+            char c = spec.charAt(pos++);
+            if (c == '\\') {
+                if (pos == spec.length()) {
+                    throw new IllegalArgumentException("Dangling '\\' in " + spec);
+                }
+                c = spec.charAt(pos++);
+                switch (c) {
+                    case 't':
+                        c = '\t';
+                        break;
+                    case 'n':
+                        c = '\n';
+                        break;
+                    case 'r':
+                        c = '\r';
+                        break;
+                    case 's':
+                        c = ' ';
+                        break;
+                    case 'u':
+                        try {
+                            c = (char) Integer.parseInt(spec.substring(pos, pos + 4), 16);
+                        } catch (RuntimeException e) {
+                            throw new IllegalArgumentException("Bad '\\u' escape in " + spec);
+                        }
+                        pos += 4;
+                        break;
+                    default:
+                        break;
+                }
+                literal[length] = true;
+            }
+            chars[length++] = c;
+        }
+
+        int[] bounds = new int[2 * length];
+        int size = 0;
+        pos = 0;
+        while (pos < length) {
+            char low = chars[pos++];
+            char high = low;
+            if (pos + 1 < length && chars[pos] == '-' && !literal[pos]) {
+                high = chars[pos + 1];
+                pos += 2;
+                if (high < low) {
+                    throw new IllegalArgumentException("Bad range " + low + "-" + high + " in " + spec);
+                }
+            }
+            bounds[size++] = low;
+            bounds[size++] = high;
+        }
+        return normalize(bounds, size);
+    }
+
+    /**
+     * Sorts ranges and merges the ones that overlap or touch.
+     */
+    private static Alphabet normalize(int[] bounds, int size) {
+        int count = size / 2;
+        long[] packed = new long[count];
+        for (int i = 0; i < count; i++) {
+            packed[i] = ((long) bounds[2 * i] << 32) | bounds[2 * i + 1];
+        }
+        Arrays.sort(packed);
+
+        int[] merged = new int[size];
+        int n = 0;
+        for (long p : packed) {
+            int low = (int) (p >>> 32);
+            int high = (int) p;
+            if (n > 0 && low <= merged[n - 1] + 1) {
+                merged[n - 1] = Math.max(merged[n - 1], high);
+            } else {
+                merged[n++] = low;
+                merged[n++] = high;
+            }
+        }
+        return new Alphabet(Arrays.copyOf(merged, n));
+    }
+
+    /**
+     * @return The number of ranges.
+     */
+    public int rangeCount() {
+        return ranges.length / 2;
+    }
+
+    /**
+     * @param i The index of a range.
+     * @return Its first character.
+     */
+    public char low(int i) {
+        return (char) ranges[2 * i];
+    }
+
+    /**
+     * @param i The index of a range.
+     * @return Its last character.
+     */
+    public char high(int i) {
+        return (char) ranges[2 * i + 1];
+    }
+
+    /**
+     * @return The number of characters in the set.
+     */
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            size += ranges[i + 1] - ranges[i] + 1;
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return ranges.length == 0;
+    }
+
+    public boolean contains(char c) {
+        // Binary search for the last range starting at or before c
+        int lo = 0;
+        int hi = rangeCount() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ranges[2 * mid] <= c) {
+                if (c <= ranges[2 * mid + 1]) {
+                    return true;
+                }
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return True if every character of other is in this set.
+     */
+    public boolean containsAll(Alphabet other) {
+        return other.minus(this).isEmpty();
+    }
+
+    /**
+     * @param index A position in the set, from 0 (inclusive) to {@link #size()} (exclusive).
+     * @return The character at that position, counting in ascending order.
+     */
+    public char charAt(int index) {
+        for (int i = 0; i < ranges.length; i += 2) {
+            int length = ranges[i + 1] - ranges[i] + 1;
+            if (index < length) {
+                return (char) (ranges[i] + index);
+            }
+            index -= length;
+        }
+        throw new IndexOutOfBoundsException("No character at " + index + " in " + this);
+    }
+
+    public Alphabet union(Alphabet other) {
+        int[] bounds = Arrays.copyOf(ranges, ranges.length + other.ranges.length);
+        System.arraycopy(other.ranges, 0, bounds, ranges.length, other.ranges.length);
+        return normalize(bounds, bounds.length);
+    }
+
+    public Alphabet intersect(Alphabet other) {
+        int[] bounds = new int[ranges.length + other.ranges.length];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < ranges.length && j < other.ranges.length) {
+            int low = Math.max(ranges[i], other.ranges[j]);
+            int high = Math.min(ranges[i + 1], other.ranges[j + 1]);
+            if (low <= high) {
+                bounds[n++] = low;
+                bounds[n++] = high;
+            }
+            if (ranges[i + 1] < other.ranges[j + 1]) {
+                i += 2;
+            } else {
+                j += 2;
+            }
+        }
+        return new Alphabet(Arrays.copyOf(bounds, n));
+    }
+
+    /**
+     * @return The characters of this set that aren't in other.
+     */
+    public Alphabet minus(Alphabet other) {
+        return intersect(other.complement());
+    }
+
+    /**
+     * @return Every character not in this set.
+     */
+    public Alphabet complement() {
+        int[] bounds = new int[ranges.length + 2];
+        int n = 0;
+        int next = Character.MIN_VALUE;
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] > next) {
+                bounds[n++] = next;
+                bounds[n++] = ranges[i] - 1;
+            }
+            next = ranges[i + 1] + 1;
+        }
+        if (next <= Character.MAX_VALUE) {
+            bounds[n++] = next;
+            bounds[n++] = Character.MAX_VALUE;
+        }
+        return new Alphabet(Arrays.copyOf(bounds, n));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Alphabet && Arrays.equals(ranges, ((Alphabet) o).ranges);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(ranges);
+    }
+
+    /**
+     * @return The set in the form read by {@link #parse(String)}.
+     */
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < ranges.length; i += 2) {
+            appendEscaped(s, (char) ranges[i]);
+            if (ranges[i + 1] - ranges[i] > 1) {
+                s.append('-');
+            }
+            if (ranges[i + 1] != ranges[i]) {
+                appendEscaped(s, (char) ranges[i + 1]);
+            }
+        }
+        return s.toString();
+    }
+
+    /**
+     * Escapes '-', the backslash and anything blank or unprintable, so the set reads back as one word: the text formats split
+     * lines on whitespace.
+     */
+    private static void appendEscaped(StringBuilder s, char c) {
+        switch (c) {
+            case '-':
+            case '\\':
+                s.append('\\').append(c);
+                break;
+            case '\t':
+                s.append("\\t");
+                break;
+            case '\n':
+                s.append("\\n");
+                break;
+            case '\r':
+                s.append("\\r");
+                break;
+            case ' ':
+                s.append("\\s");
+                break;
+            default:
+                if (Character.isWhitespace(c) || Character.isSpaceChar(c) || Character.isISOControl(c)) {
+                    s.append(String.format("\\u%04x", (int) c));
+                } else {
+                    s.append(c);
+                }
+                break;
+        }
+    }
+}
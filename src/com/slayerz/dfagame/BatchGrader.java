@@ -0,0 +1,408 @@
+package com.slayerz.dfagame;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Grades a whole cohort of submissions without opening a window.
+ * <p>
+ * The submissions are laid out one directory per exercise, either on disk or in a zip archive. Each exercise directory
+ * holds a file named {@value #REGEX_FILE} whose first line is the regex to match, optionally a file named
+ * {@value #ALPHABET_FILE} whose first line is the alphabet (binary if there is none), and one {@code .dfa} file per
+ * submission in the format of {@link SubmissionFormat}. Every regex is compiled once, then the submissions are split
+ * over a fork/join pool and graded independently. The results are written as tab separated values, one line per
+ * submission in the order they were found.
+ * <p>
+ * Usage: {@code BatchGrader <directory or zip> <results file> [threads]}
+ */
+public class BatchGrader {
+
+    /**
+     * The name of the file holding the regex of an exercise.
+     */
+    public static final String REGEX_FILE = "regex";
+
+    /**
+     * The name of the file holding the alphabet of an exercise.
+     */
+    public static final String ALPHABET_FILE = "alphabet";
+
+    /**
+     * The suffix of submission files.
+     */
+    public static final String SUBMISSION_SUFFIX = ".dfa";
+
+    /**
+     * Ranges of at most this many submissions are graded by a single task.
+     */
+    private static final int BATCH = 8;
+
+    /**
+     * The most verification outcomes kept. Many submissions to an exercise turn out to accept the same language.
+     */
+    private static final int CACHE_SIZE = 4096;
+
+    /**
+     * The possible outcomes of grading a submission.
+     */
+    public enum Verdict {
+        /** The DFA recognizes the language of the regex. */
+        CORRECT,
+        /** The DFA is valid but recognizes another language. */
+        INCORRECT,
+        /** The DFA is missing transitions or has several for the same symbol. */
+        INVALID,
+        /** The submission couldn't be read. */
+        UNREADABLE,
+        /** The regex of the exercise couldn't be compiled. */
+        BAD_EXERCISE
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        Metrics.startFromProperties();
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: BatchGrader <directory or zip> <results file> [threads]");
+            System.exit(2);
+        }
+        int threads = args.length == 3 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        File source = new File(args[0]);
+        List<Submission> submissions = source.isDirectory() ? readDirectory(source) : readZip(source);
+
+        long begin = System.nanoTime();
+        VerificationCache cache = new VerificationCache(CACHE_SIZE);
+        grade(submissions, threads, cache);
+        double seconds = (System.nanoTime() - begin) / 1e9;
+
+        PrintWriter results = new PrintWriter(Files.newBufferedWriter(new File(args[1]).toPath(),
+                StandardCharsets.UTF_8));
+        try {
+            writeResults(submissions, results);
+        } finally {
+            results.close();
+        }
+
+        int[] counts = new int[Verdict.values().length];
+        for (Submission s : submissions) {
+            counts[s.verdict.ordinal()]++;
+        }
+        System.err.printf("Graded %d submissions in %.3f s on %d threads (%.0f submissions/s)%n", submissions.size(),
+                seconds, threads, submissions.size() / Math.max(seconds, 1e-9));
+        for (Verdict v : Verdict.values()) {
+            System.err.println("  " + v + ": " + counts[v.ordinal()]);
+        }
+        System.err.println("Verification cache: " + cache);
+    }
+
+    /**
+     * Grades submissions in parallel, filling in their results.
+     *
+     * @param submissions The submissions to grade.
+     * @param threads The number of worker threads to use.
+     */
+    public static void grade(List<Submission> submissions, int threads) {
+        grade(submissions, threads, new VerificationCache(CACHE_SIZE));
+    }
+
+    /**
+     * Grades submissions in parallel, filling in their results.
+     *
+     * @param submissions The submissions to grade.
+     * @param threads The number of worker threads to use.
+     * @param cache Where to look up and keep verification outcomes. Submissions accepting the same language as one
+     * checked before are graded from it.
+     */
+    public static void grade(List<Submission> submissions, int threads, VerificationCache cache) {
+        // Compile each regex once; the targets are only ever read afterwards, so the workers can share them
+        Map<String, DFA> targets = new TreeMap<String, DFA>();
+        Map<String, String> failures = new TreeMap<String, String>();
+        for (Submission s : submissions) {
+            String key = s.alphabet + "\n" + s.regex;
+            if (targets.containsKey(key) || failures.containsKey(key)) {
+                continue;
+            }
+            try {
+                targets.put(key, RegexCompiler.compile(s.regex, Alphabet.parse(s.alphabet)).minimize().getDFA());
+            } catch (IllegalArgumentException e) {
+                failures.put(key, e.getMessage());
+            }
+        }
+        for (Submission s : submissions) {
+            String key = s.alphabet + "\n" + s.regex;
+            s.target = targets.get(key);
+            if (s.target == null) {
+                s.verdict = Verdict.BAD_EXERCISE;
+                s.detail = failures.get(key);
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new Grading(submissions, 0, submissions.size(), cache));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Writes one line per submission: exercise, submission, verdict, grading time in milliseconds, counterexample and
+     * a human readable explanation. The counterexample column is empty unless the verdict is {@link Verdict#INCORRECT},
+     * and has tabs, line breaks and backslashes escaped as {@code \t}, {@code \n},
+     * {@code \r} and {@code \\} so it stays one column but reads back exactly.
+     */
+    public static void writeResults(List<Submission> submissions, PrintWriter out) {
+        out.println("exercise\tsubmission\tverdict\ttime_ms\tcounterexample\tdetail");
+        for (Submission s : submissions) {
+            out.printf("%s\t%s\t%s\t%.3f\t%s\t%s%n", s.exercise, s.name, s.verdict, s.nanos / 1e6,
+                    s.counterexample == null ? "" : escape(s.counterexample.getString()), clean(s.detail));
+        }
+    }
+
+    private static String clean(String text) {
+        return text == null ? "" : text.replaceAll("[\\t\\r\\n]+", " ");
+    }
+
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\t", "\\t").replace("\r", "\\r").replace("\n", "\\n");
+    }
+
+    /**
+     * Finds the submissions in a directory of exercise directories.
+     */
+    static List<Submission> readDirectory(File root) throws IOException {
+        List<Submission> submissions = new ArrayList<Submission>();
+        File[] exercises = root.listFiles();
+        if (exercises == null) {
+            throw new IOException("Can't list " + root);
+        }
+        Arrays.sort(exercises);
+
+        for (File exercise : exercises) {
+            File regexFile = new File(exercise, REGEX_FILE);
+            if (!exercise.isDirectory() || !regexFile.isFile()) {
+                continue;
+            }
+            String regex = firstLine(new String(Files.readAllBytes(regexFile.toPath()), StandardCharsets.UTF_8));
+            File alphabetFile = new File(exercise, ALPHABET_FILE);
+            String alphabet = alphabetFile.isFile()
+                    ? firstLine(new String(Files.readAllBytes(alphabetFile.toPath()), StandardCharsets.UTF_8))
+                    : Alphabet.BINARY.toString();
+
+            File[] files = exercise.listFiles();
+            Arrays.sort(files);
+            for (File f : files) {
+                if (f.isFile() && f.getName().endsWith(SUBMISSION_SUFFIX)) {
+                    submissions.add(new Submission(exercise.getName(), f.getName(), regex, alphabet,
+                            Files.readAllBytes(f.toPath())));
+                }
+            }
+        }
+        return submissions;
+    }
+
+    /**
+     * Finds the submissions in a zip archive laid out like a directory of exercise directories.
+     */
+    static List<Submission> readZip(File archive) throws IOException {
+        ZipFile zip = new ZipFile(archive);
+        try {
+            Map<String, String> regexes = new TreeMap<String, String>();
+            Map<String, String> alphabets = new TreeMap<String, String>();
+            Map<String, byte[]> files = new TreeMap<String, byte[]>();
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String path = entry.getName();
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                if (path.endsWith("/" + REGEX_FILE)) {
+                    regexes.put(parent(path), firstLine(new String(readAll(zip.getInputStream(entry)),
+                            StandardCharsets.UTF_8)));
+                } else if (path.endsWith("/" + ALPHABET_FILE)) {
+                    alphabets.put(parent(path), firstLine(new String(readAll(zip.getInputStream(entry)),
+                            StandardCharsets.UTF_8)));
+                } else if (path.endsWith(SUBMISSION_SUFFIX)) {
+                    files.put(path, readAll(zip.getInputStream(entry)));
+                }
+            }
+
+            List<Submission> submissions = new ArrayList<Submission>();
+            for (Map.Entry<String, byte[]> f : files.entrySet()) {
+                String exercise = parent(f.getKey());
+                String regex = regexes.get(exercise);
+                String alphabet = alphabets.containsKey(exercise) ? alphabets.get(exercise)
+                        : Alphabet.BINARY.toString();
+                if (regex != null) {
+                    submissions.add(new Submission(exercise, f.getKey().substring(exercise.length() + 1), regex,
+                            alphabet, f.getValue()));
+                }
+            }
+            return submissions;
+        } finally {
+            zip.close();
+        }
+    }
+
+    private static String parent(String path) {
+        return path.substring(0, Math.max(path.lastIndexOf('/'), 0));
+    }
+
+    private static String firstLine(String text) {
+        int end = text.indexOf('\n');
+        return (end < 0 ? text : text.substring(0, end)).trim();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try {
+            byte[] buffer = new byte[4096];
+            int size = 0;
+            int n;
+            while ((n = in.read(buffer, size, buffer.length - size)) >= 0) {
+                size += n;
+                if (size == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+                }
+            }
+            return Arrays.copyOf(buffer, size);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * One submission along with its result once graded.
+     */
+    public static class Submission {
+        private final String exercise;
+        private final String name;
+        private final String regex;
+        private final String alphabet;
+        private final byte[] content;
+
+        /**
+         * The minimal DFA of the regex, or null if it doesn't compile.
+         */
+        private DFA target;
+
+        private Verdict verdict;
+        private Counterexample counterexample;
+        private String detail;
+        private long nanos;
+
+        public Submission(String exercise, String name, String regex, String alphabet, byte[] content) {
+            this.exercise = exercise;
+            this.name = name;
+            this.regex = regex;
+            this.alphabet = alphabet;
+            this.content = content;
+        }
+
+        public String getExercise() {
+            return exercise;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return The outcome, or null if the submission hasn't been graded yet.
+         */
+        public Verdict getVerdict() {
+            return verdict;
+        }
+
+        /**
+         * @return The string the submission gets wrong, or null unless the verdict is {@link Verdict#INCORRECT}.
+         */
+        public Counterexample getCounterexample() {
+            return counterexample;
+        }
+
+        /**
+         * @return The time spent reading and checking the submission, in nanoseconds.
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        private void grade(VerificationCache cache) {
+            long begin = System.nanoTime();
+            try {
+                Reader in = new StringReader(new String(content, StandardCharsets.UTF_8));
+                DFA dfa = SubmissionFormat.read(in, target.getAlphabet());
+                if (!dfa.getAlphabet().equals(target.getAlphabet())) {
+                    verdict = Verdict.UNREADABLE;
+                    detail = "The alphabet " + dfa.getAlphabet() + " isn't the exercise's " + target.getAlphabet();
+                } else if (!dfa.isValid()) {
+                    verdict = Verdict.INVALID;
+                    detail = "Missing transitions: " + dfa.getTransitionFunction().getMissingRuleCount()
+                            + ", duplicate transitions: " + dfa.getTransitionFunction().getDuplicateRuleCount();
+                } else {
+                    counterexample = cache.findCounterexample(dfa, regex, target);
+                    verdict = counterexample == null ? Verdict.CORRECT : Verdict.INCORRECT;
+                    detail = counterexample == null ? "" : counterexample.toString();
+                }
+            } catch (IOException e) {
+                verdict = Verdict.UNREADABLE;
+                detail = e.getMessage();
+            } catch (IllegalArgumentException e) {
+                verdict = Verdict.UNREADABLE;
+                detail = e.getMessage();
+            }
+            nanos = System.nanoTime() - begin;
+        }
+    }
+
+    /**
+     * Grades a range of submissions, splitting it in half until it's small enough to do in one go.
+     */
+    private static class Grading extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Submission> submissions;
+        private final int from;
+        private final int to;
+        private final VerificationCache cache;
+
+        Grading(List<Submission> submissions, int from, int to, VerificationCache cache) {
+            this.submissions = submissions;
+            this.from = from;
+            this.to = to;
+            this.cache = cache;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= BATCH) {
+                for (int i = from; i < to; i++) {
+                    Submission s = submissions.get(i);
+                    if (s.target != null) {
+                        s.grade(cache);
+                    }
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Grading(submissions, from, mid, cache), new Grading(submissions, mid, to, cache));
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.slayerz.dfagame;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stores DFAs in a compact binary file that can be mapped into memory and run without being loaded.
+ * <p>
+ * All numbers are big endian. The file is laid out as:
+ * <pre>
+ * int      MAGIC
+ * int      n, the number of states. State 0 is the start state.
+ * int      k, the number of symbol classes
+ * char[2k] the first and last character of every class, in ascending order
+ * byte     the width in bytes of a table entry: 1, 2 or 4
+ * byte     FLAG_LAYOUT if grid coordinates follow the table, 0 otherwise
+ * byte[(n + 7) / 8]   the accept bitmap, state i in bit i % 8 of byte i / 8
+ * entry[n * k]        the transition table, row by row; an entry is the next state plus one, or 0 for the dead state
+ * int[2 * n]          optional (row, column) of every state on the grid
+ * </pre>
+ * Entries are fixed width rather than variable length, so the next state can be looked up without decoding a row. There is
+ * one column per class of characters the DFA treats alike (see {@link Delta}), so a DFA over a-z with transitions on
+ * a-m and n-z has two columns, not 26.
+ */
+public class BinaryFormat {
+
+    /**
+     * The first four bytes of every file, "DFA1".
+     */
+    public static final int MAGIC = 0x44464131;
+
+    /**
+     * Set in the flags byte when the grid coordinates of the states are stored.
+     */
+    public static final int FLAG_LAYOUT = 1;
+
+    private BinaryFormat() {
+    }
+
+    /**
+     * Writes a DFA, along with where its states are on the grid.
+     *
+     * @param dfa The DFA to write.
+     * @param file Where to write it. Overwritten if it exists.
+     * @throws IOException If the file can't be written.
+     * @throws IllegalArgumentException If the DFA is an NFA, which a transition table can't hold.
+     */
+    public static void write(DFA dfa, File file) throws IOException {
+        if (dfa.isNondeterministic()) {
+            throw new IllegalArgumentException("An NFA can't be written as a transition table");
+        }
+        Delta delta = dfa.getTransitionFunction();
+
+        // Removed states keep their ids in the transition function, so only take the ones still on the grid
+        List<State> states = new ArrayList<State>();
+        for (int id = 0; id < delta.stateCount(); id++) {
+            State q = delta.getState(id);
+            if (q != null && dfa.locateState(q) != null) {
+                states.add(q);
+            }
+        }
+        int[] rows = new int[states.size()];
+        int[] columns = new int[states.size()];
+        for (int i = 0; i < states.size(); i++) {
+            rows[i] = dfa.locateState(states.get(i)).getR();
+            columns[i] = dfa.locateState(states.get(i)).getC();
+        }
+
+        OutputStream out = new FileOutputStream(file);
+        try {
+            write(delta, states, dfa.getAlphabet(), rows, columns, out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes the DFA made up of some states of a transition function.
+     *
+     * @param delta The transition function.
+     * @param states The states to write, start state first. Rules leading elsewhere are written as going to the dead state.
+     * @param alphabet The symbols the DFA reads.
+     * @param rows The grid row of every state, or null to leave out the layout.
+     * @param columns The grid column of every state, or null to leave out the layout.
+     * @param out Where to write the DFA. It's flushed but not closed.
+     * @throws IOException If the DFA can't be written.
+     */
+    static void write(Delta delta, List<State> states, Alphabet alphabet, int[] rows, int[] columns, OutputStream out)
+            throws IOException {
+        // Every class of the transition function, cut down to the alphabet
+        List<Alphabet> ranges = new ArrayList<Alphabet>();
+        for (char symbol : Delta.symbolsFor(alphabet, delta, null).toCharArray()) {
+            Alphabet symbolClass = delta.getSymbolClass(symbol).intersect(alphabet);
+            for (int i = 0; i < symbolClass.rangeCount(); i++) {
+                ranges.add(Alphabet.range(symbolClass.low(i), symbolClass.high(i)));
+            }
+        }
+
+        int n = states.size();
+        int k = ranges.size();
+        int width = n < 0xff ? 1 : n < 0xffff ? 2 : 4;
+
+        int[] local = new int[delta.stateCount()];
+        for (int i = 0; i < n; i++) {
+            local[delta.getStateId(states.get(i))] = i + 1;
+        }
+
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+        data.writeInt(MAGIC);
+        data.writeInt(n);
+        data.writeInt(k);
+        for (Alphabet range : ranges) {
+            data.writeChar(range.low(0));
+            data.writeChar(range.high(0));
+        }
+        data.writeByte(width);
+        data.writeByte(rows == null ? 0 : FLAG_LAYOUT);
+
+        byte[] accept = new byte[(n + 7) / 8];
+        for (int i = 0; i < n; i++) {
+            if (states.get(i).isAccept()) {
+                accept[i >>> 3] |= 1 << (i & 7);
+            }
+        }
+        data.write(accept);
+
+        for (State q : states) {
+            int id = delta.getStateId(q);
+            for (int s = 0; s < k; s++) {
+                int next = delta.GetNextState(id, ranges.get(s).low(0));
+                int entry = next == Delta.NO_STATE ? 0 : local[next];
+                if (width == 1) {
+                    data.writeByte(entry);
+                } else if (width == 2) {
+                    data.writeShort(entry);
+                } else {
+                    data.writeInt(entry);
+                }
+            }
+        }
+
+        if (rows != null) {
+            for (int i = 0; i < n; i++) {
+                data.writeInt(rows[i]);
+                data.writeInt(columns[i]);
+            }
+        }
+        data.flush();
+    }
+
+    /**
+     * Maps a DFA file into memory. Nothing is read beyond the header until the DFA is run.
+     *
+     * @param file The file to map.
+     * @return The mapped DFA.
+     * @throws IOException If the file can't be read or isn't a DFA file.
+     */
+    public static MappedDFA map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new MappedDFA(buffer);
+        } finally {
+            raf.close();
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.slayerz.dfagame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+
+/**
+ * A string on which a DFA and its target language disagree.
+ * <p>
+ * Found by a breadth first search over the product of the two automata, trying symbols in alphabet order. The first pair
+ * of states found that disagrees on acceptance is reached by the shortest such string, and among the shortest by the one
+ * that comes first in alphabet order. Every pair of states is visited at most once.
+ * <p>
+ * An NFA takes part through its {@link LazyDFA}, so only the sets of its states that the search reaches are ever built.
+ */
+public class Counterexample {
+
+    private final String string;
+    private final boolean acceptedByDFA;
+
+    private Counterexample(String string, boolean acceptedByDFA) {
+        this.string = string;
+        this.acceptedByDFA = acceptedByDFA;
+    }
+
+    /**
+     * @return The string the two sides disagree on.
+     */
+    public String getString() {
+        return string;
+    }
+
+    /**
+     * @return True if the DFA accepts the string (and the target rejects it), false if it's the other way round.
+     */
+    public boolean isAcceptedByDFA() {
+        return acceptedByDFA;
+    }
+
+    @Override
+    public String toString() {
+        String shown = string.isEmpty() ? "the empty string" : "\"" + string + "\"";
+        return acceptedByDFA ? "It accepts " + shown + ", which it should reject."
+                : "It rejects " + shown + ", which it should accept.";
+    }
+
+    /**
+     * Finds the shortest string on which two DFAs disagree, taking the first in alphabet order if there are several.
+     *
+     * @param dfaStart The start state of the DFA being checked.
+     * @param dfa The transition function of the DFA being checked.
+     * @param targetStart The start state of the DFA of the target language.
+     * @param target The transition function of the DFA of the target language.
+     * @param alphabet The symbols strings are made of, in order.
+     * @return The counterexample, or null if the DFAs are equivalent.
+     * @throws CancellationException If the calling thread is interrupted during the search.
+     */
+    public static Counterexample find(State dfaStart, Delta dfa, State targetStart, Delta target, String alphabet) {
+        // Pairs are numbered (p + 1) * (m + 1) + (q + 1), so that NO_STATE (the dead state) on either side gets a number
+        int m = target.stateCount();
+        int pairs = (dfa.stateCount() + 1) * (m + 1);
+
+        int[] parent = new int[pairs];
+        char[] via = new char[pairs];
+        Arrays.fill(parent, -2);
+        int[] queue = new int[pairs];
+        int head = 0;
+        int tail = 0;
+
+        int first = pair(dfa.getStateId(dfaStart), target.getStateId(targetStart), m);
+        parent[first] = -1;
+        queue[tail++] = first;
+
+        while (head < tail) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("Search for a counterexample interrupted");
+            }
+            int current = queue[head++];
+            int p = current / (m + 1) - 1;
+            int q = current % (m + 1) - 1;
+
+            boolean dfaAccepts = accepts(dfa, p);
+            if (dfaAccepts != accepts(target, q)) {
+                if (Metrics.ENABLED) {
+                    Metrics.PAIRS_VISITED.record(head);
+                }
+                return new Counterexample(path(current, parent, via), dfaAccepts);
+            }
+            // Both sides are dead from here on, so nothing below can disagree
+            if (p == Delta.NO_STATE && q == Delta.NO_STATE) {
+                continue;
+            }
+
+            for (int i = 0; i < alphabet.length(); i++) {
+                char c = alphabet.charAt(i);
+                int next = pair(dfa.GetNextState(p, c), target.GetNextState(q, c), m);
+                if (parent[next] == -2) {
+                    parent[next] = current;
+                    via[next] = c;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        if (Metrics.ENABLED) {
+            Metrics.PAIRS_VISITED.record(head);
+        }
+        return null;
+    }
+
+    /**
+     * Finds the shortest string on which an NFA and a DFA disagree, taking the first in alphabet order if there are several.
+     * <p>
+     * The NFA is determinized as the search goes, so a wrong NFA is usually caught long before its whole DFA would have
+     * been built. The pairs reached are remembered by the search itself rather than in the cache of the LazyDFA, so they
+     * aren't bounded by it.
+     *
+     * @param nfa The NFA being checked.
+     * @param targetStart The start state of the DFA of the target language.
+     * @param target The transition function of the DFA of the target language.
+     * @param alphabet The symbols strings are made of, in order.
+     * @return The counterexample, or null if the two accept the same strings.
+     * @throws CancellationException If the calling thread is interrupted during the search.
+     */
+    static Counterexample find(LazyDFA nfa, State targetStart, Delta target, String alphabet) {
+        List<Pair> queue = new ArrayList<Pair>();
+        Map<Pair, Integer> seen = new HashMap<Pair, Integer>();
+        List<Integer> parent = new ArrayList<Integer>();
+        StringBuilder via = new StringBuilder();
+
+        Pair first = new Pair(nfa.start(), target.getStateId(targetStart));
+        seen.put(first, 0);
+        queue.add(first);
+        parent.add(-1);
+        via.append('\0');
+
+        for (int head = 0; head < queue.size(); head++) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("Search for a counterexample interrupted");
+            }
+            Pair current = queue.get(head);
+
+            boolean nfaAccepts = current.set.isAccept();
+            if (nfaAccepts != accepts(target, current.q)) {
+                if (Metrics.ENABLED) {
+                    Metrics.PAIRS_VISITED.record(head);
+                }
+                StringBuilder reversed = new StringBuilder();
+                for (int i = head; parent.get(i) != -1; i = parent.get(i)) {
+                    reversed.append(via.charAt(i));
+                }
+                return new Counterexample(reversed.reverse().toString(), nfaAccepts);
+            }
+            if (current.set.isEmpty() && current.q == Delta.NO_STATE) {
+                continue;
+            }
+
+            for (int i = 0; i < alphabet.length(); i++) {
+                char c = alphabet.charAt(i);
+                Pair next = new Pair(nfa.next(current.set, c), target.GetNextState(current.q, c));
+                if (!seen.containsKey(next)) {
+                    seen.put(next, queue.size());
+                    queue.add(next);
+                    parent.add(head);
+                    via.append(c);
+                }
+            }
+        }
+        if (Metrics.ENABLED) {
+            Metrics.PAIRS_VISITED.record(queue.size());
+        }
+        return null;
+    }
+
+    private static int pair(int p, int q, int m) {
+        return (p + 1) * (m + 1) + (q + 1);
+    }
+
+    private static boolean accepts(Delta delta, int stateId) {
+        return stateId != Delta.NO_STATE && delta.getState(stateId).isAccept();
+    }
+
+    private static String path(int pair, int[] parent, char[] via) {
+        StringBuilder reversed = new StringBuilder();
+        for (int p = pair; parent[p] != -1; p = parent[p]) {
+            reversed.append(via[p]);
+        }
+        return reversed.reverse().toString();
+    }
+
+    /**
+     * A set of NFA states along with a state of the target DFA.
+     */
+    private static final class Pair {
+        private final LazyDFA.Subset set;
+        private final int q;
+
+        Pair(LazyDFA.Subset set, int q) {
+            this.set = set;
+            this.q = q;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Pair)) {
+                return false;
+            }
+            Pair other = (Pair) o;
+            return q == other.q && set.equals(other.set);
+        }
+
+        @Override
+        public int hashCode() {
+            return new HashCodeBuilder(29, 71).append(set).append(q).toHashCode();
+        }
+    }
+}
@@ -10,13 +10,45 @@ package com.slayerz.dfagame;
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.Arc2D;
+import java.awt.geom.Ellipse2D;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.*;
-import java.util.regex.Pattern;
+import java.util.concurrent.CancellationException;
 import org.apache.commons.lang3.builder.HashCodeBuilder; 
 
 import javax.swing.*;
 
 public class DFA {
+    /**
+     * The symbols the DFAs of the game read by default.
+     */
+    public static final String ALPHABET = "01";
+
+    /**
+     * The character that marks an epsilon transition in an NFA, which moves without reading anything. It can't be part of
+     * the alphabet of an NFA.
+     */
+    public static final char EPSILON = '\u03b5';
+
+    /**
+     * The symbols this DFA reads.
+     */
+    private final Alphabet alphabet;
+
+    /**
+     * Whether this is an NFA: states may have several transitions for a symbol, or none, and transitions may read
+     * {@link #EPSILON}. Strings are then run through a {@link LazyDFA}.
+     */
+    private final boolean nondeterministic;
+
     /**
      * The start state.
      */
@@ -28,15 +60,113 @@ public class DFA {
     private Map<Coord, State> states;
 
     /**
-     * Set of transitions of this DFA. Roughly corresponds to delta.
+     * The coordinates of every state on the game grid. The reverse of states.
+     */
+    private Map<State, Coord> locations;
+
+    /**
+     * Transitions of this DFA keyed by start state, then by end state. Roughly corresponds to delta.
+     */
+    private Map<State, Map<State, Transition>> outgoing;
+
+    /**
+     * The same transitions keyed by end state, then by start state.
      */
-    private Set<Transition> transitions;
+    private Map<State, Map<State, Transition>> incoming;
 
     /**
      * Transition function of the DFA.
      */
     private Delta transitionFunction;
     
+    /**
+     * How each transition is drawn, worked out once and kept until the transition's characters change.
+     */
+    private Map<Transition, TransitionShape> shapes;
+
+    /**
+     * Everyone who wants to hear about changes to the DFA.
+     */
+    private List<DFAListener> listeners;
+
+    /**
+     * The area covered by the transition currently being dragged out, or null if there is none.
+     */
+    private Rectangle dragBounds;
+
+    /**
+     * The stroke the start arrow and the transitions are drawn with.
+     */
+    private static final Stroke STROKE = new BasicStroke(4);
+
+    /**
+     * Below this zoom the characters and arrowheads of transitions are too small to make out, so they aren't drawn.
+     */
+    private static final double LABEL_SCALE = 0.3;
+
+    /**
+     * States narrower than this many pixels on screen are drawn as squares.
+     */
+    private static final int ROUND_STATE_PIXELS = 6;
+
+    /**
+     * Where every state and transition is drawn, for drawing only what's on screen and finding what was clicked. Null
+     * until first needed, since most DFAs that are built rather than drawn are never shown.
+     */
+    private SpatialIndex<State> stateIndex;
+    private SpatialIndex<Transition> transitionIndex;
+
+    /**
+     * Counts the changes made to the DFA, so that results derived from it can tell when they're stale.
+     */
+    private int modCount;
+
+    /**
+     * The minimal form of the DFA, as of modCount minimalModCount. Null until first asked for.
+     */
+    private MinimalForm minimal;
+    private int minimalModCount;
+
+    /**
+     * The compiled matcher of the DFA, as of modCount matcherModCount. Null until first asked for.
+     */
+    private Matcher matcher;
+    private int matcherModCount;
+
+    /**
+     * The lazily determinized form of the NFA, as of modCount lazyModCount. Null until first asked for, and always null
+     * for a DFA.
+     */
+    private LazyDFA lazy;
+    private int lazyModCount;
+
+    /**
+     * The most edits that can be undone.
+     */
+    private static final int HISTORY_LIMIT = 100;
+
+    /**
+     * The snapshot of the DFA as of the last edit. Replaced whole after every edit, so other threads can read it without
+     * locking.
+     */
+    private volatile Snapshot published;
+
+    /**
+     * The slot of every state in the published snapshot.
+     */
+    private Map<State, Integer> slots;
+
+    /**
+     * Snapshots to go back to, the latest first, and to go forward to again after going back.
+     */
+    private Deque<Snapshot> undoHistory;
+    private Deque<Snapshot> redoHistory;
+
+    /**
+     * Set while undoing or redoing, so the edits that make up the step aren't remembered as edits of their own.
+     */
+    private boolean restoring;
+
     /**
      * The width of the squares on the grid
      */
@@ -60,83 +190,499 @@ public class DFA {
      * @param boxWidth The width of the (square) box on the grid being handled
      */
     public DFA(int boxDIM) {
+        this(boxDIM, Alphabet.BINARY);
+    }
+
+    /**
+     * Create a new simple DFA over an alphabet of its own.
+     *
+     * @param boxDIM The width of the (square) box on the grid being handled
+     * @param alphabet The symbols the DFA reads. Every state needs exactly one transition for each of them.
+     */
+    public DFA(int boxDIM, Alphabet alphabet) {
+        this(boxDIM, alphabet, false);
+    }
+
+    /**
+     * Create a new simple DFA or NFA over an alphabet of its own.
+     *
+     * @param boxDIM The width of the (square) box on the grid being handled
+     * @param alphabet The symbols the automaton reads.
+     * @param nondeterministic True for an NFA, see {@link #isNondeterministic()}.
+     * @throws IllegalArgumentException If an NFA is asked for over an alphabet that includes {@link #EPSILON}.
+     */
+    public DFA(int boxDIM, Alphabet alphabet, boolean nondeterministic) {
+    	if (nondeterministic && alphabet.contains(EPSILON)) {
+    		throw new IllegalArgumentException("The alphabet of an NFA can't include " + EPSILON);
+    	}
     	
+    	this.alphabet = alphabet;
+    	this.nondeterministic = nondeterministic;
     	BOX_DIM = boxDIM;
     	STATE_RAD = (int) (BOX_DIM / 8.0);
     	CLICK_RAD = (int) (STATE_RAD * 3.0);
     	
         start = new State(false, BOX_DIM, STATE_RAD);
-        transitionFunction = new Delta();
+        transitionFunction = new Delta(alphabet);
+        transitionFunction.addState(start);
         states = new HashMap<Coord, State>();
         states.put(new Coord(1, 1), start);
-        transitions = new HashSet<Transition>();
+        locations = new HashMap<State, Coord>();
+        locations.put(start, new Coord(1, 1));
+        shapes = new HashMap<Transition, TransitionShape>();
+        listeners = new ArrayList<DFAListener>();
+        outgoing = new HashMap<State, Map<State, Transition>>();
+        incoming = new HashMap<State, Map<State, Transition>>();
+        outgoing.put(start, new HashMap<State, Transition>());
+        incoming.put(start, new HashMap<State, Transition>());
+        undoHistory = new ArrayDeque<Snapshot>();
+        redoHistory = new ArrayDeque<Snapshot>();
+        slots = new HashMap<State, Integer>();
+        published = Snapshot.empty(alphabet, BOX_DIM, nondeterministic);
+        published = updated(start);
     }
 
     /**
-     * Determines if the DFA is valid. A valid DFA has ONE legitimate transition leaving every state for '0' and '1'
+     * Determines if the DFA is valid. A valid DFA has ONE legitimate transition leaving every state for every symbol of
+     * its alphabet.
+     * The transition function keeps count of the rules as they change, so this is just a counter read. An NFA is always
+     * valid.
      *
      * @return True if the DFA is valid (as defined), false otherwise.
      */
     public boolean isValid() {
+        return nondeterministic || transitionFunction.isValid();
+    }
+
+    /**
+     * Finds the states that are missing a transition for some symbol.
+     *
+     * @return The incomplete states mapped to the symbols they have no transition for.
+     */
+    public Map<State, String> getMissingTransitions() {
+        Map<State, String> missing = new HashMap<State, String>();
         for (State s : states.values()) {
-            if (transitionFunction.GetNextState(s, '0') == null || transitionFunction.GetNextState(s, '1') == null) {
-                return false;
+            String symbols = transitionFunction.getMissingSymbols(s);
+            if (!symbols.isEmpty()) {
+                missing.put(s, symbols);
             }
         }
+        return missing;
+    }
 
-        return true;
+    /**
+     * Finds the states with more than one transition for some symbol.
+     *
+     * @return The nondeterministic states mapped to the symbols they have several transitions for.
+     */
+    public Map<State, String> getDuplicateTransitions() {
+        Map<State, String> duplicates = new HashMap<State, String>();
+        for (State s : states.values()) {
+            String symbols = transitionFunction.getDuplicateSymbols(s);
+            if (!symbols.isEmpty()) {
+                duplicates.put(s, symbols);
+            }
+        }
+        return duplicates;
     }
 
     /**
      * Determine whether the DFA accepts the strings it should.
+     * The regex is compiled into a DFA of its own and the two automata are checked for equivalence. An NFA is determinized
+     * lazily as the check goes, see {@link #findCounterexample(DFA)}.
      *
      * @param regex The regex to check strings against.
      * @return True if the DFA only accepts the strings it should and rejects the strings it should. False otherwise.
+     * @throws IllegalArgumentException If the regex can't be compiled.
      */
     public boolean MatchesRegex(String regex) {
-        Pattern compiledRegex = Pattern.compile(regex);
-        Map<String, Boolean> dfaResults = testOnAll();
+        long begin = Metrics.ENABLED ? System.nanoTime() : 0;
+        VerificationEvent event = new VerificationEvent();
+        event.begin();
+        DFA target = RegexCompiler.compile(regex, alphabet).minimize().getDFA();
+        boolean matched = nondeterministic ? lazyCounterexample(target) == null
+                : minimize().getDFA().isEquivalentTo(target);
+        verified(event, begin, Metrics.MATCHES_REGEX, "MatchesRegex", regex, matched);
+        return matched;
+    }
 
-        for (String s : dfaResults.keySet()) {
-            if (compiledRegex.matcher(s).matches() != dfaResults.get(s)) {
-//            if (Pattern.compile(regex).matcher(s).matches() != dfaResults.get(s)) {
-                return false;
-            }
+    /**
+     * Determine whether the DFA accepts the strings it should by testing strings in parallel.
+     * Strings are split by prefix over a fork/join pool and testing stops at the first string the DFA gets wrong. Every
+     * string up to the combined number of states of the minimal forms of the two automata is covered, which is long
+     * enough for any difference between them to show up, and redundant states don't make it any longer.
+     * <p>
+     * An NFA is checked on the calling thread instead, as by {@link #MatchesRegex(String)}, since its lazily built DFA can't
+     * be shared between threads.
+     *
+     * @param regex The regex to check strings against.
+     * @param parallelism The number of worker threads to use.
+     * @return True if the DFA only accepts the strings it should and rejects the strings it should. False otherwise.
+     * @throws IllegalArgumentException If the regex can't be compiled.
+     */
+    public boolean MatchesRegex(String regex, int parallelism) {
+        if (nondeterministic) {
+            return MatchesRegex(regex);
+        }
+        long begin = Metrics.ENABLED ? System.nanoTime() : 0;
+        VerificationEvent event = new VerificationEvent();
+        event.begin();
+        MinimalForm minimal = minimize();
+        MinimalForm target = RegexCompiler.compile(regex, alphabet).minimize();
+        DFA dfa = minimal.getDFA();
+        DFA regexDFA = target.getDFA();
+        boolean matched = ParallelVerifier.agree(dfa.start, dfa.transitionFunction, regexDFA.getStart(),
+                regexDFA.getTransitionFunction(), Delta.symbolsFor(alphabet, dfa.transitionFunction,
+                        regexDFA.getTransitionFunction()), minimal.size() + target.size(), parallelism);
+        verified(event, begin, Metrics.MATCHES_REGEX, "MatchesRegex(parallel)", regex, matched);
+        return matched;
+    }
+
+    /**
+     * Finds the shortest string the DFA gets wrong, taking the first in ascending order if there are several.
+     *
+     * @param regex The regex the DFA should match.
+     * @return The counterexample, or null if the DFA matches the regex.
+     * @throws IllegalArgumentException If the regex can't be compiled.
+     */
+    public Counterexample findCounterexample(String regex) {
+        return findCounterexample(RegexCompiler.compile(regex, alphabet).minimize().getDFA(), regex);
+    }
+
+    /**
+     * Finds the shortest string on which the DFA and another DFA disagree, taking the first in ascending order if there
+     * are several. Lets a target that's checked against many DFAs be compiled only once.
+     * <p>
+     * An NFA isn't determinized up front: only the sets of its states the search reaches are built, so an NFA that's wrong
+     * is usually caught long before its whole DFA would be.
+     *
+     * @param target The DFA of the language this DFA should recognize. It isn't modified.
+     * @return The counterexample, or null if the DFAs are equivalent.
+     */
+    public Counterexample findCounterexample(DFA target) {
+        return findCounterexample(target, null);
+    }
+
+    /**
+     * @param regex The regex target was compiled from, or null. Only used to label the verification event.
+     */
+    private Counterexample findCounterexample(DFA target, String regex) {
+        long begin = Metrics.ENABLED ? System.nanoTime() : 0;
+        VerificationEvent event = new VerificationEvent();
+        event.begin();
+        Counterexample counterexample;
+        if (nondeterministic) {
+            counterexample = lazyCounterexample(target);
+        } else {
+            DFA dfa = minimize().getDFA();
+            counterexample = Counterexample.find(dfa.getStart(), dfa.getTransitionFunction(), target.getStart(),
+                    target.getTransitionFunction(),
+                    Delta.symbolsFor(alphabet, dfa.getTransitionFunction(), target.getTransitionFunction()));
+        }
+        verified(event, begin, Metrics.FIND_COUNTEREXAMPLE, "findCounterexample", regex, counterexample == null);
+        return counterexample;
+    }
+
+    /**
+     * Searches for a counterexample over the lazily built DFA of an NFA.
+     */
+    private Counterexample lazyCounterexample(DFA target) {
+        return Counterexample.find(getLazyDFA(), target.getStart(), target.getTransitionFunction(),
+                Delta.symbolsFor(alphabet, transitionFunction, target.getTransitionFunction()));
+    }
+
+    /**
+     * Records a finished check in the metrics, if they're on, and in the flight recording, if one is running.
+     *
+     * @param begin The value of System.nanoTime() when the check started. Only meaningful when metrics are on.
+     */
+    private void verified(VerificationEvent event, long begin, Metrics.Histogram latency, String method, String regex,
+                          boolean matched) {
+        if (Metrics.ENABLED) {
+            latency.record(System.nanoTime() - begin);
+        }
+        if (event.shouldCommit()) {
+            event.method = method;
+            event.regex = regex;
+            event.states = states.size();
+            event.matched = matched;
+            event.commit();
         }
-        return true;
+    }
+
+    /**
+     * Determines whether this DFA recognizes exactly the same language as another one.
+     * Runs on the two automata directly, so no strings are enumerated. An NFA on either side is determinized lazily, as by
+     * {@link #findCounterexample(DFA)}, unless both are NFAs.
+     *
+     * @param other The DFA to compare against.
+     * @return True if both DFAs accept the same strings, false otherwise.
+     */
+    public boolean isEquivalentTo(DFA other) {
+        if (nondeterministic) {
+            return lazyCounterexample(other.isNondeterministic() ? other.minimize().getDFA() : other) == null;
+        }
+        if (other.isNondeterministic()) {
+            return other.isEquivalentTo(this);
+        }
+        return Equivalence.equivalent(start, transitionFunction, other.getStart(), other.getTransitionFunction());
     }
 
     /**
      * Determines if the DFA will accept a given string.
+     * Interprets the transition function as it is now; to run a finished DFA over a lot of input, {@link #compile()} it.
+     * An NFA runs through its {@link LazyDFA} instead.
      *
      * @param s The string to check.
      * @return Returns true if the string is in the language of the DFA, false otherwise.
      */
     public boolean acceptsString(String s) {
-        State currentState = start;
-        for (char c : s.toCharArray()) {
-            currentState = transitionFunction.GetNextState(currentState, c);
+        long begin = Metrics.ENABLED ? System.nanoTime() : 0;
+
+        boolean accepted;
+        if (nondeterministic) {
+            accepted = getLazyDFA().matches(s);
+        } else {
+            // Walk the compiled table on ids and only go back to a State at the end
+            int current = transitionFunction.getStateId(start);
+            for (int i = 0; i < s.length() && current != Delta.NO_STATE; i++) {
+                current = transitionFunction.GetNextState(current, s.charAt(i));
+            }
+            accepted = current != Delta.NO_STATE && transitionFunction.getState(current).isAccept();
+        }
+
+        if (Metrics.ENABLED) {
+            Metrics.ACCEPTS_STRING.record(System.nanoTime() - begin);
         }
+        return accepted;
+    }
+
+    /**
+     * Determines if the DFA accepts part of some text, without copying it. Runs the compiled matcher, see {@link #compile()},
+     * or for an NFA its {@link LazyDFA}.
+     *
+     * @param s The text.
+     * @param from The index of the first character to read.
+     * @param to The index after the last character to read.
+     * @return True if the characters from {@code from} up to {@code to} are in the language of the DFA.
+     */
+    public boolean accepts(CharSequence s, int from, int to) {
+        return nondeterministic ? getLazyDFA().matches(s, from, to) : compile().matches(s, from, to);
+    }
+
+    /**
+     * Determines if the DFA accepts part of a buffer, read as the characters 0 to 255. Runs the compiled matcher, see
+     * {@link #compile()}.
+     *
+     * @param s The buffer. Its position and limit are ignored and left as they are.
+     * @param from The index of the first byte to read.
+     * @param to The index after the last byte to read.
+     * @return True if the bytes from {@code from} up to {@code to} are in the language of the DFA.
+     */
+    public boolean accepts(ByteBuffer s, int from, int to) {
+        return compile().matches(s, from, to);
+    }
 
-        return currentState.isAccept();
+    /**
+     * Runs the DFA on every line of a file. The file is mapped into memory, so it can be far larger than the heap.
+     *
+     * @param file The file.
+     * @param sink Where to send the result for every line, or null to only count them.
+     * @return The scanner, for the number of lines and matches.
+     * @throws IOException If the file can't be read.
+     */
+    public LineScanner scanLines(File file, LineScanner.Sink sink) throws IOException {
+        return LineScanner.scan(compile(), file, sink);
     }
 
     /**
      * Test all strings as long as the DFAs pumping length and tests them for acceptance by the DFA.
+     * Prefer {@link #testOnAllBits()}, which doesn't create a String per result.
      *
      * @return A map of strings of the pumping length mapped to a boolean representing whether or not they are accepted by the DFA.
+     * @throws IllegalArgumentException If the strings can't all be ranked within a BitSet.
      */
     public Map<String, Boolean> testOnAll() {
+        int pumpingLength = getPumpingLength();
+        BitSet accepted = testOnAllBits(pumpingLength);
+
+        String symbols = deterministic().symbols();
+        long count = stringCount(symbols, pumpingLength);
         Map<String, Boolean> testResults = new HashMap<String, Boolean>();
-        int pumpingLength = Math.max(2 * states.size() + 1, 13);
+        for (int rank = 0; rank < count; rank++) {
+            testResults.put(stringAtRank(symbols, rank), accepted.get(rank));
+        }
 
-        List<String> binaryStrings = GenerateBinaryStrings(pumpingLength);
+        return testResults;
+    }
 
-        for (String binaryString : binaryStrings) {
-            testResults.put(binaryString, acceptsString(binaryString));
+    /**
+     * Tests all strings as long as the DFAs pumping length for acceptance by the DFA.
+     *
+     * @return The accepted strings, as a set of ranks (see {@link #stringAtRank(long)}).
+     * @throws IllegalArgumentException If the strings can't all be ranked within a BitSet.
+     */
+    public BitSet testOnAllBits() {
+        return testOnAllBits(getPumpingLength());
+    }
+
+    /**
+     * Tests all strings up to a certain length for acceptance by the DFA, without creating any Strings. The strings are
+     * made of one symbol from each class of symbols the DFA treats alike, as in {@link #getPartialStrings(int)}.
+     * They are walked depth first, so each one costs a single step past its prefix and memory use is just the
+     * returned set.
+     *
+     * @param length The maximum length of the strings tested.
+     * @return The accepted strings, as a set of ranks (see {@link #stringAtRank(long)}).
+     * @throws IllegalArgumentException If the strings can't all be ranked within a BitSet.
+     */
+    public BitSet testOnAllBits(int length) {
+        final BitSet accepted = new BitSet((int) stringCount(length));
+
+        testOnAll(length, new PrefixSimulation.Sink() {
+            @Override
+            public boolean test(long rank, int n, boolean first, boolean second) {
+                if (first) {
+                    accepted.set((int) rank);
+                }
+                return true;
+            }
+        });
+
+        return accepted;
+    }
+
+    /**
+     * Tests all strings up to a certain length for acceptance by the DFA, handing each result to a sink. The strings
+     * are made of one symbol from each class of symbols the DFA treats alike, and ranked as by
+     * {@link #stringAtRank(long)}.
+     *
+     * @param length The maximum length of the strings tested.
+     * @param sink Receives whether the DFA accepts each string, as its first result.
+     * @return True if every string was tested, false if the sink stopped early.
+     */
+    public boolean testOnAll(int length, PrefixSimulation.Sink sink) {
+        DFA dfa = deterministic();
+        if (!Metrics.ENABLED) {
+            return PrefixSimulation.walk(dfa.start, dfa.transitionFunction, dfa.symbols(), length, sink);
         }
+        long begin = System.nanoTime();
+        CountingSink counted = new CountingSink(sink);
+        boolean complete = PrefixSimulation.walk(dfa.start, dfa.transitionFunction, dfa.symbols(), length, counted);
+        counted.record(begin);
+        return complete;
+    }
 
-        return testResults;
+    /**
+     * Runs the DFA and the automaton compiled from a regex side by side on all strings up to a certain length. The
+     * strings are made of one symbol from each class of symbols either automaton treats alike, so the ranks the sink gets
+     * can differ from those of {@link #testOnAll(int, PrefixSimulation.Sink)}.
+     *
+     * @param regex The regex to check strings against.
+     * @param length The maximum length of the strings tested.
+     * @param sink Receives whether the DFA (first) and the regex (second) accept each string.
+     * @return True if every string was tested, false if the sink stopped early.
+     * @throws IllegalArgumentException If the regex can't be compiled.
+     */
+    public boolean testAgainst(String regex, int length, PrefixSimulation.Sink sink) {
+        DFA target = RegexCompiler.compile(regex, alphabet);
+        DFA dfa = deterministic();
+        String symbols = Delta.symbolsFor(alphabet, dfa.transitionFunction, target.getTransitionFunction());
+        if (!Metrics.ENABLED) {
+            return PrefixSimulation.walk(dfa.start, dfa.transitionFunction, target.getStart(),
+                    target.getTransitionFunction(), symbols, length, sink);
+        }
+        long begin = System.nanoTime();
+        CountingSink counted = new CountingSink(sink);
+        boolean complete = PrefixSimulation.walk(dfa.start, dfa.transitionFunction, target.getStart(),
+                target.getTransitionFunction(), symbols, length, counted);
+        counted.record(begin);
+        return complete;
+    }
+
+    /**
+     * @return The length up to which {@link #testOnAll()} tests strings. Sized from the minimal form of the DFA, so
+     * redundant states don't make testing slower.
+     */
+    public int getPumpingLength() {
+        return Math.max(2 * minimize().size() + 1, 13);
+    }
+
+    /**
+     * Counts the strings {@link #testOnAll(int, PrefixSimulation.Sink)} tests up to a certain length, which is also the
+     * first rank past them.
+     *
+     * @param length The maximum length of the strings.
+     * @return The number of strings of length up to and including length.
+     * @throws IllegalArgumentException If the strings can't all be ranked within a BitSet.
+     */
+    public long stringCount(int length) {
+        return stringCount(deterministic().symbols(), length);
+    }
+
+    /**
+     * @param symbols The symbols the strings are made of.
+     * @param length The maximum length of the strings.
+     * @return The number of strings over the symbols of length up to and including length.
+     * @throws IllegalArgumentException If the strings can't all be ranked within a BitSet.
+     */
+    private static long stringCount(String symbols, int length) {
+        if (length < 0) {
+            throw new IllegalArgumentException("Can't rank all strings up to length " + length);
+        }
+        long count = 0;
+        long width = 1;
+        for (int n = 0; n <= length && width > 0; n++) {
+            count += width;
+            if (count > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Can't rank all strings of " + symbols.length()
+                        + " symbols up to length " + length);
+            }
+            width *= symbols.length();
+        }
+        return count;
+    }
+
+    /**
+     * Turns a rank from {@link #testOnAll(int, PrefixSimulation.Sink)} back into its string. Strings are ranked shortest
+     * first and in the order of the symbols within a length, so over the binary alphabet "" is 0, "0" is 1, "1" is 2,
+     * "00" is 3 and so on.
+     *
+     * @param rank The rank of a string.
+     * @return The string with that rank.
+     */
+    public String stringAtRank(long rank) {
+        return stringAtRank(deterministic().symbols(), rank);
+    }
+
+    /**
+     * @param symbols The symbols the strings are made of.
+     * @param rank The rank of a string over the symbols.
+     * @return The string with that rank.
+     * @throws IllegalArgumentException If no string over the symbols has that rank.
+     */
+    private static String stringAtRank(String symbols, long rank) {
+        int base = symbols.length();
+        if (rank < 0 || (base == 0 && rank > 0)) {
+            throw new IllegalArgumentException("No string of " + base + " symbols has rank " + rank);
+        }
+
+        // Skip the lengths before the string's, leaving its value in base |symbols|
+        int n = 0;
+        long width = 1;
+        long value = rank;
+        while (value >= width) {
+            value -= width;
+            width = width > Long.MAX_VALUE / base ? Long.MAX_VALUE : width * base;
+            n++;
+        }
+
+        char[] chars = new char[n];
+        for (int i = n - 1; i >= 0; i--) {
+            chars[i] = symbols.charAt((int) (value % base));
+            value /= base;
+        }
+        return new String(chars);
     }
 
     /**
@@ -158,24 +704,288 @@ public class DFA {
     }
 
     /**
-     * Generates all string representations of binary numbers.
-     * All the strings are a certain length so shorter numbers are zero padded.
+     * Generates all strings of a certain length, counting up in the order of the symbols.
+     * Symbols the DFA treats alike are only represented by the first of them, so over the binary alphabet these are the
+     * zero padded binary numbers, and over a-z with transitions on a-m and n-z they are made of a and n.
      *
      * @param n The length of each string.
      * @return List of strings.
      */
     public List<String> getPartialStrings(int n) {
         List<String> partialStrings = new ArrayList<String>();
+        String symbols = symbols();
+        if (symbols.isEmpty()) {
+            return partialStrings;
+        }
+
+        // Count up in base |symbols|, one digit per position
+        int[] digits = new int[n];
+        char[] chars = new char[n];
+        Arrays.fill(chars, symbols.charAt(0));
+        while (true) {
+            partialStrings.add(new String(chars));
+            int i = n - 1;
+            while (i >= 0 && digits[i] == symbols.length() - 1) {
+                digits[i] = 0;
+                chars[i] = symbols.charAt(0);
+                i--;
+            }
+            if (i < 0) {
+                return partialStrings;
+            }
+            digits[i]++;
+            chars[i] = symbols.charAt(digits[i]);
+        }
+    }
+
+    /**
+     * @return One symbol of the alphabet from each class of symbols the DFA treats alike, in ascending order.
+     */
+    String symbols() {
+        return Delta.symbolsFor(alphabet, transitionFunction, null);
+    }
+
+    /**
+     * Finds the minimal DFA recognizing the same language as this one.
+     * The result is kept until the DFA is next changed.
+     * <p>
+     * An NFA is determinized in full first, which can take exponentially many states. Its minimal form then only knows the
+     * states of the determinized DFA, so {@link MinimalForm#classOf(State)} is null for the states of the NFA.
+     *
+     * @return The minimal form of the DFA.
+     * @throws CancellationException If the calling thread is interrupted while an NFA is determinized.
+     */
+    public MinimalForm minimize() {
+        if (minimal == null || minimalModCount != modCount) {
+            minimal = MinimalForm.of(nondeterministic ? getLazyDFA().toDFA() : this);
+            minimalModCount = modCount;
+        }
+        return minimal;
+    }
+
+    /**
+     * Compiles the DFA into a matcher of its own, for running it over a lot of input.
+     * The result is kept until the DFA is next changed. See {@link MatcherCompiler}. An NFA is compiled from its minimal
+     * form, so it's determinized in full first; {@link #getLazyDFA()} avoids that.
+     *
+     * @return A matcher for the language of the DFA.
+     */
+    public Matcher compile() {
+        if (matcher == null || matcherModCount != modCount) {
+            matcher = MatcherCompiler.compile(deterministic());
+            matcherModCount = modCount;
+        }
+        return matcher;
+    }
+
+    /**
+     * Determinizes the automaton lazily, for running an NFA without building its whole DFA. A DFA can be run this way too,
+     * though {@link #compile()} is quicker for it. The result is kept until the DFA is next changed.
+     *
+     * @return The lazily determinized form, with a cache of {@link LazyDFA#DEFAULT_CACHE_SIZE} sets. It isn't safe to share
+     * between threads.
+     */
+    public LazyDFA getLazyDFA() {
+        if (lazy == null || lazyModCount != modCount) {
+            lazy = new LazyDFA(this, LazyDFA.DEFAULT_CACHE_SIZE);
+            lazyModCount = modCount;
+        }
+        return lazy;
+    }
+
+    /**
+     * @return This DFA, or for an NFA the minimal DFA equivalent to it, for whatever needs a deterministic transition
+     * function.
+     */
+    private DFA deterministic() {
+        return nondeterministic ? minimize().getDFA() : this;
+    }
+
+    /**
+     * @return True if this is an NFA: states may have several transitions for a symbol or none at all, and transitions may
+     * read {@link #EPSILON} to move without reading anything.
+     */
+    public boolean isNondeterministic() {
+        return nondeterministic;
+    }
+
+    /**
+     * @return A number that changes whenever the DFA is changed, so anything drawn or derived from it can tell when it's
+     * out of date.
+     */
+    public int getVersion() {
+        return modCount;
+    }
+
+    /**
+     * @return The symbols the DFA reads.
+     */
+    public Alphabet getAlphabet() {
+        return alphabet;
+    }
+
+    /**
+     * @return The start state.
+     */
+    public State getStart() {
+        return start;
+    }
+
+    /**
+     * @return All states of the DFA.
+     */
+    public Collection<State> getStates() {
+        return Collections.unmodifiableCollection(states.values());
+    }
+
+    /**
+     * @param q A state of the DFA.
+     * @return The transitions leaving q.
+     */
+    public Collection<Transition> getTransitionsFrom(State q) {
+        return Collections.unmodifiableCollection(outgoing.get(q).values());
+    }
+
+    /**
+     * @return The transition function of the DFA.
+     */
+    Delta getTransitionFunction() {
+        return transitionFunction;
+    }
+
+    /**
+     * Copies the DFA, so it can be checked on another thread while this one keeps being edited.
+     * The copy has the same layout but its own states and transitions, and no listeners. It's made from the latest
+     * snapshot, so this can be called from any thread.
+     *
+     * @return A copy of the DFA.
+     */
+    public DFA snapshot() {
+        return published.toDFA();
+    }
+
+    /**
+     * Can be called from any thread, without locking. The snapshot is never seen half built: it's either the one from
+     * before an edit or the one from after it.
+     *
+     * @return The DFA as of its last edit.
+     */
+    public Snapshot getSnapshot() {
+        return published;
+    }
 
-        for (int i = 0; i < Math.pow(2, n); i++) {
-            String bin = Integer.toBinaryString(i);
-            while (bin.length() < n) {
-                bin = "0" + bin;
+    /**
+     * Takes back the last edit, or the last edit that was redone.
+     *
+     * @return False if there was nothing to undo.
+     */
+    public boolean undo() {
+        if (undoHistory.isEmpty()) {
+            return false;
+        }
+        Snapshot previous = undoHistory.pop();
+        redoHistory.push(published);
+        restore(previous);
+        return true;
+    }
+
+    /**
+     * Makes the last edit that was undone again. Any other edit in between forgets what was undone.
+     *
+     * @return False if there was nothing to redo.
+     */
+    public boolean redo() {
+        if (redoHistory.isEmpty()) {
+            return false;
+        }
+        Snapshot next = redoHistory.pop();
+        undoHistory.push(published);
+        restore(next);
+        return true;
+    }
+
+    /**
+     * Edits the DFA back (or forward) into what it was as of a snapshot, reusing the states it had then.
+     * Only what differs is changed, and listeners hear about it as they would about any edit.
+     */
+    private void restore(Snapshot target) {
+        restoring = true;
+        try {
+            for (State q : new ArrayList<State>(locations.keySet())) {
+                if (!target.contains(q)) {
+                    removeState(locations.get(q));
+                }
             }
-            partialStrings.add(bin);
+            for (State q : target.getStates()) {
+                if (!locations.containsKey(q)) {
+                    Coord at = target.locateState(q);
+                    addState(at.getR(), at.getC(), q);
+                }
+                if (q.isAccept() != target.isAccept(q)) {
+                    toggleAccept(q);
+                }
+            }
+            for (State q : target.getStates()) {
+                Map<State, String> wanted = new HashMap<State, String>();
+                for (Transition t : target.getTransitionsFrom(q)) {
+                    wanted.put(t.getEnd(), t.getChars());
+                }
+                for (Transition t : new ArrayList<Transition>(outgoing.get(q).values())) {
+                    if (!t.getChars().equals(wanted.get(t.getEnd()))) {
+                        removeTransition(t);
+                    }
+                }
+                for (Map.Entry<State, String> e : wanted.entrySet()) {
+                    if (!outgoing.get(q).containsKey(e.getKey())) {
+                        addTransition(q, e.getKey(), e.getValue());
+                    }
+                }
+            }
+        } finally {
+            restoring = false;
         }
+    }
 
-        return partialStrings;
+    /**
+     * Publishes the snapshot of the current version, after an edit, and remembers the one before for undo.
+     *
+     * @param changed The states that were added, removed or changed by the edit, or whose transitions were.
+     */
+    private void publish(State... changed) {
+        Snapshot next = updated(changed);
+        if (!restoring) {
+            undoHistory.push(published);
+            if (undoHistory.size() > HISTORY_LIMIT) {
+                undoHistory.removeLast();
+            }
+            redoHistory.clear();
+        }
+        published = next;
+    }
+
+    /**
+     * @return The published snapshot with the given states brought up to date, and stamped with the current version.
+     */
+    private Snapshot updated(State... changed) {
+        int[] at = new int[changed.length];
+        Snapshot.Node[] nodes = new Snapshot.Node[changed.length];
+        int next = published.slotCount();
+        for (int i = 0; i < changed.length; i++) {
+            State q = changed[i];
+            Coord location = locations.get(q);
+            if (location == null) {
+                at[i] = slots.remove(q);
+                continue;
+            }
+            Integer slot = slots.get(q);
+            if (slot == null) {
+                slot = next++;
+                slots.put(q, slot);
+            }
+            at[i] = slot;
+            nodes[i] = new Snapshot.Node(q, location, outgoing.get(q).values());
+        }
+        return published.update(modCount, at, nodes);
     }
 
     /**
@@ -185,137 +995,166 @@ public class DFA {
      * @return The coord representing the onscreen location of the state.
      */
     public Coord locateState(State q) {
-        for (Coord c : states.keySet()) {
-            if (q == states.get(c)) {
-                return c;
-            }
-        }
-        return null;
+        return locations.get(q);
     }
 
     /**
-     * Handles drawing off all states and transitions.
+     * Handles drawing off all states and transitions that meet the clip of the graphics, if it has one.
      *
      * @param g2d The graphics object which handles all the relevant work.
      */
     public void draw(Graphics2D g2d) {
+        // Only what meets the clip is drawn, so drawing a corner of a large DFA costs what's in the corner
+        Rectangle area = g2d.getClipBounds();
+        if (area == null) {
+            area = new Rectangle(Integer.MIN_VALUE / 2, Integer.MIN_VALUE / 2, Integer.MAX_VALUE, Integer.MAX_VALUE);
+        }
+        index();
+
         //Draw arrow to start state;
         g2d.setPaint(Color.GREEN);
-        g2d.setStroke(new BasicStroke(4));
-        g2d.drawLine(0, 0, BOX_DIM, BOX_DIM);
+        g2d.setStroke(STROKE);
+        if (area.intersects(-4, -4, BOX_DIM + 8, BOX_DIM + 8)) {
+            g2d.drawLine(0, 0, BOX_DIM, BOX_DIM);
+        }
 
         //Draw each state.
-        for (Coord c : states.keySet()) {
-            states.get(c).draw(c.getR(), c.getC(), g2d);
+        double scale = g2d.getTransform().getScaleX();
+        boolean round = 2 * STATE_RAD * scale >= ROUND_STATE_PIXELS;
+        for (State q : stateIndex.query(area)) {
+            Coord c = locations.get(q);
+            q.draw(c.getR(), c.getC(), g2d, round);
         }
 
         //Draw each transition.
-        for (Transition t : transitions) {
-
-            Coord start = locateState(t.getStart()), end = locateState(t.getEnd());
-
-            final int bufferFactor = 25; //How far arrow rises above horizontal/vertical
-            final double arrowSide = 0.15 * BOX_DIM; //This is NOT the side length of an arrow, just an arbitrary scaling factor
-            final int radiusOffset = (int) (0.75 * STATE_RAD); //To cover up the transition arc correctly with the arrow
-            final double recipSQRT2 = 0.71;
-
-            if (!start.equals(end)) {
-
-                int xi = start.c * BOX_DIM, yi = start.r * BOX_DIM, xf = end.c * BOX_DIM, yf = end.r * BOX_DIM;
-                g2d.setPaint(Color.BLACK);
-
-                if (yf < yi && xf != xi) {
-
-                    g2d.drawArc(xf < xi ? xf - Math.abs(xf - xi) : xi, yf, 2 * Math.abs(xf - xi), 2 * Math.abs(yf - yi), xf < xi ? 0 : 90, 90);
-                    g2d.drawString(t.getChars(), xf > xi ? (xf + xi) / 2 - Math.abs(xf - xi) / 8 : (xf + xi) / 2 + Math.abs(xf - xi) / 8, yf + Math.abs(yf - yi) / 12);
-
-                    int[] arrowXCoordinates = {
-                            (int) (xf > xi ? xf - radiusOffset : xf + radiusOffset),
-                            (int) (xf > xi ? xf - radiusOffset - arrowSide : xf + radiusOffset + arrowSide),
-                            (int) (xf > xi ? xf - radiusOffset - arrowSide : xf + radiusOffset + arrowSide)
-                    };
-                    int[] arrowYCoordinates = {yf, yf + (int) arrowSide, yf - (int) arrowSide / 2};
-                    g2d.setPaint(Color.ORANGE);
-                    g2d.fillPolygon(arrowXCoordinates, arrowYCoordinates, 3);
-
-                } else if (yf > yi && xf != xi) {
-
-                    g2d.drawArc(xf < xi ? xf - Math.abs(xf - xi) : xi, yi - Math.abs(yf - yi), 2 * Math.abs(xf - xi), 2 * Math.abs(yf - yi), xf < xi ? 270 : 180, 90);
-                    g2d.drawString(t.getChars(), xf > xi ? (xf + xi) / 2 - Math.abs(xf - xi) / 8 : (xf + xi) / 2 + Math.abs(xf - xi) / 8, yf - Math.abs(yf - yi) / 12);
-
-                    int[] arrowXCoordinates = {
-                            (int) (xf > xi ? xf - radiusOffset : xf + radiusOffset),
-                            (int) (xf > xi ? xf - radiusOffset - arrowSide : xf + radiusOffset + arrowSide),
-                            (int) (xf > xi ? xf - radiusOffset - arrowSide : xf + radiusOffset + arrowSide)
-                    };
-                    int[] arrowYCoordinates = {yf, yf + (int) arrowSide / 2, yf - (int) arrowSide};
-                    g2d.setPaint(Color.ORANGE);
-                    g2d.fillPolygon(arrowXCoordinates, arrowYCoordinates, 3);
-
-                } else if (yf == yi && xf != xi) {
-
-                    g2d.drawArc(xf < xi ? xf : xi, yi - bufferFactor, Math.abs(xf - xi), 2 * bufferFactor, xf > xi ? 0 : 180, 180);
-                    g2d.drawString(t.getChars(), (xi + xf) / 2, xi < xf ? yi - bufferFactor - 10 : yi + bufferFactor + 20);
-
-                    int[] arrowXCoordinates = {
-                            (int) (xf > xi ? xf - recipSQRT2 * radiusOffset : xf + recipSQRT2 * radiusOffset),
-                            (int) (xf > xi ? xf - recipSQRT2 * (radiusOffset + arrowSide) : xf + recipSQRT2 * (radiusOffset + arrowSide)),
-                            (int) (xf > xi ? xf - recipSQRT2 * (radiusOffset + 2 * arrowSide) : xf + recipSQRT2 * (radiusOffset + 2 * arrowSide))
-                    };
-                    int[] arrowYCoordinates = {
-                            (int) (xf > xi ? yf - recipSQRT2 * radiusOffset : yf + recipSQRT2 * radiusOffset),
-                            (int) (xf > xi ? yf - recipSQRT2 * (radiusOffset + 1.5 * arrowSide) : yf + recipSQRT2 * (radiusOffset + 1.5 * arrowSide)),
-                            (int) (xf > xi ? yf - recipSQRT2 * (radiusOffset - arrowSide / 4) : yf + recipSQRT2 * (radiusOffset - arrowSide / 4))
-                    };
-                    //Magic numbers experimentally determined
-                    g2d.setPaint(Color.ORANGE);
-                    g2d.fillPolygon(arrowXCoordinates, arrowYCoordinates, 3);
-
-                } else /* (xf == xi) */ {
-
-                    g2d.drawArc(xi - bufferFactor, yf < yi ? yf : yi, 2 * bufferFactor, Math.abs(yf - yi), yf < yi ? 90 : 270, 180);
-                    g2d.drawString(t.getChars(), yi > yf ? xi - bufferFactor - 18 : xi + bufferFactor + 10, (yi + yf) / 2);
-                    //No one even knows why the pixel shift factor for different sides has to be different... -Douglas
-
-                    int[] arrowXCoordinates = {
-                            (int) (yf > yi ? xf + recipSQRT2 * radiusOffset : xf - recipSQRT2 * radiusOffset),
-                            (int) (yf > yi ? xf + recipSQRT2 * (radiusOffset + 1.5 * arrowSide) : xf - recipSQRT2 * (radiusOffset + 1.5 * arrowSide)),
-                            (int) (yf > yi ? xf + recipSQRT2 * (radiusOffset - 0.7 * arrowSide) : xf - recipSQRT2 * (radiusOffset - 0.7 * arrowSide))
-                    };
-                    int[] arrowYCoordinates = {
-                            (int) (yf > yi ? yf - recipSQRT2 * radiusOffset : yf + recipSQRT2 * radiusOffset),
-                            (int) (yf > yi ? yf - recipSQRT2 * (radiusOffset + 1.5 * arrowSide) : yf + recipSQRT2 * (radiusOffset + 1.5 * arrowSide)),
-                            (int) (yf > yi ? yf - recipSQRT2 * (radiusOffset + 2 * arrowSide) : yf + recipSQRT2 * (radiusOffset + 2 * arrowSide))
-                    };
-                    //Magic numbers experimentally determined
-                    g2d.setPaint(Color.ORANGE);
-                    g2d.fillPolygon(arrowXCoordinates, arrowYCoordinates, 3);
-                }
+        boolean details = scale >= LABEL_SCALE;
+        for (Transition t : transitionIndex.query(area)) {
+            cachedShapeOf(t).draw(g2d, details);
+        }
+    }
+
+    /**
+     * Builds the spatial indexes the first time they're needed. From then on every edit keeps them up to date.
+     */
+    private void index() {
+        if (stateIndex != null) {
+            return;
+        }
+        stateIndex = new SpatialIndex<State>(BOX_DIM);
+        transitionIndex = new SpatialIndex<Transition>(BOX_DIM);
+        for (State q : locations.keySet()) {
+            stateIndex.put(q, boundsOf(q));
+        }
+        for (Map<State, Transition> fromState : outgoing.values()) {
+            for (Transition t : fromState.values()) {
+                transitionIndex.put(t, boundsOf(t));
+            }
+        }
+    }
+
+    /**
+     * Works out where a transition is drawn: an arc (or a loop), its characters and an arrowhead.
+     *
+     * @param t The transition in question.
+     * @return The shapes making up the drawing of the transition.
+     */
+    private TransitionShape shapeOf(Transition t) {
+
+        Coord start = locateState(t.getStart()), end = locateState(t.getEnd());
+
+        final int bufferFactor = 25; //How far arrow rises above horizontal/vertical
+        final double arrowSide = 0.15 * BOX_DIM; //This is NOT the side length of an arrow, just an arbitrary scaling factor
+        final int radiusOffset = (int) (0.75 * STATE_RAD); //To cover up the transition arc correctly with the arrow
+        final double recipSQRT2 = 0.71;
+
+        if (!start.equals(end)) {
+
+            int xi = start.c * BOX_DIM, yi = start.r * BOX_DIM, xf = end.c * BOX_DIM, yf = end.r * BOX_DIM;
+            if (yf < yi && xf != xi) {
+
+                Shape curve = new Arc2D.Double(xf < xi ? xf - Math.abs(xf - xi) : xi, yf, 2 * Math.abs(xf - xi), 2 * Math.abs(yf - yi), xf < xi ? 0 : 90, 90, Arc2D.OPEN);
+                Point label = new Point(xf > xi ? (xf + xi) / 2 - Math.abs(xf - xi) / 8 : (xf + xi) / 2 + Math.abs(xf - xi) / 8, yf + Math.abs(yf - yi) / 12);
 
-            } else { //Start and end states are the same.
+                int[] arrowXCoordinates = {
+                        (int) (xf > xi ? xf - radiusOffset : xf + radiusOffset),
+                        (int) (xf > xi ? xf - radiusOffset - arrowSide : xf + radiusOffset + arrowSide),
+                        (int) (xf > xi ? xf - radiusOffset - arrowSide : xf + radiusOffset + arrowSide)
+                };
+                int[] arrowYCoordinates = {yf, yf + (int) arrowSide, yf - (int) arrowSide / 2};
+                return new TransitionShape(t.getChars(), curve, label, new Polygon(arrowXCoordinates, arrowYCoordinates, 3));
+
+            } else if (yf > yi && xf != xi) {
+
+                Shape curve = new Arc2D.Double(xf < xi ? xf - Math.abs(xf - xi) : xi, yi - Math.abs(yf - yi), 2 * Math.abs(xf - xi), 2 * Math.abs(yf - yi), xf < xi ? 270 : 180, 90, Arc2D.OPEN);
+                Point label = new Point(xf > xi ? (xf + xi) / 2 - Math.abs(xf - xi) / 8 : (xf + xi) / 2 + Math.abs(xf - xi) / 8, yf - Math.abs(yf - yi) / 12);
 
-                g2d.setPaint(Color.BLACK);
-                int x = start.c * BOX_DIM, y = start.r * BOX_DIM;
+                int[] arrowXCoordinates = {
+                        (int) (xf > xi ? xf - radiusOffset : xf + radiusOffset),
+                        (int) (xf > xi ? xf - radiusOffset - arrowSide : xf + radiusOffset + arrowSide),
+                        (int) (xf > xi ? xf - radiusOffset - arrowSide : xf + radiusOffset + arrowSide)
+                };
+                int[] arrowYCoordinates = {yf, yf + (int) arrowSide / 2, yf - (int) arrowSide};
+                return new TransitionShape(t.getChars(), curve, label, new Polygon(arrowXCoordinates, arrowYCoordinates, 3));
 
-                int xLabelOffset = t.getChars().equals("01") ? 7 : 3; //Guesswork.
-                g2d.drawString(t.getChars(), x - xLabelOffset, y - (int) (4 * STATE_RAD));
+            } else if (yf == yi && xf != xi) {
 
-                g2d.drawOval(x - (int) (STATE_RAD), y - 4 * STATE_RAD + 5, STATE_RAD * 2, STATE_RAD * 3);
+                Shape curve = new Arc2D.Double(xf < xi ? xf : xi, yi - bufferFactor, Math.abs(xf - xi), 2 * bufferFactor, xf > xi ? 0 : 180, 180, Arc2D.OPEN);
+                Point label = new Point((xi + xf) / 2, xi < xf ? yi - bufferFactor - 10 : yi + bufferFactor + 20);
 
                 int[] arrowXCoordinates = {
-                        (int) (x + 0.6 * radiusOffset),
-                        (int) (x + 0.6 * (radiusOffset - 0.6 * arrowSide)),
-                        (int) (x + 0.6 * (radiusOffset + 1.2 * arrowSide))
+                        (int) (xf > xi ? xf - recipSQRT2 * radiusOffset : xf + recipSQRT2 * radiusOffset),
+                        (int) (xf > xi ? xf - recipSQRT2 * (radiusOffset + arrowSide) : xf + recipSQRT2 * (radiusOffset + arrowSide)),
+                        (int) (xf > xi ? xf - recipSQRT2 * (radiusOffset + 2 * arrowSide) : xf + recipSQRT2 * (radiusOffset + 2 * arrowSide))
                 };
                 int[] arrowYCoordinates = {
-                        (int) (y - radiusOffset),
-                        (int) (y - radiusOffset - arrowSide),
-                        (int) (y - radiusOffset - 0.6 * arrowSide)
+                        (int) (xf > xi ? yf - recipSQRT2 * radiusOffset : yf + recipSQRT2 * radiusOffset),
+                        (int) (xf > xi ? yf - recipSQRT2 * (radiusOffset + 1.5 * arrowSide) : yf + recipSQRT2 * (radiusOffset + 1.5 * arrowSide)),
+                        (int) (xf > xi ? yf - recipSQRT2 * (radiusOffset - arrowSide / 4) : yf + recipSQRT2 * (radiusOffset - arrowSide / 4))
                 };
+                //Magic numbers experimentally determined
+                return new TransitionShape(t.getChars(), curve, label, new Polygon(arrowXCoordinates, arrowYCoordinates, 3));
 
-                g2d.setPaint(Color.ORANGE);
-                g2d.fillPolygon(arrowXCoordinates, arrowYCoordinates, 3);
+            } else /* (xf == xi) */ {
+
+                Shape curve = new Arc2D.Double(xi - bufferFactor, yf < yi ? yf : yi, 2 * bufferFactor, Math.abs(yf - yi), yf < yi ? 90 : 270, 180, Arc2D.OPEN);
+                Point label = new Point(yi > yf ? xi - bufferFactor - 18 : xi + bufferFactor + 10, (yi + yf) / 2);
+                //No one even knows why the pixel shift factor for different sides has to be different... -Douglas
+
+                int[] arrowXCoordinates = {
+                        (int) (yf > yi ? xf + recipSQRT2 * radiusOffset : xf - recipSQRT2 * radiusOffset),
+                        (int) (yf > yi ? xf + recipSQRT2 * (radiusOffset + 1.5 * arrowSide) : xf - recipSQRT2 * (radiusOffset + 1.5 * arrowSide)),
+                        (int) (yf > yi ? xf + recipSQRT2 * (radiusOffset - 0.7 * arrowSide) : xf - recipSQRT2 * (radiusOffset - 0.7 * arrowSide))
+                };
+                int[] arrowYCoordinates = {
+                        (int) (yf > yi ? yf - recipSQRT2 * radiusOffset : yf + recipSQRT2 * radiusOffset),
+                        (int) (yf > yi ? yf - recipSQRT2 * (radiusOffset + 1.5 * arrowSide) : yf + recipSQRT2 * (radiusOffset + 1.5 * arrowSide)),
+                        (int) (yf > yi ? yf - recipSQRT2 * (radiusOffset + 2 * arrowSide) : yf + recipSQRT2 * (radiusOffset + 2 * arrowSide))
+                };
+                //Magic numbers experimentally determined
+                return new TransitionShape(t.getChars(), curve, label, new Polygon(arrowXCoordinates, arrowYCoordinates, 3));
             }
+
+        } else { //Start and end states are the same.
+
+            int x = start.c * BOX_DIM, y = start.r * BOX_DIM;
+
+            int xLabelOffset = t.getChars().equals("01") ? 7 : 3; //Guesswork.
+            Point label = new Point(x - xLabelOffset, y - (int) (4 * STATE_RAD));
+
+            Shape curve = new Ellipse2D.Double(x - (int) (STATE_RAD), y - 4 * STATE_RAD + 5, STATE_RAD * 2, STATE_RAD * 3);
+
+            int[] arrowXCoordinates = {
+                    (int) (x + 0.6 * radiusOffset),
+                    (int) (x + 0.6 * (radiusOffset - 0.6 * arrowSide)),
+                    (int) (x + 0.6 * (radiusOffset + 1.2 * arrowSide))
+            };
+            int[] arrowYCoordinates = {
+                    (int) (y - radiusOffset),
+                    (int) (y - radiusOffset - arrowSide),
+                    (int) (y - radiusOffset - 0.6 * arrowSide)
+            };
+
+            return new TransitionShape(t.getChars(), curve, label, new Polygon(arrowXCoordinates, arrowYCoordinates, 3));
         }
     }
 
@@ -338,81 +1177,224 @@ public class DFA {
             return false;
         }
         states.put(new Coord(r, c), state);
+        locations.put(state, new Coord(r, c));
+        outgoing.put(state, new HashMap<State, Transition>());
+        incoming.put(state, new HashMap<State, Transition>());
+        transitionFunction.addState(state);
+        if (stateIndex != null) {
+            stateIndex.put(state, boundsOf(state));
+        }
+        modCount++;
+        publish(state);
+        for (DFAListener l : listeners) {
+            l.stateAdded(state, boundsOf(state));
+        }
         return true;
     }
 
+    /**
+     * Adds a state in the next spot of a row by row layout of the grid, for DFAs that are built rather than drawn.
+     * The start state takes the first spot.
+     *
+     * @param accept Whether the new state is an accept state.
+     * @return The new state.
+     */
+    State addLaidOutState(boolean accept) {
+        State q = new State(accept, BOX_DIM, STATE_RAD);
+        int index = states.size();
+        addState(1 + index / Game.LINES, 1 + index % Game.LINES, q);
+        return q;
+    }
+
     public void removeState(Coord loc) {
         if (loc.r == 1 && loc.c == 1) {
             return;
         }
         State s = states.get(loc);
-        Iterator<Transition> it = transitions.iterator();
-        while (it.hasNext()) {
-            Transition t = it.next();
-            if (t.connectsTo(s)) {
+        if (s == null) {
+            return;
+        }
+
+        // Only the transitions touching s need to go, and the adjacency maps hand them over directly
+        List<Transition> removed = new ArrayList<Transition>(outgoing.get(s).values());
+        List<State> changed = new ArrayList<State>();
+        changed.add(s);
+        for (Transition t : incoming.get(s).values()) {
+            if (t.getStart() != s) {
+                removed.add(t);
+                changed.add(t.getStart());
+            }
+        }
+        List<Rectangle> removedBounds = new ArrayList<Rectangle>();
+        for (Transition t : removed) {
+            removedBounds.add(boundsOf(t));
+        }
+        Rectangle stateBounds = boundsOf(s);
+
+        if (stateIndex != null) {
+            stateIndex.remove(s);
+            for (Transition t : removed) {
+                transitionIndex.remove(t);
+            }
+        }
+        for (Transition t : outgoing.remove(s).values()) {
+            transitionFunction.removeRule(t);
+            shapes.remove(t);
+            incoming.get(t.getEnd()).remove(s);
+        }
+        for (Transition t : incoming.remove(s).values()) {
+            if (t.getStart() != s) {
                 transitionFunction.removeRule(t);
-                it.remove();
+                shapes.remove(t);
+                outgoing.get(t.getStart()).remove(s);
             }
         }
+        transitionFunction.removeState(s);
         states.remove(loc);
+        locations.remove(s);
+        modCount++;
+        publish(changed.toArray(new State[changed.size()]));
+
+        for (DFAListener l : listeners) {
+            for (int i = 0; i < removed.size(); i++) {
+                l.transitionChanged(removed.get(i), removedBounds.get(i));
+            }
+            l.stateRemoved(s, stateBounds);
+        }
     }
 
     public void addTransition(Coord loc, Coord locf, String str) {
+        addTransition(states.get(loc), states.get(locf), str);
+    }
+
+    /**
+     * Adds a transition between two states, or merges the characters into the existing transition between them.
+     *
+     * @param q1 The state the transition leaves.
+     * @param q2 The state the transition enters.
+     * @param str The characters the transition reads.
+     */
+    void addTransition(State q1, State q2, String str) {
     	
     	if (str.equals("")){ // Do nothing if string is empty
     		return;
     	}
     	
-        State q1 = states.get(loc);
-        State q2 = states.get(locf);
-        Transition search = new Transition(q1, q2, str);
+        Transition search = new Transition(q1, q2, Alphabet.parse(str).toString());
         
-        System.out.println(search.hashCode());
+        if (q1 == null || q2 == null) {
+        	return;
+        }
         
-        // This checks if there is a transition already between the same states or "semiequal"
-        if (transitions.contains(search)) {
-        	// This then finds the that transition and updates it
-        	// NOTE: This could be more efficient if transitions were a map instead of set
-        	
-        	List<Transition> list = new ArrayList<Transition>(transitions);
-        	Transition target = null;
-        	
-        	// Looks through and finds the transition that is semiequal 
-        	for (Transition t : list) {
-        		if (t.equals(search)){
-        			target = t;
-        			break;
-        		}
-        	}
-        	
-        	// Checks if full equal, if it is does do nothing, else updates it
-        	if (!target.fullyEquals(search)) {
-        		if (target.getChars() == "1" && search.getChars() == "0") {
-        			transitionFunction.removeRule(target);
-        			target.setChars("01");
-        			transitionFunction.addRule(target);
-        		} else if (target.getChars() == "0" && search.getChars() == "1") {
-        			transitionFunction.removeRule(target);
-        			target.setChars("01");
-        			transitionFunction.addRule(target);
-        		}
+        Transition target = outgoing.get(q1).get(q2);
+        if (target == null) {
+        	outgoing.get(q1).put(q2, search);
+        	incoming.get(q2).put(q1, search);
+        	transitionFunction.addRule(search);
+        	if (transitionIndex != null) {
+        		transitionIndex.put(search, boundsOf(search));
         	}
+        	modCount++;
+        	publish(q1);
+        	fireTransitionChanged(search, null);
         	return;
-        	
-        } else {
-        	
-        	if (q1 == null || q2 == null) {
-        		return;
+        }
+        
+        // There already is a transition between the same states, so merge the new characters into it
+        Alphabet existing = Alphabet.parse(target.getChars());
+        Alphabet added = Alphabet.parse(str).minus(existing);
+        if (!added.isEmpty()) {
+        	Rectangle before = boundsOf(target);
+        	transitionFunction.addRule(new Transition(q1, q2, added.toString()));
+        	target.setChars(existing.union(added).toString());
+        	if (transitionIndex != null) {
+        		transitionIndex.put(target, boundsOf(target));
         	}
-        	
-        	transitions.add(search);
-        	transitionFunction.addRule(search);
-        	return;
+        	modCount++;
+        	publish(q1);
+        	fireTransitionChanged(target, before);
         }
     }
 
     /**
-     * Finds the coordinates (in terms of rows and columns on the 5x5 grid) of the nearest grid space to the specified point.
+     * Removes a transition along with all of its characters.
+     *
+     * @param t A transition of the DFA.
+     */
+    private void removeTransition(Transition t) {
+        Rectangle before = boundsOf(t);
+        transitionFunction.removeRule(t);
+        outgoing.get(t.getStart()).remove(t.getEnd());
+        incoming.get(t.getEnd()).remove(t.getStart());
+        shapes.remove(t);
+        if (transitionIndex != null) {
+            transitionIndex.remove(t);
+        }
+        modCount++;
+        publish(t.getStart());
+        for (DFAListener l : listeners) {
+            l.transitionChanged(t, before);
+        }
+    }
+
+    /**
+     * @param l A listener to be told about every change to the DFA from now on.
+     */
+    public void addListener(DFAListener l) {
+        listeners.add(l);
+    }
+
+    /**
+     * @param l A listener that should no longer be told about changes.
+     */
+    public void removeListener(DFAListener l) {
+        listeners.remove(l);
+    }
+
+    private void fireTransitionChanged(Transition t, Rectangle before) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        Rectangle bounds = boundsOf(t);
+        if (before != null) {
+            bounds = bounds.union(before);
+        }
+        for (DFAListener l : listeners) {
+            l.transitionChanged(t, bounds);
+        }
+    }
+
+    /**
+     * @return The area a state is drawn in.
+     */
+    private Rectangle boundsOf(State q) {
+        Coord c = locateState(q);
+        Rectangle bounds = new Rectangle(c.c * BOX_DIM - STATE_RAD, c.r * BOX_DIM - STATE_RAD, 2 * STATE_RAD, 2 * STATE_RAD);
+        bounds.grow(2, 2);
+        return bounds;
+    }
+
+    /**
+     * @return The area a transition is drawn in, with room for its characters.
+     */
+    private Rectangle boundsOf(Transition t) {
+        return cachedShapeOf(t).getBounds();
+    }
+
+    /**
+     * Looks up how a transition is drawn, working it out again if its characters changed since.
+     */
+    private TransitionShape cachedShapeOf(Transition t) {
+        TransitionShape shape = shapes.get(t);
+        if (shape == null || !shape.chars.equals(t.getChars())) {
+            shape = shapeOf(t);
+            shapes.put(t, shape);
+        }
+        return shape;
+    }
+
+    /**
+     * Finds the coordinates (in terms of rows and columns on the grid) of the nearest grid space to the specified point.
      *
      * @param x_int Integer x coordinate
      * @param y_int Integer y coordinate.
@@ -450,8 +1432,27 @@ public class DFA {
      * @return true if (x,y) is within DFA.CLICK_RAD of the nearest grid space AND there is a state at that grid space
      */
     public boolean onState(int x, int y) {
-        Coord loc = nearestGridSpace(x, y);
-        return onStateSpace(x, y) && (states.get(loc) != null);
+        return stateAt(x, y) != null;
+    }
+
+    /**
+     * Finds the state a click landed on, through the same index the board is drawn from.
+     *
+     * @param x the x coordinate.
+     * @param y the y coordinate
+     * @return The state within DFA.CLICK_RAD of (x,y), or null if there is none.
+     */
+    State stateAt(int x, int y) {
+        index();
+        for (State q : stateIndex.query(new Rectangle(x - CLICK_RAD, y - CLICK_RAD, 2 * CLICK_RAD, 2 * CLICK_RAD))) {
+            Coord loc = locations.get(q);
+            double dx = x - BOX_DIM * loc.c;
+            double dy = y - BOX_DIM * loc.r;
+            if (Math.sqrt(dx * dx + dy * dy) < CLICK_RAD) {
+                return q;
+            }
+        }
+        return null;
     }
 
     /**
@@ -461,9 +1462,9 @@ public class DFA {
      * @param y The y value of the onscreen location of the state to be removed.
      */
     public void handleCtrlClick(int x, int y) {
-        if (onState(x, y)) {
-            Coord loc = nearestGridSpace(x, y);
-            removeState(loc);
+        State q = stateAt(x, y);
+        if (q != null) {
+            removeState(locateState(q));
         }
     }
 
@@ -474,34 +1475,122 @@ public class DFA {
      * @param y The y value of the onscreen location of the state in question.
      */
     public void handleAltClick(int x, int y) {
-        if (onState(x, y)) {
-            states.get(nearestGridSpace(x, y)).toggleAccept();
+        State q = stateAt(x, y);
+        if (q != null) {
+            toggleAccept(q);
+        }
+    }
+
+    /**
+     * Makes a state an accept state, or stops it being one. Accept states should only ever be changed through here, so
+     * the change is counted and published.
+     *
+     * @param q A state of the DFA.
+     */
+    void toggleAccept(State q) {
+        q.toggleAccept();
+        modCount++;
+        publish(q);
+        for (DFAListener l : listeners) {
+            l.acceptChanged(q, boundsOf(q));
         }
     }
 
+    /**
+     * Asks which characters a new transition should read. Small alphabets offer every character and all of them as
+     * choices; larger ones take a set typed in the form of {@link Alphabet#parse(String)}, such as a-z. An NFA also offers
+     * {@link #EPSILON}, for a transition that reads nothing.
+     *
+     * @return The characters, in the form of {@link Alphabet#parse(String)}, or "" if the prompt was cancelled.
+     */
     public String displayTransitionPrompt() {
-        Object[] opts = {"0", "1", "0 or 1"};
+        if (alphabet.size() <= 4) {
+            Object[] opts = new Object[alphabet.size() + (nondeterministic ? 2 : 1)];
+            StringBuilder all = new StringBuilder();
+            for (int i = 0; i < alphabet.size(); i++) {
+                // Escaped, so a blank shows up and a backslash isn't read back as a dangling escape
+                opts[i] = Alphabet.ofChars(String.valueOf(alphabet.charAt(i))).toString();
+                all.append(i == 0 ? "" : " or ").append(opts[i]);
+            }
+            opts[alphabet.size()] = all.toString();
+            if (nondeterministic) {
+                opts[alphabet.size() + 1] = String.valueOf(EPSILON);
+            }
 
-        String s = (String) JOptionPane.showInputDialog(null, "Which of the following characters should lead from state q_1 to q_2?",
-                "Specify transition character", JOptionPane.PLAIN_MESSAGE, null, opts, "0");
+            String s = (String) JOptionPane.showInputDialog(null, "Which of the following characters should lead from state q_1 to q_2?",
+                    "Specify transition character", JOptionPane.PLAIN_MESSAGE, null, opts, opts[0]);
 
-        // Keeps from crashing when .equals is called on a null pointer
-        if (s == null) {
-        	s = "";
+            // Keeps from crashing when .equals is called on a null pointer
+            if (s == null) {
+            	s = "";
+            }
+
+            if (s.equals(all.toString())) {
+                s = alphabet.toString();
+            }
+
+            return s;
         }
-        
-        if (s.equals("0 or 1")) {
-            s = "01";
+
+        String message = "Which characters of " + alphabet + " should lead from state q_1 to q_2? (e.g. a-z"
+                + (nondeterministic ? ", or " + EPSILON + " to read nothing)" : ")");
+        Alphabet allowed = nondeterministic ? alphabet.union(Alphabet.ofChars(String.valueOf(EPSILON))) : alphabet;
+        while (true) {
+            String s = JOptionPane.showInputDialog(null, message, "Specify transition characters",
+                    JOptionPane.PLAIN_MESSAGE);
+            if (s == null) {
+                return "";
+            }
+            try {
+                Alphabet chosen = Alphabet.parse(s).intersect(allowed);
+                if (!chosen.isEmpty()) {
+                    return chosen.toString();
+                }
+                message = "None of those are in " + alphabet + ". Which characters should lead from state q_1 to q_2?";
+            } catch (IllegalArgumentException e) {
+                message = e.getMessage() + ". Which characters of " + alphabet + " should lead from state q_1 to q_2?";
+            }
+        }
+    }
+
+    /**
+     * Reports that a transition is being dragged out from (x, y) to (xf, yf), so its line can be redrawn.
+     *
+     * @param x The x value of the point the drag started at.
+     * @param y The y value of the point the drag started at.
+     * @param xf The x value of the point the drag is at now.
+     * @param yf The y value of the point the drag is at now.
+     */
+    public void handleDragProgress(int x, int y, int xf, int yf) {
+        Rectangle bounds = new Rectangle(Math.min(x, xf), Math.min(y, yf), Math.abs(xf - x), Math.abs(yf - y));
+        bounds.grow(4, 4);
+        fireDragChanged(bounds);
+    }
+
+    /**
+     * Reports that the transition being dragged out was let go, so its line can be erased.
+     */
+    public void handleDragEnd() {
+        fireDragChanged(null);
+    }
+
+    private void fireDragChanged(Rectangle bounds) {
+        Rectangle dirty = dragBounds == null ? bounds : bounds == null ? dragBounds : dragBounds.union(bounds);
+        dragBounds = bounds;
+        if (dirty == null) {
+            return;
+        }
+        for (DFAListener l : listeners) {
+            l.dragChanged(dirty);
         }
-                
-        return s;
     }
 
     public void handleDrag(int x, int y, int xf, int yf) {
-        if (onState(xf, yf) && onStateSpace(x, y) && onStateSpace(xf, yf) && (!nearestGridSpace(x, y).equals(nearestGridSpace(xf, yf)))) {
+        State from = stateAt(x, y), to = stateAt(xf, yf);
+        if (from != null && to != null && from != to) {
             String s = displayTransitionPrompt();
 
-            addTransition(nearestGridSpace(x, y), nearestGridSpace(xf, yf), s);
+            addTransition(from, to, s);
         }
     }
 
@@ -512,10 +1601,11 @@ public class DFA {
      * @param y The y value of the onscreen location of the state to receive a transition.
      */
     public void handleDoubleClick(int x, int y) {
-        if (onState(x, y) && onStateSpace(x, y)) {
+        State q = stateAt(x, y);
+        if (q != null) {
             String s = displayTransitionPrompt();
 
-            addTransition(nearestGridSpace(x, y), nearestGridSpace(x, y), s);
+            addTransition(q, q, s);
         }
     }
 
@@ -523,10 +1613,81 @@ public class DFA {
 
     }
 
+    /**
+     * Passes strings on to another sink and counts them, for {@link Metrics#STRINGS_TESTED}.
+     */
+    private static class CountingSink implements PrefixSimulation.Sink {
+        private final PrefixSimulation.Sink sink;
+        private long count;
+
+        CountingSink(PrefixSimulation.Sink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public boolean test(long rank, int length, boolean first, boolean second) {
+            count++;
+            return sink.test(rank, length, first, second);
+        }
+
+        /**
+         * @param begin The value of System.nanoTime() when the walk started.
+         */
+        void record(long begin) {
+            Metrics.TEST_ON_ALL.record(System.nanoTime() - begin);
+            Metrics.STRINGS_TESTED.record(count);
+        }
+    }
+
+    /**
+     * The precomputed drawing of a transition.
+     */
+    private static class TransitionShape {
+        /**
+         * The characters of the transition when the shape was computed.
+         */
+        private final String chars;
+        private final Shape curve;
+        private final Point label;
+        private final Polygon arrow;
+
+        public TransitionShape(String chars, Shape curve, Point label, Polygon arrow) {
+            this.chars = chars;
+            this.curve = curve;
+            this.label = label;
+            this.arrow = arrow;
+        }
+
+        /**
+         * @return The area the transition is drawn in. The label is given a generous box, since its size depends on
+         * the font.
+         */
+        public Rectangle getBounds() {
+            Rectangle bounds = curve.getBounds().union(arrow.getBounds());
+            bounds = bounds.union(new Rectangle(label.x - 10, label.y - 30, 20 + 10 * chars.length(), 40));
+            bounds.grow(4, 4);
+            return bounds;
+        }
+
+        /**
+         * @param details Whether to draw the characters and the arrowhead, which are left out when zoomed too far out to
+         * make them out.
+         */
+        public void draw(Graphics2D g2d, boolean details) {
+            g2d.setPaint(Color.BLACK);
+            g2d.draw(curve);
+            if (details) {
+                g2d.drawString(chars, label.x, label.y);
+                g2d.setPaint(Color.ORANGE);
+                g2d.fillPolygon(arrow);
+            }
+        }
+    }
+
     /**
      * Represents a location in terms of row and column on our game grid.
      */
-    private class Coord {
+    class Coord {
         private int r;
         private int c;
 
@@ -0,0 +1,41 @@
+package com.slayerz.dfagame;
+
+import java.awt.Rectangle;
+
+/**
+ * Receives notice of every change to a DFA, along with the area of the board the change affects.
+ * The areas let a view repaint only what changed.
+ */
+public interface DFAListener {
+
+    /**
+     * @param q The state that was added.
+     * @param bounds The area the state is drawn in.
+     */
+    void stateAdded(State q, Rectangle bounds);
+
+    /**
+     * Called after the transitions of the state have been reported removed.
+     *
+     * @param q The state that was removed.
+     * @param bounds The area the state was drawn in.
+     */
+    void stateRemoved(State q, Rectangle bounds);
+
+    /**
+     * @param t The transition that was added, removed or given new characters.
+     * @param bounds The area the transition is or was drawn in, before and after the change.
+     */
+    void transitionChanged(Transition t, Rectangle bounds);
+
+    /**
+     * @param q The state that became, or stopped being, an accept state.
+     * @param bounds The area the state is drawn in.
+     */
+    void acceptChanged(State q, Rectangle bounds);
+
+    /**
+     * @param bounds The area covered by the transition being dragged out, before and after it moved or ended.
+     */
+    void dragChanged(Rectangle bounds);
+}
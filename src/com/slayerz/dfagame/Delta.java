@@ -1,40 +1,304 @@
 package com.slayerz.dfagame;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-import org.apache.commons.lang3.builder.HashCodeBuilder; 
+import java.util.Map;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
 
 /**
  * Represents the transition function of a DFA.
+ * <p>
+ * Alongside the list of rules, Delta keeps a compiled form of itself: every state is interned to a dense int id and
+ * every symbol class to a dense column, and the next state for (id, column) lives at {@code table[id * width + column]}.
+ * The table is patched whenever a rule is added or removed, so lookups never have to scan the rules.
+ * <p>
+ * Rules read ranges of characters rather than single characters. The characters are split into classes, the way regex
+ * engines split bytes: every range bound of every rule (and of the required symbols) starts a new class, so all the
+ * characters of a class always lead to the same state and share one column. A rule on {@code a-z} therefore costs the
+ * same as a rule on {@code 0}, and the table only grows with the number of distinct bounds, not with the alphabet.
+ * <p>
+ * Delta also counts the rules in every slot of the table. For the states registered with {@link #addState(State)} it
+ * keeps two running totals: (state, required symbol) pairs with no rule, and (state, symbol) pairs with more than one
+ * rule. Validity of the DFA is then a matter of reading two counters.
  */
 public class Delta {
-    private List<Rule> transitionRules;
+    /**
+     * Marks an empty slot of the compiled table (no rule for that state and symbol).
+     */
+    public static final int NO_STATE = -1;
+
+    /**
+     * Characters below this are looked up in a flat table, the rest by binary search over the classes.
+     */
+    private static final int LATIN = 256;
+
+    /**
+     * The rules, grouped by the state they leave.
+     */
+    private Map<State, List<Rule>> transitionRules;
+
+    /**
+     * Dense id of every state that has been seen by this transition function.
+     */
+    private Map<State, Integer> stateIds;
+
+    /**
+     * Inverse of stateIds.
+     */
+    private List<State> statesById;
+
+    /**
+     * The first character of every symbol class, in ascending order. Column i holds the characters from
+     * classStarts[i] up to the start of the next class. The first class always starts at character 0.
+     */
+    private int[] classStarts;
+
+    /**
+     * The number of columns (symbol classes) of the table.
+     */
+    private int width;
+
+    /**
+     * The column of every character below LATIN.
+     */
+    private int[] latinColumns;
+
+    /**
+     * For each column, the number of its characters that are required symbols: either all of them or none.
+     */
+    private int[] requiredWeights;
+
+    /**
+     * The compiled transition table. Row length is width, row capacity is table.length / width.
+     */
+    private int[] table;
+
+    /**
+     * The number of rules in each slot of the table. Laid out just like the table.
+     */
+    private int[] ruleCounts;
+
+    /**
+     * Whether the state with each id is currently registered as part of the DFA.
+     */
+    private boolean[] live;
+
+    /**
+     * The symbols every registered state needs a rule for.
+     */
+    private final Alphabet requiredSymbols;
+
+    /**
+     * (state, required symbol) pairs of registered states that have no rule.
+     */
+    private int missingRules;
+
+    /**
+     * (state, symbol) pairs of registered states that have more than one rule.
+     */
+    private int duplicateRules;
 
     public Delta() {
-        transitionRules = new ArrayList<Rule>();
+        this(Alphabet.EMPTY);
+    }
+
+    /**
+     * @param requiredSymbols The symbols every registered state must have exactly one rule for to be valid, taken
+     * literally.
+     */
+    public Delta(String requiredSymbols) {
+        this(Alphabet.ofChars(requiredSymbols));
+    }
+
+    /**
+     * @param requiredSymbols The symbols every registered state must have exactly one rule for to be valid.
+     */
+    public Delta(Alphabet requiredSymbols) {
+        transitionRules = new HashMap<State, List<Rule>>();
+        stateIds = new HashMap<State, Integer>();
+        statesById = new ArrayList<State>();
+        classStarts = new int[]{Character.MIN_VALUE};
+        width = 1;
+        latinColumns = new int[LATIN];
+        table = new int[0];
+        ruleCounts = new int[0];
+        live = new boolean[0];
+        this.requiredSymbols = requiredSymbols;
+
+        for (int i = 0; i < requiredSymbols.rangeCount(); i++) {
+            split(requiredSymbols.low(i));
+            split(requiredSymbols.high(i) + 1);
+        }
+        requiredWeights = new int[width];
+        for (int column = 0; column < width; column++) {
+            if (requiredSymbols.contains((char) classStarts[column])) {
+                requiredWeights[column] = classSize(column);
+            }
+        }
     }
 
     public void addRule(Transition transition) {
-        char[] symbols = transition.getChars().toCharArray();
-        for (char c : symbols) {
-            transitionRules.add(new Rule(transition.getStart(), transition.getEnd(), c));
+        Alphabet symbols = Alphabet.parse(transition.getChars());
+        if (symbols.isEmpty()) {
+            return;
+        }
+        for (int i = 0; i < symbols.rangeCount(); i++) {
+            split(symbols.low(i));
+            split(symbols.high(i) + 1);
+        }
+
+        Rule r = new Rule(transition.getStart(), transition.getEnd(), symbols);
+        List<Rule> rules = transitionRules.get(r.getStart());
+        if (rules == null) {
+            rules = new ArrayList<Rule>();
+            transitionRules.put(r.getStart(), rules);
+        }
+        rules.add(r);
+
+        int end = intern(r.getEnd());
+        int start = intern(r.getStart());
+        for (int i = 0; i < symbols.rangeCount(); i++) {
+            for (int column = columnOf(symbols.low(i)); column < width && classStarts[column] <= symbols.high(i);
+                 column++) {
+                // The first rule for a (state, symbol) pair wins, exactly as the old linear scan did
+                int slot = slot(start, column);
+                if (table[slot] == NO_STATE) {
+                    table[slot] = end;
+                }
+
+                ruleCounts[slot]++;
+                if (live[start]) {
+                    if (ruleCounts[slot] == 1) {
+                        missingRules -= requiredWeights[column];
+                    } else if (ruleCounts[slot] == 2) {
+                        duplicateRules += classSize(column);
+                    }
+                }
+            }
         }
     }
 
+    /**
+     * Registers a state with the transition function before any rule mentions it, so it already has an id.
+     *
+     * @param q The state to register.
+     * @return The dense id of q.
+     */
+    public int addState(State q) {
+        int id = intern(q);
+        if (!live[id]) {
+            live[id] = true;
+            adjustTotals(id, 1);
+        }
+        return id;
+    }
+
+    /**
+     * Unregisters a state, so it no longer counts towards validity. Its rules should be removed first.
+     *
+     * @param q The state to unregister.
+     */
+    public void removeState(State q) {
+        int id = getStateId(q);
+        if (id != NO_STATE && live[id]) {
+            adjustTotals(id, -1);
+            live[id] = false;
+        }
+    }
+
+    /**
+     * Determines if every registered state has exactly one rule for every required symbol, and no state has two rules
+     * for any symbol.
+     *
+     * @return True if the transition function is complete and deterministic, false otherwise.
+     */
+    public boolean isValid() {
+        return missingRules == 0 && duplicateRules == 0;
+    }
+
+    /**
+     * @return The number of (state, required symbol) pairs with no rule, over the registered states.
+     */
+    public int getMissingRuleCount() {
+        return missingRules;
+    }
+
+    /**
+     * @return The number of (state, symbol) pairs with more than one rule, over the registered states.
+     */
+    public int getDuplicateRuleCount() {
+        return duplicateRules;
+    }
+
+    /**
+     * @param q A state.
+     * @return The required symbols q has no rule for, as read by {@link Alphabet#parse(String)}.
+     */
+    public String getMissingSymbols(State q) {
+        Alphabet missing = Alphabet.EMPTY;
+        int id = getStateId(q);
+        for (int column = 0; column < width; column++) {
+            if (requiredWeights[column] > 0 && (id == NO_STATE || ruleCounts[slot(id, column)] == 0)) {
+                missing = missing.union(classOf(column));
+            }
+        }
+        return missing.toString();
+    }
+
+    /**
+     * @param q A state.
+     * @return The symbols q has more than one rule for, as read by {@link Alphabet#parse(String)}.
+     */
+    public String getDuplicateSymbols(State q) {
+        Alphabet duplicates = Alphabet.EMPTY;
+        int id = getStateId(q);
+        for (int column = 0; id != NO_STATE && column < width; column++) {
+            if (ruleCounts[slot(id, column)] > 1) {
+                duplicates = duplicates.union(classOf(column));
+            }
+        }
+        return duplicates.toString();
+    }
+
     public void removeRule(Transition transition) {
-        char[] symbols = transition.getChars().toCharArray();
-        
-        for (char c : symbols) {
-        	for (int i = 0; i < transitionRules.size(); i++) {
-        		Rule r = transitionRules.get(i);
-        		
-                if (r.getStart().equals(transition.getStart()) &&
-                        r.getEnd().equals(transition.getEnd()) &&
-                        r.getSymbol() == c) {
-                    transitionRules.remove(r);
-                    i--;
+        Alphabet symbols = Alphabet.parse(transition.getChars());
+        List<Rule> rules = transitionRules.get(transition.getStart());
+        if (rules == null) {
+            return;
+        }
+
+        int id = getStateId(transition.getStart());
+        Alphabet affected = Alphabet.EMPTY;
+        for (int i = 0; i < rules.size(); i++) {
+            Rule r = rules.get(i);
+            if (!r.getEnd().equals(transition.getEnd())) {
+                continue;
+            }
+
+            // Rules are only ever added on whole classes, so the overlap is made of whole classes too
+            Alphabet removed = r.getSymbols().intersect(symbols);
+            for (int k = 0; k < removed.rangeCount(); k++) {
+                for (int column = columnOf(removed.low(k)); column < width && classStarts[column] <= removed.high(k);
+                     column++) {
+                    countRemoved(id, column);
                 }
-        	}
+            }
+            affected = affected.union(removed);
+
+            r.symbols = r.getSymbols().minus(symbols);
+            if (r.getSymbols().isEmpty()) {
+                rules.remove(i);
+                i--;
+            }
+        }
+
+        for (int k = 0; k < affected.rangeCount(); k++) {
+            for (int column = columnOf(affected.low(k)); column < width && classStarts[column] <= affected.high(k);
+                 column++) {
+                repatch(transition.getStart(), id, column);
+            }
         }
     }
 
@@ -47,24 +311,267 @@ public class Delta {
      * @return The output of the described function.
      */
     public State GetNextState(State currentState, char symbol) {
-        for (Rule r : transitionRules) {
-            if (r.getStart().equals(currentState) && r.getSymbol() == symbol) {
-                return r.getEnd();
+        int next = GetNextState(getStateId(currentState), symbol);
+        return next == NO_STATE ? null : statesById.get(next);
+    }
+
+    /**
+     * Compiled form of {@link #GetNextState(State, char)}, working on dense state ids.
+     *
+     * @param stateId The id of the current state, as given by {@link #getStateId(State)}.
+     * @param symbol The symbol being read.
+     * @return The id of the next state, or NO_STATE if there is no rule for the pair.
+     */
+    public int GetNextState(int stateId, char symbol) {
+        if (Metrics.ENABLED) {
+            Metrics.RULE_LOOKUPS.increment();
+        }
+        if (stateId == NO_STATE) {
+            return NO_STATE;
+        }
+        return table[stateId * width + columnOf(symbol)];
+    }
+
+    /**
+     * @param q A state.
+     * @return The dense id of q, or NO_STATE if q was never registered and no rule has ever mentioned it.
+     */
+    public int getStateId(State q) {
+        Integer id = stateIds.get(q);
+        return id == null ? NO_STATE : id;
+    }
+
+    /**
+     * @param id A dense state id.
+     * @return The state with that id.
+     */
+    public State getState(int id) {
+        return statesById.get(id);
+    }
+
+    /**
+     * @return The number of ids handed out so far. Ids range from 0 (inclusive) to this (exclusive).
+     */
+    public int stateCount() {
+        return statesById.size();
+    }
+
+    /**
+     * @return The first character of every symbol class, in ascending order. Running a DFA on these is enough to know
+     * what it does on every character.
+     */
+    public String getAlphabet() {
+        char[] symbols = new char[width];
+        for (int column = 0; column < width; column++) {
+            symbols[column] = (char) classStarts[column];
+        }
+        return new String(symbols);
+    }
+
+    /**
+     * Picks one character from every class of characters that both transition functions treat alike. Running the two
+     * DFAs side by side on these is enough to know what they do on every character of the alphabet.
+     *
+     * @param alphabet The characters to pick from.
+     * @param first A transition function.
+     * @param second Another transition function, or null.
+     * @return The characters, in ascending order.
+     */
+    public static String symbolsFor(Alphabet alphabet, Delta first, Delta second) {
+        // Every class of the common refinement starts where a class of one side or the other starts
+        String starts = first.getAlphabet() + (second == null ? "" : second.getAlphabet());
+        char[] sorted = starts.toCharArray();
+        Arrays.sort(sorted);
+
+        StringBuilder symbols = new StringBuilder();
+        for (int i = 0; i < sorted.length; i++) {
+            if ((i == 0 || sorted[i] != sorted[i - 1]) && alphabet.contains(sorted[i])) {
+                symbols.append(sorted[i]);
+            }
+        }
+        return symbols.toString();
+    }
+
+    /**
+     * @param symbol A character.
+     * @return All the characters that behave exactly like symbol in every state.
+     */
+    public Alphabet getSymbolClass(char symbol) {
+        return classOf(columnOf(symbol));
+    }
+
+    /**
+     * @return The symbols every registered state must have exactly one rule for.
+     */
+    public Alphabet getRequiredSymbols() {
+        return requiredSymbols;
+    }
+
+    /**
+     * Recomputes a single slot of the table after rules for it were removed.
+     */
+    private void repatch(State start, int id, int column) {
+        int slot = slot(id, column);
+        char symbol = (char) classStarts[column];
+        table[slot] = NO_STATE;
+        for (Rule r : transitionRules.get(start)) {
+            if (r.getSymbols().contains(symbol)) {
+                table[slot] = getStateId(r.getEnd());
+                return;
+            }
+        }
+    }
+
+    private void countRemoved(int id, int column) {
+        int slot = slot(id, column);
+        ruleCounts[slot]--;
+        if (live[id]) {
+            if (ruleCounts[slot] == 0) {
+                missingRules += requiredWeights[column];
+            } else if (ruleCounts[slot] == 1) {
+                duplicateRules -= classSize(column);
+            }
+        }
+    }
+
+    /**
+     * Adds (sign 1) or takes away (sign -1) the contribution of a state's slots to the running totals.
+     */
+    private void adjustTotals(int id, int sign) {
+        for (int column = 0; column < width; column++) {
+            int count = ruleCounts[slot(id, column)];
+            if (count == 0) {
+                missingRules += sign * requiredWeights[column];
+            } else if (count > 1) {
+                duplicateRules += sign * classSize(column);
             }
         }
+    }
 
-        return null;
+    private int slot(int stateId, int column) {
+        return stateId * width + column;
+    }
+
+    /**
+     * Finds the column of the class a character belongs to.
+     */
+    private int columnOf(char symbol) {
+        if (symbol < LATIN) {
+            return latinColumns[symbol];
+        }
+        int lo = 0;
+        int hi = width - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (classStarts[mid] <= symbol) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    private int classSize(int column) {
+        int end = column + 1 < width ? classStarts[column + 1] : Character.MAX_VALUE + 1;
+        return end - classStarts[column];
+    }
+
+    private Alphabet classOf(int column) {
+        return Alphabet.range((char) classStarts[column], (char) (classStarts[column] + classSize(column) - 1));
+    }
+
+    /**
+     * Returns the id of a state, handing out a new one (and growing the table) if needed.
+     */
+    private int intern(State q) {
+        Integer id = stateIds.get(q);
+        if (id != null) {
+            return id;
+        }
+
+        id = statesById.size();
+        stateIds.put(q, id);
+        statesById.add(q);
+
+        int needed = statesById.size() * width;
+        if (needed > table.length) {
+            int oldLength = table.length;
+            table = Arrays.copyOf(table, Math.max(needed, 2 * oldLength));
+            Arrays.fill(table, oldLength, table.length, NO_STATE);
+            ruleCounts = Arrays.copyOf(ruleCounts, table.length);
+        }
+        if (statesById.size() > live.length) {
+            live = Arrays.copyOf(live, Math.max(statesById.size(), 2 * live.length));
+        }
+        return id;
+    }
+
+    /**
+     * Makes sure a class starts at a character, splitting the class it falls in if needed. Both halves start out as
+     * copies of the old column, since every character of the class behaved the same until now, so the running totals
+     * don't change either.
+     */
+    private void split(int at) {
+        if (at <= Character.MIN_VALUE || at > Character.MAX_VALUE) {
+            return;
+        }
+        int old = columnOf((char) at);
+        if (classStarts[old] == at) {
+            return;
+        }
+
+        int oldWidth = width;
+        int newWidth = oldWidth + 1;
+        int rows = Math.max(statesById.size(), 1);
+        int[] newTable = new int[rows * newWidth];
+        int[] newCounts = new int[newTable.length];
+        Arrays.fill(newTable, NO_STATE);
+        for (int id = 0; id < statesById.size(); id++) {
+            System.arraycopy(table, id * oldWidth, newTable, id * newWidth, old + 1);
+            System.arraycopy(table, id * oldWidth + old, newTable, id * newWidth + old + 1, oldWidth - old);
+            System.arraycopy(ruleCounts, id * oldWidth, newCounts, id * newWidth, old + 1);
+            System.arraycopy(ruleCounts, id * oldWidth + old, newCounts, id * newWidth + old + 1, oldWidth - old);
+        }
+        table = newTable;
+        ruleCounts = newCounts;
+
+        classStarts = insert(classStarts, old + 1, at);
+        width = newWidth;
+        // Null while the constructor is still splitting off the required symbols
+        if (requiredWeights != null) {
+            boolean required = requiredWeights[old] > 0;
+            requiredWeights = insert(requiredWeights, old + 1, 0);
+            requiredWeights[old] = required ? classSize(old) : 0;
+            requiredWeights[old + 1] = required ? classSize(old + 1) : 0;
+        }
+
+        for (int c = 0; c < LATIN; c++) {
+            if (c >= at && latinColumns[c] == old) {
+                latinColumns[c] = old + 1;
+            } else if (latinColumns[c] > old) {
+                latinColumns[c]++;
+            }
+        }
+    }
+
+    private static int[] insert(int[] array, int index, int value) {
+        int[] grown = new int[array.length + 1];
+        System.arraycopy(array, 0, grown, 0, index);
+        grown[index] = value;
+        System.arraycopy(array, index, grown, index + 1, array.length - index);
+        return grown;
     }
 
     private class Rule {
         public State start;
         public State end;
-        public char symbol;
+        public Alphabet symbols;
 
-        public Rule(State start, State end, char symbol) {
+        public Rule(State start, State end, Alphabet symbols) {
             this.start = start;
             this.end = end;
-            this.symbol = symbol;
+            this.symbols = symbols;
         }
 
         public State getStart() {
@@ -75,22 +582,22 @@ public class Delta {
             return end;
         }
 
-        public char getSymbol() {
-            return symbol;
+        public Alphabet getSymbols() {
+            return symbols;
         }
-        
+
         @Override
         public boolean equals(Object o) {
         	if (o instanceof Rule){
         		Rule r = (Rule) o;
-        		return start == r.getStart() && end == r.getEnd() && symbol == r.getSymbol();
+        		return start == r.getStart() && end == r.getEnd() && symbols.equals(r.getSymbols());
         	}
         	return false;
         }
-        
+
         @Override
         public int hashCode() {
-        	return new HashCodeBuilder(17, 97).append(start).append(end).append(symbol).toHashCode();
+        	return new HashCodeBuilder(17, 97).append(start).append(end).append(symbols).toHashCode();
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,144 @@
+package com.slayerz.dfagame;
+
+import java.util.Arrays;
+
+/**
+ * Decides whether two DFAs recognize the same language, using the Hopcroft-Karp union-find algorithm.
+ * <p>
+ * Both automata are read through the compiled tables of their {@link Delta}s. A missing rule is treated as a move to an
+ * implicit, rejecting dead state, so incomplete automata can be compared too. The check runs in near-linear time in the
+ * number of states times the size of the alphabet, no matter how long the distinguishing strings would be.
+ */
+public class Equivalence {
+
+    private final Delta first;
+    private final Delta second;
+
+    /**
+     * The union of both alphabets.
+     */
+    private final String alphabet;
+
+    /**
+     * Node ids of the first automaton are its state ids, followed by its dead state. The second automaton comes right
+     * after that.
+     */
+    private final int firstDead;
+    private final int secondOffset;
+    private final int secondDead;
+
+    private final int[] parent;
+
+    private int[] stack;
+    private int stackSize;
+
+    private Equivalence(Delta first, Delta second) {
+        this.first = first;
+        this.second = second;
+
+        StringBuilder symbols = new StringBuilder(first.getAlphabet());
+        for (char c : second.getAlphabet().toCharArray()) {
+            if (symbols.indexOf(String.valueOf(c)) < 0) {
+                symbols.append(c);
+            }
+        }
+        alphabet = symbols.toString();
+
+        firstDead = first.stateCount();
+        secondOffset = firstDead + 1;
+        secondDead = secondOffset + second.stateCount();
+
+        parent = new int[secondDead + 1];
+        for (int i = 0; i < parent.length; i++) {
+            parent[i] = i;
+        }
+        stack = new int[16];
+    }
+
+    /**
+     * Determines whether two DFAs accept exactly the same strings.
+     *
+     * @param firstStart The start state of the first DFA.
+     * @param first The transition function of the first DFA.
+     * @param secondStart The start state of the second DFA.
+     * @param second The transition function of the second DFA.
+     * @return True if the two languages are equal, false otherwise.
+     */
+    public static boolean equivalent(State firstStart, Delta first, State secondStart, Delta second) {
+        Equivalence e = new Equivalence(first, second);
+        return e.run(e.firstNode(first.getStateId(firstStart)), e.secondNode(second.getStateId(secondStart)));
+    }
+
+    private boolean run(int p, int q) {
+        union(p, q);
+        push(p, q);
+
+        while (stackSize > 0) {
+            q = stack[--stackSize];
+            p = stack[--stackSize];
+
+            if (accepts(p) != accepts(q)) {
+                return false;
+            }
+
+            for (int i = 0; i < alphabet.length(); i++) {
+                char c = alphabet.charAt(i);
+                int pNext = next(p, c);
+                int qNext = next(q, c);
+                if (find(pNext) != find(qNext)) {
+                    union(pNext, qNext);
+                    push(pNext, qNext);
+                }
+            }
+        }
+        return true;
+    }
+
+    private int firstNode(int stateId) {
+        return stateId == Delta.NO_STATE ? firstDead : stateId;
+    }
+
+    private int secondNode(int stateId) {
+        return stateId == Delta.NO_STATE ? secondDead : secondOffset + stateId;
+    }
+
+    private int next(int node, char c) {
+        if (node == firstDead || node == secondDead) {
+            return node;
+        }
+        if (node < secondOffset) {
+            return firstNode(first.GetNextState(node, c));
+        }
+        return secondNode(second.GetNextState(node - secondOffset, c));
+    }
+
+    private boolean accepts(int node) {
+        if (node == firstDead || node == secondDead) {
+            return false;
+        }
+        if (node < secondOffset) {
+            return first.getState(node).isAccept();
+        }
+        return second.getState(node - secondOffset).isAccept();
+    }
+
+    private int find(int node) {
+        while (parent[node] != node) {
+            parent[node] = parent[parent[node]];
+            node = parent[node];
+        }
+        return node;
+    }
+
+    private void union(int p, int q) {
+        parent[find(p)] = find(q);
+    }
+
+    private void push(int p, int q) {
+        if (stackSize + 2 > stack.length) {
+            stack = Arrays.copyOf(stack, 2 * stack.length);
+        }
+        stack[stackSize++] = p;
+        stack[stackSize++] = q;
+    }
+}
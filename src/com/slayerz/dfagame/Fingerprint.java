@@ -0,0 +1,141 @@
+package com.slayerz.dfagame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+
+/**
+ * The canonical form of the language of a DFA: two DFAs over the same alphabet have equal fingerprints exactly when they
+ * accept the same strings, however their states are laid out or labelled.
+ * <p>
+ * The DFA is minimized, which leaves a single automaton per language up to the naming of its states. The states are then
+ * named by the order a breadth first search from the start state reaches them, trying symbol classes in ascending order,
+ * and neighbouring classes that every state treats alike are merged. What's left is written out as a flat array of the
+ * class bounds, the accept bits and the transition table.
+ */
+public final class Fingerprint {
+
+    private final Alphabet alphabet;
+
+    /**
+     * The state count n, the class count k, the first character of each class, the accept bit of each state, then the
+     * next state (or -1 for the dead state) for every state and class, row by row.
+     */
+    private final int[] form;
+
+    private final int hash;
+
+    private Fingerprint(Alphabet alphabet, int[] form) {
+        this.alphabet = alphabet;
+        this.form = form;
+        hash = new HashCodeBuilder(19, 41).append(alphabet).append(form).toHashCode();
+    }
+
+    /**
+     * @param dfa A DFA. It needn't be valid: missing rules lead to the dead state.
+     * @return The fingerprint of its language.
+     */
+    public static Fingerprint of(DFA dfa) {
+        DFA minimal = dfa.minimize().getDFA();
+        Delta delta = minimal.getTransitionFunction();
+        String starts = delta.getAlphabet();
+        int width = starts.length();
+
+        // Name the states breadth first
+        int[] order = new int[delta.stateCount()];
+        Arrays.fill(order, -1);
+        List<Integer> queue = new ArrayList<Integer>();
+        int startId = delta.getStateId(minimal.getStart());
+        order[startId] = 0;
+        queue.add(startId);
+        for (int head = 0; head < queue.size(); head++) {
+            int id = queue.get(head);
+            for (int column = 0; column < width; column++) {
+                int next = delta.GetNextState(id, starts.charAt(column));
+                if (next != Delta.NO_STATE && order[next] == -1) {
+                    order[next] = queue.size();
+                    queue.add(next);
+                }
+            }
+        }
+
+        int n = queue.size();
+        int[][] rows = new int[n][width];
+        for (int q = 0; q < n; q++) {
+            for (int column = 0; column < width; column++) {
+                int next = delta.GetNextState(queue.get(q), starts.charAt(column));
+                rows[q][column] = next == Delta.NO_STATE ? -1 : order[next];
+            }
+        }
+
+        // Classes only tell apart characters some state tells apart, so the form doesn't depend on how the rules were cut
+        List<Integer> kept = new ArrayList<Integer>();
+        for (int column = 0; column < width; column++) {
+            if (column == 0 || differs(rows, column - 1, column)) {
+                kept.add(column);
+            }
+        }
+        int k = kept.size();
+
+        int[] form = new int[2 + k + n + n * k];
+        int at = 0;
+        form[at++] = n;
+        form[at++] = k;
+        for (int column : kept) {
+            form[at++] = starts.charAt(column);
+        }
+        for (int q = 0; q < n; q++) {
+            form[at++] = delta.getState(queue.get(q)).isAccept() ? 1 : 0;
+        }
+        for (int q = 0; q < n; q++) {
+            for (int column : kept) {
+                form[at++] = rows[q][column];
+            }
+        }
+        return new Fingerprint(minimal.getAlphabet(), form);
+    }
+
+    private static boolean differs(int[][] rows, int a, int b) {
+        for (int[] row : rows) {
+            if (row[a] != row[b]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The symbols the DFA reads.
+     */
+    public Alphabet getAlphabet() {
+        return alphabet;
+    }
+
+    /**
+     * @return The number of states of the minimal DFA.
+     */
+    public int stateCount() {
+        return form[0];
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Fingerprint)) {
+            return false;
+        }
+        Fingerprint other = (Fingerprint) o;
+        return hash == other.hash && alphabet.equals(other.alphabet) && Arrays.equals(form, other.form);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%08x (%d states)", hash, stateCount());
+    }
+}
@@ -2,7 +2,7 @@
  * @author John Lhota, Thomas Reber, Douglas Wong
  * <p>
  * Represents and contains all information pertaining to the running of the Game.
- * Handles creation of view model and timer.
+ * Handles creation of view model and repaints it as the DFA changes.
  * Makes appropriate calls to DFA functions.
  */
 
@@ -15,6 +15,8 @@ import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Stroke;
 import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
@@ -23,46 +25,87 @@ import java.awt.event.KeyListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JOptionPane;
+import javax.swing.JProgressBar;
 import javax.swing.SwingConstants;
-import javax.swing.Timer;
+import javax.swing.SwingUtilities;
 
 public class Game {
 
     private JFrame frame;
     private GamePanel gamePanel;
     private JLabel text;
-    private Timer timer;
     private JButton testButton;
+    private JProgressBar progressBar;
+    private JButton cancelButton;
+    private JCheckBox nfaBox;
+    private GameStatusChecker checker;
 
     /**
      * The dfa model upon which the game is being played.
      */
     private DFA dfa;
 
+    /**
+     * Everyone listening to the DFA, to move over when a new board is started.
+     */
+    private final List<DFAListener> dfaListeners = new ArrayList<DFAListener>();
+
     /**
      * The regex for the player to build a DFA to accept.
      */
     private String regex = "01";
 
-    //user input stuff
+    //user input stuff, with points in board coordinates
     private boolean alt, shift, ctrl;
     private int startX, startY;
     private int currentX, currentY;
     private boolean drawingTransition;
 
+    /**
+     * Whether the board is being dragged around with the right or middle button, and the last point it was dragged
+     * from, on the panel.
+     */
+    private boolean panning;
+    private int panFromX, panFromY;
+
+    /**
+     * How far the arrow keys move the board, in pixels.
+     */
+    private static final int PAN_STEP = 64;
+
+    /**
+     * How much a notch of the mouse wheel, or a press of + or -, zooms.
+     */
+    private static final double ZOOM_STEP = 1.25;
+
     /**
      * Pixels on the shorter dimension of the display
      */
     public final int DIM;
     
     /**
-     * Numbers of lines on the grid
+     * Numbers of lines on the grid shown at the start. The board goes on past them.
      */
     public static final int LINES = 5;
     
@@ -76,11 +119,17 @@ public class Game {
      */
     public static final int PANEL_SIZE = 50;
     
+    /**
+     * The most verification outcomes remembered
+     */
+    private static final int CACHE_SIZE = 64;
+    
     /**
      * Entry point. Creates and runs a new game.
      * @param args
      */
     public static void main(String[] args) {
+        Metrics.startFromProperties();
         new Game().go();
     }
 
@@ -127,14 +176,44 @@ public class Game {
 
         gamePanel.addMouseListener(s);
         gamePanel.addMouseMotionListener(s);
+        gamePanel.addMouseWheelListener(s);
         gamePanel.addKeyListener(s);
 
         JPanel southPanel = new JPanel();
         testButton = new JButton("Click here to test your DFA!");
         testButton.setFont(testButton.getFont().deriveFont(48));
-        testButton.addActionListener(new GameStatusChecker());
+        checker = new GameStatusChecker();
+        testButton.addActionListener(checker);
         southPanel.add(testButton);
 
+        progressBar = new JProgressBar();
+        progressBar.setIndeterminate(true);
+        progressBar.setVisible(false);
+        southPanel.add(progressBar);
+
+        cancelButton = new JButton("Cancel");
+        cancelButton.setVisible(false);
+        cancelButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                checker.cancel();
+            }
+        });
+        southPanel.add(cancelButton);
+
+        nfaBox = new JCheckBox("NFA");
+        nfaBox.setToolTipText("Build an NFA, with epsilon transitions and several transitions per character");
+        nfaBox.setFocusable(false);
+        nfaBox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (!newBoard(nfaBox.isSelected())) {
+                    nfaBox.setSelected(dfa.isNondeterministic());
+                }
+            }
+        });
+        southPanel.add(nfaBox);
+
         frame.add(gamePanel, BorderLayout.CENTER);
 
         text = new JLabel();
@@ -147,36 +226,214 @@ public class Game {
         frame.add(southPanel, BorderLayout.SOUTH);
         frame.setVisible(true);
 
-        timer = new Timer(1000 / 30, new Animator());
-        timer.setInitialDelay(0);
-        timer.start();
+        dfaListeners.add(new Repainter());
+        dfaListeners.add(checker);
+        for (DFAListener l : dfaListeners) {
+            dfa.addListener(l);
+        }
+    }
+
+    /**
+     * Replaces the board with an empty one, after asking if the current one has anything on it.
+     *
+     * @param nondeterministic Whether the new board holds an NFA.
+     * @return True if the board was replaced, false if the player would rather keep the current one.
+     */
+    private boolean newBoard(boolean nondeterministic) {
+        if (dfa.getStates().size() > 1 || !dfa.getTransitionsFrom(dfa.getStart()).isEmpty() || dfa.getStart().isAccept()) {
+            int choice = JOptionPane.showConfirmDialog(gamePanel, "Start over with an empty board?", "New board",
+                    JOptionPane.OK_CANCEL_OPTION);
+            if (choice != JOptionPane.OK_OPTION) {
+                return false;
+            }
+        }
+
+        DFA next = new DFA(BOX_DIM, Alphabet.BINARY, nondeterministic);
+        for (DFAListener l : dfaListeners) {
+            dfa.removeListener(l);
+            next.addListener(l);
+        }
+        dfa = next;
+        drawingTransition = false;
+        // A run on the abandoned board is of no use any more, and no edit of it will come to cancel it
+        checker.cancel();
+        testButton.setText(nondeterministic ? "Click here to test your NFA!" : "Click here to test your DFA!");
+        gamePanel.boardReplaced();
+        gamePanel.requestFocusInWindow();
+        return true;
     }
 
     /**
      * Listens to "TEST YOUR DFA" button.
+     * <p>
+     * The check runs on a background thread over a snapshot of the DFA, so the board stays usable meanwhile. Pressing
+     * the button again, pressing cancel or editing the DFA abandons the run in progress.
      */
-    private class GameStatusChecker implements ActionListener {
+    private class GameStatusChecker implements ActionListener, DFAListener {
+        private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "DFA verification");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        /**
+         * The run in progress, or null.
+         */
+        private Future<?> running;
+
+        /**
+         * Outcomes of earlier runs, so checking an unchanged DFA again, or one that was only rearranged, is immediate.
+         */
+        private final VerificationCache cache = new VerificationCache(CACHE_SIZE);
+
         @Override
         public void actionPerformed(ActionEvent e) {
-            if (dfa.isValid()) {
-                if (dfa.MatchesRegex(regex)) {
-                    JOptionPane.showMessageDialog(gamePanel, "Congratulations!");
-                } else {
-                    JOptionPane.showMessageDialog(gamePanel, "Your DFA is properly constructed but incorrect.");
+            cancel();
+
+            // Validity is a counter read, so there is no need to leave the event thread for it
+            if (!dfa.isValid()) {
+                JOptionPane.showMessageDialog(gamePanel, "Your DFA is invalid.");
+                return;
+            }
+
+            // Taking the snapshot is free; copying it into a DFA to check is left to the background thread
+            final Snapshot snapshot = dfa.getSnapshot();
+            final String target = regex;
+            progressBar.setVisible(true);
+            cancelButton.setVisible(true);
+
+            // The task has to know its own future to tell whether it's still the current run once it's done
+            final FutureTask<?>[] self = new FutureTask<?>[1];
+            self[0] = new FutureTask<Void>(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        final Counterexample counterexample = cache.findCounterexample(snapshot.toDFA(), target);
+                        SwingUtilities.invokeLater(new Runnable() {
+                            @Override
+                            public void run() {
+                                showResult(self[0], counterexample);
+                            }
+                        });
+                    } catch (CancellationException ignored) {
+                        // Superseded; whoever cancelled has already reset the UI
+                    } catch (final RuntimeException failure) {
+                        // FutureTask would keep it to itself, leaving the progress bar up for good
+                        SwingUtilities.invokeLater(new Runnable() {
+                            @Override
+                            public void run() {
+                                showFailure(self[0], failure);
+                            }
+                        });
+                    }
                 }
+            }, null);
+            running = self[0];
+            executor.execute(self[0]);
+        }
+
+        /**
+         * Shows the outcome of a run, unless another run or an edit has superseded it since. Called on the event thread.
+         */
+        private void showResult(Future<?> run, Counterexample counterexample) {
+            if (run != running || run.isCancelled()) {
+                return;
+            }
+            running = null;
+            progressBar.setVisible(false);
+            cancelButton.setVisible(false);
+
+            if (counterexample == null) {
+                JOptionPane.showMessageDialog(gamePanel, "Congratulations!");
             } else {
-                JOptionPane.showMessageDialog(gamePanel, "Your DFA is invalid.");
+                JOptionPane.showMessageDialog(gamePanel, "Your DFA is properly constructed but incorrect. "
+                        + counterexample);
             }
         }
+
+        /**
+         * Reports a run that failed, unless another run or an edit has superseded it since. Called on the event thread.
+         */
+        private void showFailure(Future<?> run, RuntimeException failure) {
+            if (run != running || run.isCancelled()) {
+                return;
+            }
+            running = null;
+            progressBar.setVisible(false);
+            cancelButton.setVisible(false);
+
+            JOptionPane.showMessageDialog(gamePanel, "Your DFA couldn't be checked: " + failure.getMessage(),
+                    "Check failed", JOptionPane.ERROR_MESSAGE);
+        }
+
+        /**
+         * Abandons the run in progress, if any.
+         */
+        public void cancel() {
+            if (running != null) {
+                running.cancel(true);
+                running = null;
+            }
+            progressBar.setVisible(false);
+            cancelButton.setVisible(false);
+        }
+
+        @Override
+        public void stateAdded(State q, Rectangle bounds) {
+            cancel();
+        }
+
+        @Override
+        public void stateRemoved(State q, Rectangle bounds) {
+            cancel();
+        }
+
+        @Override
+        public void transitionChanged(Transition t, Rectangle bounds) {
+            cancel();
+        }
+
+        @Override
+        public void acceptChanged(State q, Rectangle bounds) {
+            cancel();
+        }
+
+        @Override
+        public void dragChanged(Rectangle bounds) {
+        }
     }
 
     /**
-     * Redraws the screen every 1000/30 milliseconds. Triggered by Timer.
+     * Redraws the parts of the screen affected by each change to the DFA. Nothing is redrawn while nothing changes.
      */
-    private class Animator implements ActionListener {
+    private class Repainter implements DFAListener {
         @Override
-        public void actionPerformed(ActionEvent e) {
-            gamePanel.repaint();
+        public void stateAdded(State q, Rectangle bounds) {
+            gamePanel.boardChanged(bounds);
+        }
+
+        @Override
+        public void stateRemoved(State q, Rectangle bounds) {
+            gamePanel.boardChanged(bounds);
+        }
+
+        @Override
+        public void transitionChanged(Transition t, Rectangle bounds) {
+            gamePanel.boardChanged(bounds);
+        }
+
+        @Override
+        public void acceptChanged(State q, Rectangle bounds) {
+            gamePanel.boardChanged(bounds);
+        }
+
+        @Override
+        public void dragChanged(Rectangle bounds) {
+            // The dragged transition isn't part of the tiles
+            gamePanel.repaint(gamePanel.toScreen(bounds));
         }
     }
 
@@ -184,34 +441,221 @@ public class Game {
      * The parent GamePanel.
      * Background lines are drawn to this.
      * Handles drawing lines as you draw transition.
+     * <p>
+     * The board has no edges: it can be panned and zoomed. It's rendered in square tiles, each drawn once with only the
+     * states and transitions on it and kept until something on it changes or the zoom does. Panning therefore only renders
+     * the tiles it brings into view, and each frame is otherwise a copy of the tiles plus the transition being dragged.
      */
     private class GamePanel extends JPanel {
+        private final Stroke gridStroke = new BasicStroke(1);
+        private final Stroke dragStroke = new BasicStroke(4);
+
+        /**
+         * The width of the tiles, in pixels.
+         */
+        private static final int TILE = 256;
+
+        private static final double MIN_SCALE = 0.02;
+        private static final double MAX_SCALE = 4;
+
+        /**
+         * The rendered tiles at the current zoom, keyed by {@link #key(int, int)}.
+         */
+        private final Map<Long, BufferedImage> tiles = new HashMap<Long, BufferedImage>();
+
+        /**
+         * The pixels a unit of the board takes on screen.
+         */
+        private double scale = 1;
+
+        /**
+         * Where the top left corner of the panel is, in pixels of the board at the current zoom.
+         */
+        private int panX, panY;
+
         @Override
         public void paintComponent(Graphics g) {
+            long begin = Metrics.ENABLED ? System.nanoTime() : 0;
+            PaintEvent event = new PaintEvent();
+            event.begin();
+
             Graphics2D g2d = (Graphics2D) g;
-            g2d.setPaint(Color.decode("#EEEEEE"));
-            g2d.fillRect(0, 0, DIM, DIM);
-            g2d.setPaint(Color.GRAY);
-            for (int i = 1; i <= LINES; i++) {
-                g2d.setStroke(new BasicStroke(1));
-                g2d.drawLine((int) (i * BOX_DIM), 0, (int) (i * BOX_DIM), DIM);
-                g2d.drawLine(0, (int) (i * BOX_DIM), DIM, (int) (i * BOX_DIM));
+            Rectangle clip = g2d.getClipBounds();
+            if (clip == null) {
+                clip = new Rectangle(0, 0, getWidth(), getHeight());
             }
-            dfa.draw(g2d);
+            boolean rendered = false;
+            for (int tx = tile(clip.x + panX); tx <= tile(clip.x + clip.width - 1 + panX); tx++) {
+                for (int ty = tile(clip.y + panY); ty <= tile(clip.y + clip.height - 1 + panY); ty++) {
+                    BufferedImage image = tiles.get(key(tx, ty));
+                    if (image == null) {
+                        image = renderTile(tx, ty);
+                        tiles.put(key(tx, ty), image);
+                        rendered = true;
+                    }
+                    g2d.drawImage(image, tx * TILE - panX, ty * TILE - panY, null);
+                }
+            }
+            dropHiddenTiles();
 
             if (drawingTransition) {
-                g2d.setStroke(new BasicStroke(4));
+                Graphics2D board = (Graphics2D) g2d.create();
+                board.translate(-panX, -panY);
+                board.scale(scale, scale);
+                board.setStroke(dragStroke);
+                board.setPaint(Color.GRAY);
+                board.drawLine(startX, startY, currentX, currentY);
+                board.dispose();
+            }
+
+            if (Metrics.ENABLED) {
+                Metrics.PAINT.record(System.nanoTime() - begin);
+            }
+            if (event.shouldCommit()) {
+                event.rendered = rendered;
+                event.commit();
+            }
+        }
+
+        private BufferedImage renderTile(int tx, int ty) {
+            BufferedImage image = new BufferedImage(TILE, TILE, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2d = image.createGraphics();
+            g2d.setFont(getFont());
+            g2d.setPaint(Color.decode("#EEEEEE"));
+            g2d.fillRect(0, 0, TILE, TILE);
+            g2d.setClip(0, 0, TILE, TILE);
+            g2d.translate(-tx * TILE, -ty * TILE);
+            g2d.scale(scale, scale);
+
+            // The clip is now the part of the board the tile shows
+            Rectangle area = g2d.getClipBounds();
+            if (BOX_DIM * scale >= 4) {
                 g2d.setPaint(Color.GRAY);
-                g2d.drawLine(startX, startY, currentX, currentY);
+                g2d.setStroke(gridStroke);
+                for (int x = (int) Math.ceil((double) area.x / BOX_DIM) * BOX_DIM; x <= area.x + area.width; x += BOX_DIM) {
+                    g2d.drawLine(x, area.y, x, area.y + area.height);
+                }
+                for (int y = (int) Math.ceil((double) area.y / BOX_DIM) * BOX_DIM; y <= area.y + area.height; y += BOX_DIM) {
+                    g2d.drawLine(area.x, y, area.x + area.width, y);
+                }
+            }
+            dfa.draw(g2d);
+            g2d.dispose();
+            return image;
+        }
+
+        /**
+         * Forgets the tiles out of view once there are a few screens' worth, so panning far doesn't keep them all.
+         */
+        private void dropHiddenTiles() {
+            int tx0 = tile(panX), tx1 = tile(panX + getWidth() - 1), ty0 = tile(panY), ty1 = tile(panY + getHeight() - 1);
+            if (tiles.size() <= 4 * (tx1 - tx0 + 1) * (ty1 - ty0 + 1)) {
+                return;
             }
+            Iterator<Long> keys = tiles.keySet().iterator();
+            while (keys.hasNext()) {
+                long key = keys.next();
+                int tx = (int) (key >> 32), ty = (int) key;
+                if (tx < tx0 || tx > tx1 || ty < ty0 || ty > ty1) {
+                    keys.remove();
+                }
+            }
+        }
+
+        /**
+         * Renders the tiles under part of the board again, and repaints it.
+         *
+         * @param bounds The part of the board that changed.
+         */
+        public void boardChanged(Rectangle bounds) {
+            Rectangle screen = toScreen(bounds);
+            for (int tx = tile(screen.x + panX); tx <= tile(screen.x + screen.width + panX); tx++) {
+                for (int ty = tile(screen.y + panY); ty <= tile(screen.y + screen.height + panY); ty++) {
+                    tiles.remove(key(tx, ty));
+                }
+            }
+            repaint(screen);
+        }
+
+        /**
+         * Forgets every tile, for a board that was replaced as a whole, and repaints.
+         */
+        public void boardReplaced() {
+            tiles.clear();
+            repaint();
+        }
+
+        /**
+         * @param bounds A part of the board.
+         * @return Where it is on screen.
+         */
+        public Rectangle toScreen(Rectangle bounds) {
+            int x0 = (int) Math.floor(bounds.x * scale) - panX, y0 = (int) Math.floor(bounds.y * scale) - panY;
+            int x1 = (int) Math.ceil((bounds.x + bounds.width) * scale) - panX;
+            int y1 = (int) Math.ceil((bounds.y + bounds.height) * scale) - panY;
+            return new Rectangle(x0, y0, x1 - x0 + 1, y1 - y0 + 1);
+        }
+
+        /**
+         * @return The x coordinate on the board of a pixel of the panel.
+         */
+        public int toBoardX(int x) {
+            return (int) Math.floor((x + panX) / scale);
+        }
+
+        /**
+         * @return The y coordinate on the board of a pixel of the panel.
+         */
+        public int toBoardY(int y) {
+            return (int) Math.floor((y + panY) / scale);
+        }
+
+        /**
+         * Moves the view. Only the tiles coming into view are rendered.
+         *
+         * @param dx How far to move right, in pixels.
+         * @param dy How far to move down, in pixels.
+         */
+        public void pan(int dx, int dy) {
+            panX += dx;
+            panY += dy;
+            repaint();
+        }
+
+        /**
+         * Zooms in or out, keeping one point of the panel over the same point of the board.
+         *
+         * @param factor How much larger the board should look. Clamped so the zoom stays within bounds.
+         * @param x The x coordinate of the point, on the panel.
+         * @param y The y coordinate of the point, on the panel.
+         */
+        public void zoom(double factor, int x, int y) {
+            double next = Math.max(MIN_SCALE, Math.min(MAX_SCALE, scale * factor));
+            if (next == scale) {
+                return;
+            }
+            panX = (int) Math.round((x + panX) / scale * next) - x;
+            panY = (int) Math.round((y + panY) / scale * next) - y;
+            scale = next;
+            tiles.clear();
+            repaint();
+        }
+
+        private int tile(int pixel) {
+            return Math.floorDiv(pixel, TILE);
+        }
+
+        private long key(int tx, int ty) {
+            return ((long) tx << 32) | (ty & 0xffffffffL);
         }
     }
 
     /**
      * Listens for mouse events and key events.
-     * Makes appropriate calls to DFA.
+     * Makes appropriate calls to DFA. Ctrl+Z undoes the last edit, Ctrl+Y or Ctrl+Shift+Z redoes it.
+     * Dragging with the right or middle button or pressing the arrow keys pans the board; the mouse wheel, + and - zoom it.
      */
-    private class StateInputListener implements MouseListener, MouseMotionListener, KeyListener {
+    private class StateInputListener implements MouseListener, MouseMotionListener, MouseWheelListener, KeyListener {
 
         public StateInputListener() {
 
@@ -219,16 +663,20 @@ public class Game {
 
         @Override
         public void mouseClicked(MouseEvent e) {
+            if (!SwingUtilities.isLeftMouseButton(e)) {
+                return;
+            }
+            int x = gamePanel.toBoardX(e.getX()), y = gamePanel.toBoardY(e.getY());
             if (e.getClickCount() == 2) {
-                dfa.handleDoubleClick(e.getX(), e.getY());
+                dfa.handleDoubleClick(x, y);
             } else if (alt) {
-                dfa.handleAltClick(e.getX(), e.getY());
+                dfa.handleAltClick(x, y);
             } else if (ctrl) {
-                dfa.handleCtrlClick(e.getX(), e.getY());
+                dfa.handleCtrlClick(x, y);
             } else if (shift) {
 
             } else {
-                dfa.handleClick(e.getX(), e.getY());
+                dfa.handleClick(x, y);
             }
         }
 
@@ -244,18 +692,28 @@ public class Game {
 
         @Override
         public void mousePressed(MouseEvent e) {
-            startX = e.getX();
-            startY = e.getY();
+            if (!SwingUtilities.isLeftMouseButton(e)) {
+                panning = true;
+                panFromX = e.getX();
+                panFromY = e.getY();
+                return;
+            }
+            startX = gamePanel.toBoardX(e.getX());
+            startY = gamePanel.toBoardY(e.getY());
 
-            if (dfa.onState(e.getX(), e.getY())) {
+            if (dfa.onState(startX, startY)) {
                 drawingTransition = true;
             }
         }
 
         @Override
         public void mouseReleased(MouseEvent e) {
-            int endX = e.getX();
-            int endY = e.getY();
+            if (panning) {
+                panning = false;
+                return;
+            }
+            int endX = gamePanel.toBoardX(e.getX());
+            int endY = gamePanel.toBoardY(e.getY());
             if (shift) {
                 dfa.handleShiftDrag(startX, startY, endX, endY);
             } else {
@@ -264,6 +722,7 @@ public class Game {
             }
             startX = startY = -10;
             drawingTransition = false;
+            dfa.handleDragEnd();
         }
 
         @Override
@@ -274,6 +733,27 @@ public class Game {
                 ctrl = true;
             } else if (e.getKeyCode() == KeyEvent.VK_ALT) {
                 alt = true;
+            } else if (e.getKeyCode() == KeyEvent.VK_Z && e.isControlDown()) {
+                if (e.isShiftDown()) {
+                    dfa.redo();
+                } else {
+                    dfa.undo();
+                }
+            } else if (e.getKeyCode() == KeyEvent.VK_Y && e.isControlDown()) {
+                dfa.redo();
+            } else if (e.getKeyCode() == KeyEvent.VK_LEFT) {
+                gamePanel.pan(-PAN_STEP, 0);
+            } else if (e.getKeyCode() == KeyEvent.VK_RIGHT) {
+                gamePanel.pan(PAN_STEP, 0);
+            } else if (e.getKeyCode() == KeyEvent.VK_UP) {
+                gamePanel.pan(0, -PAN_STEP);
+            } else if (e.getKeyCode() == KeyEvent.VK_DOWN) {
+                gamePanel.pan(0, PAN_STEP);
+            } else if (e.getKeyCode() == KeyEvent.VK_EQUALS || e.getKeyCode() == KeyEvent.VK_PLUS
+                    || e.getKeyCode() == KeyEvent.VK_ADD) {
+                gamePanel.zoom(ZOOM_STEP, gamePanel.getWidth() / 2, gamePanel.getHeight() / 2);
+            } else if (e.getKeyCode() == KeyEvent.VK_MINUS || e.getKeyCode() == KeyEvent.VK_SUBTRACT) {
+                gamePanel.zoom(1 / ZOOM_STEP, gamePanel.getWidth() / 2, gamePanel.getHeight() / 2);
             }
         }
 
@@ -295,14 +775,28 @@ public class Game {
 
         @Override
         public void mouseDragged(MouseEvent e) {
-            currentX = e.getX();
-            currentY = e.getY();
+            if (panning) {
+                gamePanel.pan(panFromX - e.getX(), panFromY - e.getY());
+                panFromX = e.getX();
+                panFromY = e.getY();
+                return;
+            }
+            currentX = gamePanel.toBoardX(e.getX());
+            currentY = gamePanel.toBoardY(e.getY());
+            if (drawingTransition) {
+                dfa.handleDragProgress(startX, startY, currentX, currentY);
+            }
         }
 
         @Override
         public void mouseMoved(MouseEvent e) {
-            currentX = e.getX();
-            currentY = e.getY();
+            currentX = gamePanel.toBoardX(e.getX());
+            currentY = gamePanel.toBoardY(e.getY());
+        }
+
+        @Override
+        public void mouseWheelMoved(MouseWheelEvent e) {
+            gamePanel.zoom(Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation()), e.getX(), e.getY());
         }
 
     }
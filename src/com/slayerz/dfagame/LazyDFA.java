@@ -0,0 +1,506 @@
+package com.slayerz.dfagame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Runs an NFA by determinizing it as strings are read, the way RE2 does.
+ * <p>
+ * A state of the DFA is a set of NFA states, closed under epsilon transitions. Each one is worked out the first time a
+ * string reaches it, and so is each of its transitions; after that, reading a symbol is an array lookup just like in a
+ * real DFA. An NFA whose equivalent DFA would be exponentially large therefore only ever pays for the sets strings
+ * actually reach.
+ * <p>
+ * The sets are kept in a cache of bounded size. When it's full it's cleared, all but the set being read from, and filling
+ * it starts over. If that keeps happening without getting much reading done in between, the cache is thrashing: the rest
+ * of the string is then read by plain set simulation, one NFA state at a time, which is slower per symbol but needs no
+ * cache at all. Either way, memory stays within the bound however large the equivalent DFA is.
+ * <p>
+ * Not safe to share between threads, since reading strings fills the cache.
+ */
+public final class LazyDFA {
+
+    /**
+     * The default most sets kept at once.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 10000;
+
+    /**
+     * Reading fewer symbols than this per cached set between two clears of the cache counts as thrashing.
+     */
+    private static final int SYMBOLS_PER_SET = 10;
+
+    /**
+     * Characters below this are looked up in a flat table, the rest by binary search over the classes.
+     */
+    private static final int LATIN = 256;
+
+    private final Alphabet alphabet;
+
+    /**
+     * The first character of every symbol class, in ascending order. The first class starts at character 0.
+     */
+    private final char[] classStarts;
+    private final int[] latinColumns;
+    private final int width;
+
+    /**
+     * For every NFA state and class, at state * width + class, the NFA states the transitions read into. Epsilon
+     * transitions aren't in here.
+     */
+    private final int[][] moves;
+
+    /**
+     * The epsilon closure of every NFA state, in ascending order.
+     */
+    private final int[][] closures;
+
+    private final boolean[] accepting;
+
+    private final int[] startSet;
+
+    private final int cacheSize;
+
+    private final Map<Subset, Subset> cache = new HashMap<Subset, Subset>();
+
+    private long resets;
+    private long fallbacks;
+
+    /**
+     * Marks the NFA states already in a set being built, by the generation they were added in.
+     */
+    private final int[] marks;
+    private int generation;
+
+    /**
+     * @param nfa The NFA, see {@link DFA#isNondeterministic()}. Reading it again after it's changed takes a new LazyDFA.
+     * @param cacheSize The most sets to keep at once.
+     */
+    LazyDFA(DFA nfa, int cacheSize) {
+        this.cacheSize = Math.max(2, cacheSize);
+        alphabet = nfa.getAlphabet();
+
+        Delta delta = nfa.getTransitionFunction();
+        classStarts = delta.getAlphabet().toCharArray();
+        width = classStarts.length;
+        latinColumns = new int[LATIN];
+        int column = 0;
+        for (int c = 0; c < LATIN; c++) {
+            while (column + 1 < width && classStarts[column + 1] <= c) {
+                column++;
+            }
+            latinColumns[c] = column;
+        }
+
+        // Number the states with the start state first
+        List<State> states = new ArrayList<State>(nfa.getStates().size());
+        Map<State, Integer> ids = new IdentityHashMap<State, Integer>();
+        states.add(nfa.getStart());
+        for (State q : nfa.getStates()) {
+            if (q != nfa.getStart()) {
+                states.add(q);
+            }
+        }
+        for (int i = 0; i < states.size(); i++) {
+            ids.put(states.get(i), i);
+        }
+
+        int n = states.size();
+        accepting = new boolean[n];
+        List<List<Integer>> targets = new ArrayList<List<Integer>>(n * width);
+        List<List<Integer>> epsilons = new ArrayList<List<Integer>>(n);
+        for (int i = 0; i < n * width; i++) {
+            targets.add(new ArrayList<Integer>(1));
+        }
+        for (int p = 0; p < n; p++) {
+            accepting[p] = states.get(p).isAccept();
+            epsilons.add(new ArrayList<Integer>(1));
+            for (Transition t : nfa.getTransitionsFrom(states.get(p))) {
+                int q = ids.get(t.getEnd());
+                Alphabet symbols = Alphabet.parse(t.getChars());
+                if (symbols.contains(DFA.EPSILON)) {
+                    epsilons.get(p).add(q);
+                    symbols = symbols.minus(Alphabet.ofChars(String.valueOf(DFA.EPSILON)));
+                }
+                // Classes are cut at every bound of every transition, so a class is read either whole or not at all
+                for (int k = 0; k < width; k++) {
+                    if (symbols.contains(classStarts[k])) {
+                        targets.get(p * width + k).add(q);
+                    }
+                }
+            }
+        }
+
+        moves = new int[n * width][];
+        for (int i = 0; i < moves.length; i++) {
+            moves[i] = toArray(targets.get(i));
+        }
+        marks = new int[n];
+        closures = new int[n][];
+        for (int p = 0; p < n; p++) {
+            closures[p] = closure(p, epsilons);
+        }
+        startSet = closures[0];
+    }
+
+    /**
+     * Determines if the NFA accepts a string.
+     *
+     * @param s The string.
+     * @return True if some run of the NFA on s ends in an accept state.
+     */
+    public boolean matches(CharSequence s) {
+        return matches(s, 0, s.length());
+    }
+
+    /**
+     * Determines if the NFA accepts part of some text, without copying it.
+     *
+     * @param s The text.
+     * @param from The index of the first character to read.
+     * @param to The index after the last character to read.
+     * @return True if some run of the NFA on the characters from {@code from} up to {@code to} ends in an accept state.
+     */
+    public boolean matches(CharSequence s, int from, int to) {
+        Subset current = start();
+        boolean reset = false;
+        long readSinceReset = 0;
+        for (int i = from; i < to; i++) {
+            int column = columnOf(s.charAt(i));
+            Subset next = current.next[column];
+            if (next == null) {
+                if (cache.size() >= cacheSize) {
+                    if (reset && readSinceReset < (long) SYMBOLS_PER_SET * cache.size()) {
+                        // Clearing the cache again wouldn't get far either, so stop caching for this string
+                        fallbacks++;
+                        if (Metrics.ENABLED) {
+                            Metrics.LAZY_DFA_FALLBACKS.increment();
+                        }
+                        return simulate(current.nfaStates, s, i, to);
+                    }
+                    current = reset(current);
+                    reset = true;
+                    readSinceReset = 0;
+                }
+                next = step(current, column);
+            }
+            current = next;
+            readSinceReset++;
+            if (current.nfaStates.length == 0) {
+                return false;
+            }
+        }
+        return current.accept;
+    }
+
+    /**
+     * Determines if the NFA accepts part of some text by plain set simulation, without the cache. Slower per symbol than
+     * {@link #matches(CharSequence, int, int)} once the cache is warm, but it never builds a set of its own.
+     *
+     * @param s The text.
+     * @param from The index of the first character to read.
+     * @param to The index after the last character to read.
+     * @return True if some run of the NFA on the characters from {@code from} up to {@code to} ends in an accept state.
+     */
+    public boolean simulate(CharSequence s, int from, int to) {
+        return simulate(startSet, s, from, to);
+    }
+
+    private boolean simulate(int[] nfaStates, CharSequence s, int from, int to) {
+        // A set never holds an NFA state twice, so neither buffer can overflow
+        int[] current = Arrays.copyOf(nfaStates, closures.length);
+        int[] next = new int[closures.length];
+        int size = nfaStates.length;
+        for (int i = from; i < to && size > 0; i++) {
+            int column = columnOf(s.charAt(i));
+            generation++;
+            int nextSize = 0;
+            for (int j = 0; j < size; j++) {
+                for (int target : moves[current[j] * width + column]) {
+                    for (int q : closures[target]) {
+                        if (marks[q] != generation) {
+                            marks[q] = generation;
+                            next[nextSize++] = q;
+                        }
+                    }
+                }
+            }
+            int[] swap = current;
+            current = next;
+            next = swap;
+            size = nextSize;
+        }
+        for (int j = 0; j < size; j++) {
+            if (accepting[current[j]]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The set the NFA starts in: the epsilon closure of its start state.
+     */
+    Subset start() {
+        Subset start = cache.get(new Subset(startSet, false, 0));
+        if (start == null) {
+            if (cache.size() >= cacheSize) {
+                reset(null);
+            }
+            start = intern(startSet);
+        }
+        return start;
+    }
+
+    /**
+     * Follows a symbol from a set, working out the set it leads to if it isn't known yet. Unlike
+     * {@link #matches(CharSequence, int, int)} this never falls back: a caller walking the sets keeps its own record of
+     * them, and the sets it holds stay usable after the cache is cleared.
+     *
+     * @param from A set, as returned by {@link #start()} or this.
+     * @param symbol The symbol read.
+     * @return The set from reads into. Empty if no run of the NFA survives the symbol.
+     */
+    Subset next(Subset from, char symbol) {
+        int column = columnOf(symbol);
+        Subset next = from.next[column];
+        if (next == null) {
+            if (cache.size() >= cacheSize) {
+                from = reset(from);
+            }
+            next = step(from, column);
+        }
+        return next;
+    }
+
+    /**
+     * Determinizes the NFA in full, by following every symbol class of the alphabet from every set reached. Laid out like
+     * the DFAs {@link RegexCompiler} builds, and like them leaves out the transitions into the empty set.
+     *
+     * @return A DFA accepting the same strings over the same alphabet.
+     * @throws CancellationException If the calling thread is interrupted, since this can take exponentially many sets.
+     */
+    DFA toDFA() {
+        DFA dfa = new DFA(0, alphabet);
+        Map<Subset, State> found = new HashMap<Subset, State>();
+        List<Subset> queue = new ArrayList<Subset>();
+
+        Subset first = start();
+        if (first.accept) {
+            dfa.toggleAccept(dfa.getStart());
+        }
+        found.put(first, dfa.getStart());
+        queue.add(first);
+
+        for (int head = 0; head < queue.size(); head++) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("Determinization interrupted");
+            }
+            Subset current = queue.get(head);
+            for (int column = 0; column < width; column++) {
+                Alphabet symbols = classOf(column).intersect(alphabet);
+                if (symbols.isEmpty()) {
+                    continue;
+                }
+                Subset next = next(current, classStarts[column]);
+                if (next.isEmpty()) {
+                    continue;
+                }
+                State q = found.get(next);
+                if (q == null) {
+                    q = dfa.addLaidOutState(next.accept);
+                    found.put(next, q);
+                    queue.add(next);
+                }
+                dfa.addTransition(found.get(current), q, symbols.toString());
+            }
+        }
+        return dfa;
+    }
+
+    /**
+     * @return The number of times the cache was cleared to make room.
+     */
+    public long getResetCount() {
+        return resets;
+    }
+
+    /**
+     * @return The number of strings the cache thrashed on, which were finished by set simulation.
+     */
+    public long getFallbackCount() {
+        return fallbacks;
+    }
+
+    /**
+     * @return The number of sets in the cache.
+     */
+    public int getCachedSetCount() {
+        return cache.size();
+    }
+
+    /**
+     * @return The number of NFA states.
+     */
+    public int getStateCount() {
+        return closures.length;
+    }
+
+    /**
+     * Works out the set a set reads into on a class, and records it as the set's transition.
+     */
+    private Subset step(Subset from, int column) {
+        generation++;
+        int size = 0;
+        int[] next = new int[closures.length];
+        for (int p : from.nfaStates) {
+            for (int target : moves[p * width + column]) {
+                for (int q : closures[target]) {
+                    if (marks[q] != generation) {
+                        marks[q] = generation;
+                        next[size++] = q;
+                    }
+                }
+            }
+        }
+        int[] sorted = Arrays.copyOf(next, size);
+        Arrays.sort(sorted);
+
+        Subset found = cache.get(new Subset(sorted, false, 0));
+        if (found == null) {
+            found = intern(sorted);
+        }
+        from.next[column] = found;
+        return found;
+    }
+
+    private Subset intern(int[] nfaStates) {
+        boolean accept = false;
+        for (int q : nfaStates) {
+            accept |= accepting[q];
+        }
+        Subset s = new Subset(nfaStates, accept, width);
+        cache.put(s, s);
+        return s;
+    }
+
+    /**
+     * Clears the cache, keeping a copy of the set being read from so reading can go on.
+     *
+     * @param keep The set being read from, or null.
+     * @return The copy of keep in the cleared cache, or null.
+     */
+    private Subset reset(Subset keep) {
+        cache.clear();
+        resets++;
+        if (Metrics.ENABLED) {
+            Metrics.LAZY_DFA_RESETS.increment();
+        }
+        // The old set still links to the rest of the old cache, which would otherwise stay reachable through it
+        return keep == null ? null : intern(keep.nfaStates);
+    }
+
+    private int[] closure(int p, List<List<Integer>> epsilons) {
+        generation++;
+        int[] stack = new int[closures.length];
+        int[] found = new int[closures.length];
+        int size = 0;
+        int count = 0;
+        stack[size++] = p;
+        marks[p] = generation;
+        while (size > 0) {
+            int q = stack[--size];
+            found[count++] = q;
+            for (int r : epsilons.get(q)) {
+                if (marks[r] != generation) {
+                    marks[r] = generation;
+                    stack[size++] = r;
+                }
+            }
+        }
+        int[] sorted = Arrays.copyOf(found, count);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private int columnOf(char symbol) {
+        if (symbol < LATIN) {
+            return latinColumns[symbol];
+        }
+        int lo = 0;
+        int hi = width - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (classStarts[mid] <= symbol) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    private Alphabet classOf(int column) {
+        char high = column + 1 < width ? (char) (classStarts[column + 1] - 1) : Character.MAX_VALUE;
+        return Alphabet.range(classStarts[column], high);
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * A state of the lazily built DFA: a set of NFA states closed under epsilon transitions. Two sets are equal when they
+     * hold the same NFA states, whether or not they came from the same fill of the cache.
+     */
+    static final class Subset {
+        private final int[] nfaStates;
+        private final boolean accept;
+        private final int hash;
+
+        /**
+         * The set each class reads into, or null where that isn't known yet.
+         */
+        private final Subset[] next;
+
+        private Subset(int[] nfaStates, boolean accept, int width) {
+            this.nfaStates = nfaStates;
+            this.accept = accept;
+            hash = Arrays.hashCode(nfaStates);
+            next = new Subset[width];
+        }
+
+        /**
+         * @return True if the set holds an accept state of the NFA.
+         */
+        boolean isAccept() {
+            return accept;
+        }
+
+        /**
+         * @return True if the set holds no NFA states, so no string leads anywhere from it.
+         */
+        boolean isEmpty() {
+            return nfaStates.length == 0;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Subset && Arrays.equals(nfaStates, ((Subset) o).nfaStates);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.slayerz.dfagame;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Runs a matcher on every line of some input, such as a log file, without making a String or any other object per line.
+ * <p>
+ * Input is fed in chunks of any size, and lines may span chunks: the state the matcher is in at the end of a chunk is
+ * carried over to the next one. Lines end at {@code \n}; a {@code \r} right before it, or at the very end of the input,
+ * isn't part of the line. Bytes are read as the characters 0 to 255.
+ */
+public class LineScanner {
+
+    /**
+     * Files are mapped a window at a time, as a single mapping can't be larger than 2GB.
+     */
+    private static final long WINDOW = 1L << 30;
+
+    /**
+     * The size of the buffer channels are read into.
+     */
+    private static final int CHUNK = 1 << 16;
+
+    /**
+     * The size of the blocks direct buffers are copied out in, well within the L1 cache.
+     */
+    private static final int SCRATCH = 1 << 13;
+
+    private static final byte[] RETURN = {'\r'};
+
+    /**
+     * Receives the result for every line.
+     */
+    public interface Sink {
+        /**
+         * @param number The number of the line, from 0.
+         * @param offset Where the line starts, in bytes from the start of the input.
+         * @param length The length of the line in bytes, without its line break.
+         * @param matched Whether the DFA accepts the line.
+         * @return True to keep going, false to stop the scan.
+         */
+        boolean line(long number, long offset, long length, boolean matched);
+    }
+
+    private final Matcher matcher;
+    private final Sink sink;
+
+    /**
+     * The state the matcher is in after the part of the current line read so far.
+     */
+    private int state = Matcher.START;
+
+    /**
+     * The number of bytes fed so far.
+     */
+    private long position;
+
+    private long lineStart;
+
+    /**
+     * Whether the last byte fed was a {@code \r} that hasn't been run yet, because it may turn out to end the line.
+     */
+    private boolean pendingReturn;
+
+    private long lines;
+    private long matches;
+    private boolean stopped;
+
+    /**
+     * Where blocks of direct buffers are copied to. Null until the first one is fed.
+     */
+    private byte[] scratch;
+
+    /**
+     * @param matcher The matcher to run on every line.
+     * @param sink Where to send the result for every line, or null to only count them.
+     */
+    public LineScanner(Matcher matcher, Sink sink) {
+        this.matcher = matcher;
+        this.sink = sink;
+    }
+
+    /**
+     * Scans every line of a file, mapping it into memory rather than reading it.
+     *
+     * @param matcher The matcher to run on every line.
+     * @param file The file.
+     * @param sink Where to send the result for every line, or null to only count them.
+     * @return The scanner, for its counts.
+     * @throws IOException If the file can't be read.
+     */
+    public static LineScanner scan(Matcher matcher, File file, Sink sink) throws IOException {
+        LineScanner scanner = new LineScanner(matcher, sink);
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            for (long at = 0; at < size; at += WINDOW) {
+                ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, at, Math.min(WINDOW, size - at));
+                if (!scanner.feed(window)) {
+                    return scanner;
+                }
+            }
+        } finally {
+            raf.close();
+        }
+        scanner.finish();
+        return scanner;
+    }
+
+    /**
+     * Scans every line read from a channel, such as a socket or a pipe, as it arrives.
+     *
+     * @param matcher The matcher to run on every line.
+     * @param in The input. It's read to its end, unless the sink stops the scan, but isn't closed.
+     * @param sink Where to send the result for every line, or null to only count them.
+     * @return The scanner, for its counts.
+     * @throws IOException If the channel can't be read.
+     */
+    public static LineScanner scan(Matcher matcher, ReadableByteChannel in, Sink sink) throws IOException {
+        LineScanner scanner = new LineScanner(matcher, sink);
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK);
+        while (in.read(buffer) >= 0) {
+            buffer.flip();
+            if (!scanner.feed(buffer)) {
+                return scanner;
+            }
+            buffer.clear();
+        }
+        scanner.finish();
+        return scanner;
+    }
+
+    /**
+     * Scans the next chunk of input, from its position to its limit.
+     *
+     * @param chunk The input. Its position is moved past the bytes scanned, which is its limit unless the scan stopped.
+     * @return False if the sink stopped the scan.
+     */
+    public boolean feed(ByteBuffer chunk) {
+        if (chunk.hasArray()) {
+            int from = chunk.arrayOffset() + chunk.position();
+            int scanned = scan(chunk.array(), from, chunk.arrayOffset() + chunk.limit()) - from;
+            chunk.position(chunk.position() + scanned);
+            return !stopped;
+        }
+
+        // Reading a direct buffer a byte at a time is far slower than copying it in blocks small enough to stay in cache
+        if (scratch == null) {
+            scratch = new byte[SCRATCH];
+        }
+        while (chunk.hasRemaining() && !stopped) {
+            int start = chunk.position();
+            int length = Math.min(SCRATCH, chunk.remaining());
+            chunk.get(scratch, 0, length);
+            chunk.position(start + scan(scratch, 0, length));
+        }
+        return !stopped;
+    }
+
+    /**
+     * Scans the next chunk of input.
+     *
+     * @param chunk The input.
+     * @param from The index of the first byte to scan.
+     * @param to The index after the last byte to scan.
+     * @return False if the sink stopped the scan before the end of the chunk.
+     */
+    public boolean feed(byte[] chunk, int from, int to) {
+        scan(chunk, from, to);
+        return !stopped;
+    }
+
+    /**
+     * @return The index after the last byte scanned, which is to unless the scan stopped.
+     */
+    private int scan(byte[] chunk, int start, int limit) {
+        int i = start;
+        if (pendingReturn && i < limit && !stopped) {
+            pendingReturn = false;
+            if (chunk[i] == '\n') {
+                i++;
+                endLine(position - 1);
+                lineStart = position + 1;
+            } else {
+                state = matcher.run(RETURN, 0, 1, state);
+            }
+        }
+
+        while (i < limit && !stopped) {
+            int lineEnd = i;
+            while (lineEnd < limit && chunk[lineEnd] != '\n') {
+                lineEnd++;
+            }
+
+            if (lineEnd == limit) {
+                // The line goes on in the next chunk, so hold back a \r that may turn out to end it
+                int end = limit;
+                if (chunk[limit - 1] == '\r') {
+                    end--;
+                    pendingReturn = true;
+                }
+                state = matcher.run(chunk, i, end, state);
+                i = limit;
+            } else {
+                int contentEnd = lineEnd > i && chunk[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+                state = matcher.run(chunk, i, contentEnd, state);
+                i = lineEnd + 1;
+                endLine(position + (contentEnd - start));
+                lineStart = position + (i - start);
+            }
+        }
+
+        position += i - start;
+        return i;
+    }
+
+    /**
+     * Ends the input, which scans the last line if it has no line break.
+     *
+     * @return False if the sink stopped the scan.
+     */
+    public boolean finish() {
+        if (!stopped && position > lineStart) {
+            endLine(position - (pendingReturn ? 1 : 0));
+            lineStart = position;
+        }
+        pendingReturn = false;
+        return !stopped;
+    }
+
+    /**
+     * @return The number of lines scanned so far.
+     */
+    public long getLineCount() {
+        return lines;
+    }
+
+    /**
+     * @return The number of lines the DFA accepted so far.
+     */
+    public long getMatchCount() {
+        return matches;
+    }
+
+    /**
+     * @return The number of bytes scanned so far.
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Reports the current line and starts the next one.
+     *
+     * @param contentEnd Where the line ends, without its line break.
+     */
+    private void endLine(long contentEnd) {
+        boolean matched = matcher.isAccept(state);
+        if (matched) {
+            matches++;
+        }
+        if (sink != null && !sink.line(lines, lineStart, contentEnd - lineStart, matched)) {
+            stopped = true;
+        }
+        lines++;
+        state = Matcher.START;
+    }
+}
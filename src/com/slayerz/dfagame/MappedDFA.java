@@ -0,0 +1,235 @@
+package com.slayerz.dfagame;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A DFA run straight off a buffer in the layout of {@link BinaryFormat}, usually a memory mapped file.
+ * <p>
+ * No State or Rule objects are built: states are plain numbers, acceptance is a bit test and every step is a single
+ * read from the table. Only the header is parsed up front, so opening even a huge automaton is immediate and the pages of
+ * the table are brought in by the operating system as they're used.
+ */
+public class MappedDFA {
+
+    /**
+     * The dead state, which rejects and never leaves.
+     */
+    public static final int DEAD = -1;
+
+    /**
+     * Characters below this are looked up in a flat table, the rest by binary search over the classes.
+     */
+    private static final int LATIN = 256;
+
+    private final ByteBuffer buffer;
+    private final int stateCount;
+    private final Alphabet alphabet;
+    private final int width;
+    private final boolean hasLayout;
+
+    /**
+     * The first and last character of every symbol class, which is also every column of the table.
+     */
+    private final char[] classLows;
+    private final char[] classHighs;
+
+    /**
+     * The column of every character below LATIN, or -1 for characters outside of the alphabet.
+     */
+    private final int[] latinColumns;
+
+    private final int acceptOffset;
+    private final int tableOffset;
+    private final int layoutOffset;
+
+    /**
+     * @param buffer The DFA, starting at position 0. It must not change afterwards.
+     * @throws IOException If the buffer doesn't hold a DFA.
+     */
+    MappedDFA(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.limit() < 12 || buffer.getInt(0) != BinaryFormat.MAGIC) {
+            throw new IOException("Not a DFA file");
+        }
+        stateCount = buffer.getInt(4);
+        int k = buffer.getInt(8);
+        if (stateCount < 1 || k < 0 || buffer.limit() < 14L + 4L * k) {
+            throw new IOException("Truncated DFA file");
+        }
+
+        classLows = new char[k];
+        classHighs = new char[k];
+        latinColumns = new int[LATIN];
+        Arrays.fill(latinColumns, -1);
+        Alphabet symbols = Alphabet.EMPTY;
+        for (int s = 0; s < k; s++) {
+            classLows[s] = buffer.getChar(12 + 4 * s);
+            classHighs[s] = buffer.getChar(14 + 4 * s);
+            if (s > 0 && classLows[s] <= classHighs[s - 1] || classHighs[s] < classLows[s]) {
+                throw new IOException("Bad symbol class " + s);
+            }
+            symbols = symbols.union(Alphabet.range(classLows[s], classHighs[s]));
+            for (int c = classLows[s]; c <= classHighs[s] && c < LATIN; c++) {
+                latinColumns[c] = s;
+            }
+        }
+        alphabet = symbols;
+
+        int header = 12 + 4 * k;
+        width = buffer.get(header);
+        hasLayout = (buffer.get(header + 1) & BinaryFormat.FLAG_LAYOUT) != 0;
+        if (width != 1 && width != 2 && width != 4) {
+            throw new IOException("Bad table entry width " + width);
+        }
+
+        acceptOffset = header + 2;
+        // In long, as a corrupt count can make these overflow an int and come out looking small enough
+        long tableStart = acceptOffset + (stateCount + 7L) / 8;
+        long tableEnd = tableStart + (long) stateCount * k * width;
+        if (buffer.limit() < tableEnd + (hasLayout ? 8L * stateCount : 0)) {
+            throw new IOException("Truncated DFA file");
+        }
+        tableOffset = (int) tableStart;
+        layoutOffset = (int) tableEnd;
+    }
+
+    /**
+     * @return The number of states. The start state is state 0.
+     */
+    public int stateCount() {
+        return stateCount;
+    }
+
+    /**
+     * @return The symbols the DFA reads.
+     */
+    public Alphabet getAlphabet() {
+        return alphabet;
+    }
+
+    /**
+     * @param state A state, or {@link #DEAD}.
+     * @return True if the state is an accept state.
+     */
+    public boolean isAccept(int state) {
+        return state != DEAD && (buffer.get(acceptOffset + (state >>> 3)) & (1 << (state & 7))) != 0;
+    }
+
+    /**
+     * @param state A state, or {@link #DEAD}.
+     * @param symbol The symbol read.
+     * @return The state the DFA moves to, or {@link #DEAD} if there's no rule or the symbol isn't in the alphabet.
+     * @throws UncheckedIOException If the table names a state that doesn't exist.
+     */
+    public int next(int state, char symbol) {
+        int column = columnOf(symbol);
+        if (state == DEAD || column < 0) {
+            return DEAD;
+        }
+        int entry = tableOffset + (state * classLows.length + column) * width;
+        int next;
+        switch (width) {
+            case 1:
+                next = (buffer.get(entry) & 0xff) - 1;
+                break;
+            case 2:
+                next = (buffer.getShort(entry) & 0xffff) - 1;
+                break;
+            default:
+                next = buffer.getInt(entry) - 1;
+                break;
+        }
+        // The header was checked up front but the table is only read as it's used, so this is where a bad entry shows
+        if (next < DEAD || next >= stateCount) {
+            throw new UncheckedIOException(new IOException("Bad transition from state " + state + " to " + next));
+        }
+        return next;
+    }
+
+    private int columnOf(char symbol) {
+        if (symbol < LATIN) {
+            return latinColumns[symbol];
+        }
+        int lo = 0;
+        int hi = classLows.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (symbol < classLows[mid]) {
+                hi = mid - 1;
+            } else if (symbol > classHighs[mid]) {
+                lo = mid + 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Determines if the DFA will accept a given string.
+     *
+     * @param s The string to check.
+     * @return True if the string is in the language of the DFA, false otherwise.
+     */
+    public boolean accepts(CharSequence s) {
+        int state = 0;
+        for (int i = 0; i < s.length() && state != DEAD; i++) {
+            state = next(state, s.charAt(i));
+        }
+        return isAccept(state);
+    }
+
+    /**
+     * Builds an editable DFA from the mapped one, for showing on the game board. States are put back where they were if the file has a layout, and laid out row by row otherwise.
+     *
+     * @param boxDIM The width of the squares on the grid.
+     * @return The DFA.
+     * @throws IOException If two states are at the same spot or the table names a state that doesn't exist.
+     */
+    public DFA toDFA(int boxDIM) throws IOException {
+        DFA dfa = new DFA(boxDIM, alphabet);
+        State[] states = new State[stateCount];
+        states[0] = dfa.getStart();
+        if (isAccept(0)) {
+            dfa.toggleAccept(states[0]);
+        }
+        for (int i = 1; i < stateCount; i++) {
+            if (hasLayout) {
+                int r = buffer.getInt(layoutOffset + 8 * i);
+                int c = buffer.getInt(layoutOffset + 8 * i + 4);
+                states[i] = new State(isAccept(i), dfa.BOX_DIM, dfa.STATE_RAD);
+                if (!dfa.addState(r, c, states[i])) {
+                    throw new IOException("State " + i + " is on top of another at (" + r + ", " + c + ")");
+                }
+            } else {
+                states[i] = dfa.addLaidOutState(isAccept(i));
+            }
+        }
+
+        for (int i = 0; i < stateCount; i++) {
+            Map<Integer, Alphabet> labels = new LinkedHashMap<Integer, Alphabet>();
+            for (int s = 0; s < classLows.length; s++) {
+                int next;
+                try {
+                    next = next(i, classLows[s]);
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                if (next == DEAD) {
+                    continue;
+                }
+                Alphabet symbolClass = Alphabet.range(classLows[s], classHighs[s]);
+                labels.put(next, labels.containsKey(next) ? labels.get(next).union(symbolClass) : symbolClass);
+            }
+            for (Map.Entry<Integer, Alphabet> label : labels.entrySet()) {
+                dfa.addTransition(states[i], states[label.getKey()], label.getValue().toString());
+            }
+        }
+        return dfa;
+    }
+}
@@ -0,0 +1,142 @@
+package com.slayerz.dfagame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * A finished DFA, frozen into a form built for nothing but running it over input as fast as possible.
+ * <p>
+ * Get one from {@link DFA#compile()}. Matchers are immutable and keep no link to the DFA they were made from, so they can be
+ * shared between threads and keep working while the DFA is edited. Bytes are read as the characters 0 to 255.
+ * <p>
+ * The run methods take the state to start in and return the state the input leads to, so input that arrives in chunks can
+ * be fed one chunk at a time: start in {@link #START} and pass the state each chunk ends in to the next. None of them copy
+ * the input or move the position of a buffer.
+ */
+public abstract class Matcher {
+
+    /**
+     * The start state.
+     */
+    public static final int START = 0;
+
+    /**
+     * The dead state, which rejects and never leaves. Runs stop as soon as they reach it.
+     */
+    public static final int DEAD = -1;
+
+    private final boolean[] accept;
+
+    /**
+     * Subclasses are made by {@link MatcherCompiler}.
+     *
+     * @param accept Whether each state is an accept state.
+     */
+    protected Matcher(boolean[] accept) {
+        this.accept = accept;
+    }
+
+    /**
+     * @param s The input.
+     * @param from The index of the first character to read.
+     * @param to The index after the last character to read.
+     * @param state The state to start in.
+     * @return The state the characters from {@code from} up to {@code to} lead to, or {@link #DEAD}.
+     */
+    public abstract int run(char[] s, int from, int to, int state);
+
+    /**
+     * @param s The input.
+     * @param from The index of the first byte to read.
+     * @param to The index after the last byte to read.
+     * @param state The state to start in.
+     * @return The state the bytes from {@code from} up to {@code to} lead to, or {@link #DEAD}.
+     */
+    public abstract int run(byte[] s, int from, int to, int state);
+
+    /**
+     * @param s The input.
+     * @param from The index of the first character to read.
+     * @param to The index after the last character to read.
+     * @param state The state to start in.
+     * @return The state the characters from {@code from} up to {@code to} lead to, or {@link #DEAD}.
+     */
+    public abstract int run(CharSequence s, int from, int to, int state);
+
+    /**
+     * @param s The input. Its position and limit are ignored.
+     * @param from The index of the first byte to read.
+     * @param to The index after the last byte to read.
+     * @param state The state to start in.
+     * @return The state the bytes from {@code from} up to {@code to} lead to, or {@link #DEAD}.
+     */
+    public abstract int run(ByteBuffer s, int from, int to, int state);
+
+    /**
+     * @return True if the matcher was generated as code, false if it interprets a table because the DFA is too large for
+     * code the JIT would compile.
+     */
+    public abstract boolean isGenerated();
+
+    /**
+     * @param state A state, or {@link #DEAD}.
+     * @return True if input ending in that state is accepted.
+     */
+    public boolean isAccept(int state) {
+        return state != DEAD && accept[state];
+    }
+
+    /**
+     * @return The number of states, not counting the dead state.
+     */
+    public int stateCount() {
+        return accept.length;
+    }
+
+    public boolean matches(char[] s, int from, int to) {
+        return isAccept(run(s, from, to, START));
+    }
+
+    public boolean matches(byte[] s, int from, int to) {
+        return isAccept(run(s, from, to, START));
+    }
+
+    public boolean matches(CharSequence s, int from, int to) {
+        return isAccept(run(s, from, to, START));
+    }
+
+    public boolean matches(ByteBuffer s, int from, int to) {
+        return isAccept(run(s, from, to, START));
+    }
+
+    /**
+     * @param s The input.
+     * @return True if the DFA accepts the whole input.
+     */
+    public boolean matches(CharSequence s) {
+        return matches(s, 0, s.length());
+    }
+
+    /**
+     * Reads a channel as one input, a chunk at a time. Stops reading once the DFA is in the dead state.
+     *
+     * @param in The input. It isn't closed.
+     * @param buffer Where to read the chunks into. Its contents are overwritten. A heap buffer is read fastest.
+     * @return True if the DFA accepts everything read from the channel.
+     * @throws IOException If the channel can't be read.
+     */
+    public boolean matches(ReadableByteChannel in, ByteBuffer buffer) throws IOException {
+        int state = START;
+        buffer.clear();
+        while (state != DEAD && in.read(buffer) >= 0) {
+            if (buffer.hasArray()) {
+                state = run(buffer.array(), buffer.arrayOffset(), buffer.arrayOffset() + buffer.position(), state);
+            } else {
+                state = run(buffer, 0, buffer.position(), state);
+            }
+            buffer.clear();
+        }
+        return isAccept(state);
+    }
+}
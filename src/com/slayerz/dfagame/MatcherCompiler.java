@@ -0,0 +1,557 @@
+package com.slayerz.dfagame;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Turns a finished DFA into a class of its own, the matcher one would write by hand for that one language.
+ * <p>
+ * The DFA is minimized first. Every run method is then a single loop with a {@code tableswitch} on the current state,
+ * and every state picks its next state with a binary search over the ranges of characters it moves on, compiled to
+ * straight comparisons against constants. Nothing is looked up in memory but the input. The class is defined by a class
+ * loader of its own, so it's unloaded along with the matcher once it's no longer used.
+ * <p>
+ * HotSpot won't JIT compile methods of more than {@link #HUGE_METHOD_LIMIT} bytes of bytecode, and interpreted bytecode is
+ * far slower than a table loop. DFAs that would generate more than that get a {@link TableMatcher} instead.
+ */
+public final class MatcherCompiler {
+
+    /**
+     * The largest method HotSpot compiles, in bytes of bytecode (its HugeMethodLimit).
+     */
+    public static final int HUGE_METHOD_LIMIT = 8000;
+
+    private static final String SUPER = "com/slayerz/dfagame/Matcher";
+    private static final String NAME = "com/slayerz/dfagame/GeneratedMatcher";
+
+    private static final AtomicInteger serial = new AtomicInteger();
+
+    // Locals of the run methods, after this and the input
+    private static final int INDEX = 2;
+    private static final int STATE = 4;
+    private static final int SYMBOL = 5;
+
+    // The opcodes used
+    private static final int ICONST_M1 = 0x02;
+    private static final int ICONST_0 = 0x03;
+    private static final int ICONST_1 = 0x04;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC_W = 0x13;
+    private static final int ILOAD = 0x15;
+    private static final int ILOAD_2 = 0x1c;
+    private static final int ILOAD_3 = 0x1d;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int BALOAD = 0x33;
+    private static final int CALOAD = 0x34;
+    private static final int ISTORE = 0x36;
+    private static final int IAND = 0x7e;
+    private static final int IINC = 0x84;
+    private static final int IF_ICMPGE = 0xa2;
+    private static final int GOTO = 0xa7;
+    private static final int TABLESWITCH = 0xaa;
+    private static final int IRETURN = 0xac;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKEINTERFACE = 0xb9;
+
+    private MatcherCompiler() {
+    }
+
+    /**
+     * Compiles the language of a DFA. Prefer {@link DFA#compile()}, which keeps the matcher until the DFA changes.
+     *
+     * @param dfa The DFA. It needn't be valid: missing rules lead to the dead state.
+     * @return A matcher for the language of the DFA.
+     */
+    public static Matcher compile(DFA dfa) {
+        return compile(dfa, true);
+    }
+
+    /**
+     * @param generate False to always build the table matcher, which is otherwise only the fallback for DFAs too large to
+     * generate.
+     */
+    static Matcher compile(DFA dfa, boolean generate) {
+        DFA minimal = dfa.minimize().getDFA();
+        Delta delta = minimal.getTransitionFunction();
+        char[] classStarts = delta.getAlphabet().toCharArray();
+
+        // Number the states with the start state first
+        int[] local = new int[delta.stateCount()];
+        List<State> states = new ArrayList<State>();
+        states.add(minimal.getStart());
+        for (State q : minimal.getStates()) {
+            if (q != minimal.getStart()) {
+                states.add(q);
+            }
+        }
+        for (int i = 0; i < states.size(); i++) {
+            local[delta.getStateId(states.get(i))] = i;
+        }
+
+        int n = states.size();
+        int[][] next = new int[n][classStarts.length];
+        boolean[] accept = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            int id = delta.getStateId(states.get(i));
+            for (int column = 0; column < classStarts.length; column++) {
+                int to = delta.GetNextState(id, classStarts[column]);
+                next[i][column] = to == Delta.NO_STATE ? -1 : local[to];
+            }
+            accept[i] = states.get(i).isAccept();
+        }
+
+        Matcher generated = generate ? generate(classStarts, next, accept) : null;
+        return generated != null ? generated : new TableMatcher(classStarts, next, accept);
+    }
+
+    /**
+     * @return The generated matcher, or null if its code would be too large to be JIT compiled.
+     */
+    private static Matcher generate(char[] classStarts, int[][] next, boolean[] accept) {
+        ClassFile file = new ClassFile();
+        String name = NAME + serial.incrementAndGet();
+        byte[][] methods = new byte[6][];
+        try {
+            methods[0] = file.method("<init>", "([Z)V", constructor(file), 2, 2, null);
+            methods[1] = file.method("isGenerated", "()Z", new byte[]{ICONST_1, (byte) IRETURN}, 1, 1, null);
+
+            String[] descriptors = {"([CIII)I", "([BIII)I", "(Ljava/lang/CharSequence;III)I", "(Ljava/nio/ByteBuffer;III)I"};
+            for (int m = 0; m < descriptors.length; m++) {
+                Code code = new Code();
+                run(file, code, m, classStarts, next);
+                if (code.size > HUGE_METHOD_LIMIT) {
+                    return null;
+                }
+                methods[2 + m] = file.method("run", descriptors[m], code.toByteArray(), 2, SYMBOL + 1, code.stackMap());
+            }
+
+            byte[] bytes = file.toByteArray(name, SUPER, methods);
+            Class<?> type = new Loader().define(name.replace('/', '.'), bytes);
+            return (Matcher) type.getDeclaredConstructor(boolean[].class).newInstance((Object) accept);
+        } catch (IOException e) {
+            // Only written to memory
+            throw new IllegalStateException(e);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Can't instantiate the generated matcher", e);
+        }
+    }
+
+    private static byte[] constructor(ClassFile file) throws IOException {
+        int init = file.methodRef(SUPER, "<init>", "([Z)V");
+        return new byte[]{ALOAD_0, ALOAD_1, (byte) INVOKESPECIAL, (byte) (init >> 8), (byte) init, (byte) RETURN};
+    }
+
+    /**
+     * Emits the body of a run method:
+     * <pre>
+     * symbol = 0;
+     * loop: if (index >= end) return state;
+     *       symbol = input[index++];
+     *       switch (state) { case q: pick the next state of q by symbol; goto loop ... default: return DEAD }
+     * </pre>
+     *
+     * @param input 0 for char[], 1 for byte[], 2 for CharSequence, 3 for ByteBuffer.
+     */
+    private static void run(ClassFile file, Code code, int input, char[] classStarts, int[][] next)
+            throws IOException {
+        int n = next.length;
+        Label loop = new Label();
+        Label done = new Label();
+        Label rejected = new Label();
+        Label[] states = new Label[n];
+        for (int q = 0; q < n; q++) {
+            states[q] = new Label();
+        }
+
+        // The symbol is set up front, so every branch target has the same frame
+        code.u1(ICONST_0);
+        code.u1(ISTORE);
+        code.u1(SYMBOL);
+
+        code.bind(loop);
+        code.u1(ILOAD_2);
+        code.u1(ILOAD_3);
+        code.jump(IF_ICMPGE, done);
+        code.u1(ALOAD_1);
+        code.u1(ILOAD_2);
+        if (input == 0) {
+            code.u1(CALOAD);
+        } else if (input == 1) {
+            code.u1(BALOAD);
+            code.u1(SIPUSH);
+            code.u2(0xff);
+            code.u1(IAND);
+        } else if (input == 2) {
+            code.u1(INVOKEINTERFACE);
+            code.u2(file.interfaceMethodRef("java/lang/CharSequence", "charAt", "(I)C"));
+            code.u1(2);
+            code.u1(0);
+        } else {
+            code.u1(INVOKEVIRTUAL);
+            code.u2(file.methodRef("java/nio/ByteBuffer", "get", "(I)B"));
+            code.u1(SIPUSH);
+            code.u2(0xff);
+            code.u1(IAND);
+        }
+        code.u1(ISTORE);
+        code.u1(SYMBOL);
+        code.u1(IINC);
+        code.u1(INDEX);
+        code.u1(1);
+        code.u1(ILOAD);
+        code.u1(STATE);
+        code.tableSwitch(rejected, states);
+
+        for (int q = 0; q < n; q++) {
+            code.bind(states[q]);
+
+            // The ranges q moves on, merging neighbouring classes that lead to the same state
+            List<Integer> lows = new ArrayList<Integer>();
+            List<Integer> targets = new ArrayList<Integer>();
+            for (int column = 0; column < classStarts.length; column++) {
+                if (column == 0 || next[q][column] != next[q][column - 1]) {
+                    lows.add((int) classStarts[column]);
+                    targets.add(next[q][column]);
+                }
+            }
+            search(file, code, q, lows, targets, 0, lows.size() - 1, loop, rejected);
+        }
+
+        code.bind(done);
+        code.u1(ILOAD);
+        code.u1(STATE);
+        code.u1(IRETURN);
+        code.bind(rejected);
+        code.u1(ICONST_M1);
+        code.u1(IRETURN);
+    }
+
+    /**
+     * Emits a binary search over the ranges from ranges first to last of state q, ending in a jump to the next state.
+     */
+    private static void search(ClassFile file, Code code, int q, List<Integer> lows, List<Integer> targets, int first,
+                               int last, Label loop, Label rejected) throws IOException {
+        if (first == last) {
+            int target = targets.get(first);
+            if (target == -1) {
+                code.jump(GOTO, rejected);
+            } else if (target == q) {
+                code.jump(GOTO, loop);
+            } else {
+                push(file, code, target);
+                code.u1(ISTORE);
+                code.u1(STATE);
+                code.jump(GOTO, loop);
+            }
+            return;
+        }
+
+        int mid = (first + last + 1) >>> 1;
+        Label upper = new Label();
+        code.u1(ILOAD);
+        code.u1(SYMBOL);
+        push(file, code, lows.get(mid));
+        code.jump(IF_ICMPGE, upper);
+        search(file, code, q, lows, targets, first, mid - 1, loop, rejected);
+        code.bind(upper);
+        search(file, code, q, lows, targets, mid, last, loop, rejected);
+    }
+
+    private static void push(ClassFile file, Code code, int value) throws IOException {
+        if (value >= -1 && value <= 5) {
+            code.u1(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            code.u1(BIPUSH);
+            code.u1(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            code.u1(SIPUSH);
+            code.u2(value);
+        } else {
+            code.u1(LDC_W);
+            code.u2(file.integer(value));
+        }
+    }
+
+    /**
+     * A place in the code, along with the branches to it that still need its offset.
+     */
+    private static final class Label {
+        private int position = -1;
+
+        /**
+         * Triples of (address of the branch instruction, address of its offset, width of the offset) for branches
+         * emitted before the label was bound.
+         */
+        private final List<int[]> pending = new ArrayList<int[]>();
+    }
+
+    /**
+     * The bytecode of a method, along with the addresses branches go to.
+     */
+    private static final class Code {
+        private byte[] bytes = new byte[256];
+        private int size;
+
+        /**
+         * Every address jumped to. All have the same frame: the arguments plus an int, and nothing on the stack.
+         */
+        private final TreeSet<Integer> targets = new TreeSet<Integer>();
+
+        void u1(int b) {
+            if (size == bytes.length) {
+                byte[] grown = new byte[2 * size];
+                System.arraycopy(bytes, 0, grown, 0, size);
+                bytes = grown;
+            }
+            bytes[size++] = (byte) b;
+        }
+
+        void u2(int v) {
+            u1(v >> 8);
+            u1(v);
+        }
+
+        void u4(int v) {
+            u2(v >> 16);
+            u2(v);
+        }
+
+        void bind(Label label) {
+            label.position = size;
+            targets.add(size);
+            for (int[] branch : label.pending) {
+                write(branch[1], branch[2], size - branch[0]);
+            }
+        }
+
+        void jump(int opcode, Label label) {
+            int at = size;
+            u1(opcode);
+            offset(at, label, 2);
+        }
+
+        void tableSwitch(Label otherwise, Label[] cases) {
+            int at = size;
+            u1(TABLESWITCH);
+            while (size % 4 != 0) {
+                u1(0);
+            }
+            offset(at, otherwise, 4);
+            u4(0);
+            u4(cases.length - 1);
+            for (Label label : cases) {
+                offset(at, label, 4);
+            }
+        }
+
+        /**
+         * Adds the offset from a branch instruction to a label, filled in when the label is bound if it's still ahead.
+         */
+        private void offset(int instruction, Label label, int width) {
+            int where = size;
+            for (int i = 0; i < width; i++) {
+                u1(0);
+            }
+            if (label.position >= 0) {
+                write(where, width, label.position - instruction);
+            } else {
+                label.pending.add(new int[]{instruction, where, width});
+            }
+        }
+
+        private void write(int where, int width, int value) {
+            for (int i = width - 1; i >= 0; i--) {
+                bytes[where + i] = (byte) value;
+                value >>= 8;
+            }
+        }
+
+        byte[] toByteArray() {
+            byte[] code = new byte[size];
+            System.arraycopy(bytes, 0, code, 0, size);
+            return code;
+        }
+
+        /**
+         * @return The contents of the StackMapTable attribute.
+         */
+        byte[] stackMap() throws IOException {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(buffer);
+            out.writeShort(targets.size());
+            int previous = -1;
+            for (int target : targets) {
+                int delta = target - previous - 1;
+                if (previous == -1) {
+                    // append_frame: the symbol local, an int
+                    out.writeByte(252);
+                    out.writeShort(delta);
+                    out.writeByte(1);
+                } else if (delta < 64) {
+                    // same_frame
+                    out.writeByte(delta);
+                } else {
+                    // same_frame_extended
+                    out.writeByte(251);
+                    out.writeShort(delta);
+                }
+                previous = target;
+            }
+            return buffer.toByteArray();
+        }
+    }
+
+    /**
+     * The constant pool of the generated class, and the layout of the class around it.
+     */
+    private static final class ClassFile {
+        private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+        private final DataOutputStream pool = new DataOutputStream(poolBytes);
+        private final Map<String, Integer> entries = new HashMap<String, Integer>();
+        private int count = 1;
+
+        int utf8(String s) throws IOException {
+            Integer index = entries.get("U" + s);
+            if (index == null) {
+                pool.writeByte(1);
+                pool.writeUTF(s);
+                index = add("U" + s);
+            }
+            return index;
+        }
+
+        int integer(int value) throws IOException {
+            Integer index = entries.get("I" + value);
+            if (index == null) {
+                pool.writeByte(3);
+                pool.writeInt(value);
+                index = add("I" + value);
+            }
+            return index;
+        }
+
+        int classRef(String name) throws IOException {
+            Integer index = entries.get("C" + name);
+            if (index == null) {
+                int utf8 = utf8(name);
+                pool.writeByte(7);
+                pool.writeShort(utf8);
+                index = add("C" + name);
+            }
+            return index;
+        }
+
+        int methodRef(String owner, String name, String descriptor) throws IOException {
+            return ref(10, owner, name, descriptor);
+        }
+
+        int interfaceMethodRef(String owner, String name, String descriptor) throws IOException {
+            return ref(11, owner, name, descriptor);
+        }
+
+        private int ref(int tag, String owner, String name, String descriptor) throws IOException {
+            String key = "R" + tag + owner + "." + name + descriptor;
+            Integer index = entries.get(key);
+            if (index == null) {
+                int type = classRef(owner);
+                int nameIndex = utf8(name);
+                int descriptorIndex = utf8(descriptor);
+                pool.writeByte(12);
+                pool.writeShort(nameIndex);
+                pool.writeShort(descriptorIndex);
+                int nameAndType = add("N" + name + descriptor);
+                pool.writeByte(tag);
+                pool.writeShort(type);
+                pool.writeShort(nameAndType);
+                index = add(key);
+            }
+            return index;
+        }
+
+        private int add(String key) {
+            entries.put(key, count);
+            return count++;
+        }
+
+        /**
+         * @return A public method with a Code attribute, and a StackMapTable attribute if stackMap isn't null.
+         */
+        byte[] method(String name, String descriptor, byte[] code, int maxStack, int maxLocals, byte[] stackMap)
+                throws IOException {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(buffer);
+            out.writeShort(0x0001);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(1);
+
+            out.writeShort(utf8("Code"));
+            int stackMapLength = stackMap == null ? 0 : 6 + stackMap.length;
+            out.writeInt(12 + code.length + stackMapLength);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(code.length);
+            out.write(code);
+            out.writeShort(0);
+            if (stackMap == null) {
+                out.writeShort(0);
+            } else {
+                out.writeShort(1);
+                out.writeShort(utf8("StackMapTable"));
+                out.writeInt(stackMap.length);
+                out.write(stackMap);
+            }
+            return buffer.toByteArray();
+        }
+
+        byte[] toByteArray(String name, String superName, byte[][] methods) throws IOException {
+            int thisClass = classRef(name);
+            int superClass = classRef(superName);
+
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(buffer);
+            out.writeInt(0xcafebabe);
+            out.writeShort(0);
+            out.writeShort(52);
+            out.writeShort(count);
+            out.write(poolBytes.toByteArray());
+            // public final super
+            out.writeShort(0x0031);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0);
+            out.writeShort(0);
+            out.writeShort(methods.length);
+            for (byte[] method : methods) {
+                out.write(method);
+            }
+            out.writeShort(0);
+            return buffer.toByteArray();
+        }
+    }
+
+    /**
+     * Defines a single generated class. Each matcher gets its own loader so its class can be unloaded with it.
+     */
+    private static final class Loader extends ClassLoader {
+
+        Loader() {
+            super(Matcher.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
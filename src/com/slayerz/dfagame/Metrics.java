@@ -0,0 +1,232 @@
+package com.slayerz.dfagame;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts and latency histograms for the hot paths of the engine and the game.
+ * <p>
+ * Metrics are off unless the JVM is started with {@code -Ddfagame.metrics=true}. The switch is read once into a static final
+ * field, so when it's off the JIT drops every {@code if (Metrics.ENABLED)} block and the hot paths cost exactly what they
+ * did without metrics. When it's on, {@code -Ddfagame.metrics.file=<path>} exports them to a file every
+ * {@code dfagame.metrics.period} seconds (10 by default) and once more on exit; other exporters can be plugged in with
+ * {@link #startExporting(MetricsExporter, long)}.
+ * <p>
+ * Coarse operations, verification and painting, also emit JFR events whether metrics are on or not, so a flight recording
+ * shows them alongside GC pauses. See {@link VerificationEvent} and {@link PaintEvent}.
+ */
+public final class Metrics {
+
+    /**
+     * Whether metrics are recorded.
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("dfagame.metrics");
+
+    private static final List<Metric> all = new ArrayList<Metric>();
+
+    public static final Histogram ACCEPTS_STRING = register(new Histogram("dfa.acceptsString", "ns"));
+    public static final Histogram TEST_ON_ALL = register(new Histogram("dfa.testOnAll", "ns"));
+    public static final Histogram MATCHES_REGEX = register(new Histogram("dfa.matchesRegex", "ns"));
+    public static final Histogram FIND_COUNTEREXAMPLE = register(new Histogram("dfa.findCounterexample", "ns"));
+    public static final Counter RULE_LOOKUPS = register(new Counter("delta.lookups"));
+    public static final Histogram PAINT = register(new Histogram("game.paint", "ns"));
+
+    /**
+     * Clears of the cache of a {@link LazyDFA}, and strings it thrashed on and finished by set simulation instead.
+     */
+    public static final Counter LAZY_DFA_RESETS = register(new Counter("lazyDFA.resets"));
+    public static final Counter LAZY_DFA_FALLBACKS = register(new Counter("lazyDFA.fallbacks"));
+
+    /**
+     * The strings run per exhaustive test.
+     */
+    public static final Histogram STRINGS_TESTED = register(new Histogram("verify.stringsTested", "strings"));
+
+    /**
+     * The pairs of states visited per counterexample search, which takes the place of strings tested there.
+     */
+    public static final Histogram PAIRS_VISITED = register(new Histogram("verify.pairsVisited", "pairs"));
+
+    private static ScheduledExecutorService exporter;
+
+    private Metrics() {
+    }
+
+    private static <M extends Metric> M register(M metric) {
+        all.add(metric);
+        return metric;
+    }
+
+    /**
+     * @return Every metric, in a fixed order.
+     */
+    public static List<Metric> all() {
+        return Collections.unmodifiableList(all);
+    }
+
+    /**
+     * Starts exporting to the file named by the {@code dfagame.metrics.file} property, if metrics are on and it's set.
+     */
+    public static void startFromProperties() {
+        String file = System.getProperty("dfagame.metrics.file");
+        if (ENABLED && file != null) {
+            startExporting(new MetricsExporter.ToFile(new File(file)),
+                    TimeUnit.SECONDS.toMillis(Long.getLong("dfagame.metrics.period", 10)));
+        }
+    }
+
+    /**
+     * Exports every metric periodically from a background thread, and once more when the JVM exits.
+     *
+     * @param to Where to export to. Replaces the exporter started before, if any.
+     * @param periodMillis How often to export.
+     */
+    public static synchronized void startExporting(final MetricsExporter to, long periodMillis) {
+        if (exporter != null) {
+            exporter.shutdownNow();
+        }
+        exporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Metrics export");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        Runnable export = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    to.export(System.currentTimeMillis(), all());
+                } catch (IOException e) {
+                    System.err.println("Couldn't export metrics: " + e.getMessage());
+                }
+            }
+        };
+        exporter.scheduleAtFixedRate(export, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(export, "Metrics export on exit"));
+    }
+
+    /**
+     * A named value that's only ever added to.
+     */
+    public abstract static class Metric {
+        private final String name;
+        private final String unit;
+
+        Metric(String name, String unit) {
+            this.name = name;
+            this.unit = unit;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return What the values are counted in, such as "ns".
+         */
+        public String getUnit() {
+            return unit;
+        }
+
+        /**
+         * @return The number of events recorded.
+         */
+        public abstract long getCount();
+    }
+
+    /**
+     * Counts events. Cheap enough to bump from many threads at once.
+     */
+    public static final class Counter extends Metric {
+        private final LongAdder count = new LongAdder();
+
+        Counter(String name) {
+            super(name, "events");
+        }
+
+        public void increment() {
+            count.increment();
+        }
+
+        @Override
+        public long getCount() {
+            return count.sum();
+        }
+    }
+
+    /**
+     * Records values into buckets by powers of two, so percentiles are known to within a factor of two at a fixed cost
+     * per value and no allocation.
+     */
+    public static final class Histogram extends Metric {
+        /**
+         * Bucket i holds the values from 2^(i - 1) up to 2^i - 1; bucket 0 holds 0 and negative values.
+         */
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        Histogram(String name, String unit) {
+            super(name, unit);
+        }
+
+        public void record(long value) {
+            buckets.incrementAndGet(value <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(value));
+            count.increment();
+            sum.add(value);
+            long seen = max.get();
+            while (value > seen && !max.compareAndSet(seen, value)) {
+                seen = max.get();
+            }
+        }
+
+        @Override
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getSum() {
+            return sum.sum();
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+
+        /**
+         * @param fraction Between 0 and 1, e.g. 0.99 for the 99th percentile.
+         * @return An upper bound on the value that fraction of the values are at or below, at most twice too high. 0 if
+         * nothing was recorded.
+         */
+        public long getPercentile(double fraction) {
+            long total = 0;
+            long[] counts = new long[buckets.length()];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+            long rank = (long) Math.ceil(fraction * total);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0) {
+                    return i == 0 ? 0 : Math.min((1L << i) - 1, getMax());
+                }
+            }
+            return 0;
+        }
+    }
+}
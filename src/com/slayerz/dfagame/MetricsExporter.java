@@ -0,0 +1,58 @@
+package com.slayerz.dfagame;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Sends the current value of every metric somewhere, such as a file or a collector. See {@link Metrics}.
+ */
+public interface MetricsExporter {
+
+    /**
+     * Called from a single background thread at a time, with values that only ever grow between calls.
+     *
+     * @param timeMillis When the values were read, in milliseconds since the epoch.
+     * @param metrics Every metric.
+     * @throws IOException If the values can't be sent. Exporting is tried again next time.
+     */
+    void export(long timeMillis, List<Metrics.Metric> metrics) throws IOException;
+
+    /**
+     * Appends one line of tab separated values per metric to a file: time, name, unit, count, then for histograms the
+     * sum, the maximum and the 50th, 90th and 99th percentiles.
+     */
+    class ToFile implements MetricsExporter {
+        private final File file;
+
+        public ToFile(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public void export(long timeMillis, List<Metrics.Metric> metrics) throws IOException {
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file, true),
+                    StandardCharsets.UTF_8));
+            try {
+                for (Metrics.Metric m : metrics) {
+                    out.print(timeMillis + "\t" + m.getName() + "\t" + m.getUnit() + "\t" + m.getCount());
+                    if (m instanceof Metrics.Histogram) {
+                        Metrics.Histogram h = (Metrics.Histogram) m;
+                        out.print("\t" + h.getSum() + "\t" + h.getMax() + "\t" + h.getPercentile(0.5) + "\t"
+                                + h.getPercentile(0.9) + "\t" + h.getPercentile(0.99));
+                    }
+                    out.println();
+                }
+            } finally {
+                out.close();
+            }
+            if (out.checkError()) {
+                throw new IOException("Couldn't write " + file);
+            }
+        }
+    }
+}
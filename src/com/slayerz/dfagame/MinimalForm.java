@@ -0,0 +1,361 @@
+package com.slayerz.dfagame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The minimal DFA equivalent to a DFA, along with the equivalence class of every state of the original.
+ * <p>
+ * Built with Hopcroft's partition refinement, which runs in O(n log n) for a fixed alphabet. Only states reachable from
+ * the start state take part, and missing rules are completed with a dead state first. The dead class is then left out of
+ * the result again, just like {@link RegexCompiler} leaves out transitions into the dead state. The alphabet is refined over
+ * symbol classes rather than characters (see {@link Delta}), so large alphabets cost no more than small ones.
+ */
+public class MinimalForm {
+
+    private final DFA dfa;
+
+    /**
+     * The minimal state each reachable state of the original DFA was merged into.
+     */
+    private final Map<State, State> classes;
+
+    private MinimalForm(DFA dfa, Map<State, State> classes) {
+        this.dfa = dfa;
+        this.classes = classes;
+    }
+
+    /**
+     * @return The minimal DFA. It uses its own State objects.
+     */
+    public DFA getDFA() {
+        return dfa;
+    }
+
+    /**
+     * @param q A state of the original DFA.
+     * @return The state of the minimal DFA that q was merged into, or null if q is unreachable or equivalent to the dead
+     * state.
+     */
+    public State classOf(State q) {
+        return classes.get(q);
+    }
+
+    /**
+     * @return The number of states of the minimal DFA.
+     */
+    public int size() {
+        return dfa.getStates().size();
+    }
+
+    /**
+     * Minimizes a DFA over its alphabet.
+     *
+     * @param original The DFA to minimize. It isn't modified.
+     * @return The minimal form of the DFA.
+     */
+    public static MinimalForm of(DFA original) {
+        return of(original.getStart(), original.getTransitionFunction(), original.getAlphabet());
+    }
+
+    /**
+     * Minimizes the DFA given by a start state and a transition function.
+     *
+     * @param start The start state.
+     * @param delta The transition function.
+     * @param alphabet The symbols the DFA reads.
+     * @return The minimal form of the DFA.
+     */
+    public static MinimalForm of(State start, Delta delta, Alphabet alphabet) {
+        // One symbol per class stands for the whole class
+        String symbols = Delta.symbolsFor(alphabet, delta, null);
+        int k = symbols.length();
+
+        // Number the reachable states breadth first from the start state; the dead state comes last
+        int[] local = new int[delta.stateCount()];
+        Arrays.fill(local, -1);
+        List<Integer> reachable = new ArrayList<Integer>();
+        local[delta.getStateId(start)] = 0;
+        reachable.add(delta.getStateId(start));
+        for (int i = 0; i < reachable.size(); i++) {
+            for (int s = 0; s < k; s++) {
+                int next = delta.GetNextState(reachable.get(i), symbols.charAt(s));
+                if (next != Delta.NO_STATE && local[next] == -1) {
+                    local[next] = reachable.size();
+                    reachable.add(next);
+                }
+            }
+        }
+        int n = reachable.size() + 1;
+        int dead = n - 1;
+
+        int[] next = new int[n * k];
+        boolean[] accept = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            for (int s = 0; s < k; s++) {
+                int target = i == dead ? Delta.NO_STATE : delta.GetNextState(reachable.get(i), symbols.charAt(s));
+                next[i * k + s] = target == Delta.NO_STATE ? dead : local[target];
+            }
+            accept[i] = i != dead && delta.getState(reachable.get(i)).isAccept();
+        }
+
+        int[] blockOf = new Refinement(n, k, next, accept).run();
+        int deadClass = blockOf[dead];
+
+        // The start state rejects everything, so the minimal DFA is a lone start state
+        if (blockOf[0] == deadClass) {
+            DFA empty = new DFA(0, alphabet);
+            Map<State, State> classes = new HashMap<State, State>();
+            classes.put(start, empty.getStart());
+            return new MinimalForm(empty, classes);
+        }
+
+        // Renumber the classes in order of first appearance, so the start class comes first, and drop the dead class
+        int[] classIndex = new int[n];
+        Arrays.fill(classIndex, -1);
+        int classCount = 0;
+        for (int i = 0; i < n; i++) {
+            if (blockOf[i] != deadClass && classIndex[blockOf[i]] == -1) {
+                classIndex[blockOf[i]] = classCount++;
+            }
+        }
+
+        DFA minimal = new DFA(0, alphabet);
+        State[] minimalStates = new State[classCount];
+        for (int i = 0; i < n; i++) {
+            int c = blockOf[i] == deadClass ? -1 : classIndex[blockOf[i]];
+            if (c == -1 || minimalStates[c] != null) {
+                continue;
+            }
+            if (c == 0) {
+                minimalStates[c] = minimal.getStart();
+                if (accept[i]) {
+                    minimal.toggleAccept(minimalStates[c]);
+                }
+            } else {
+                minimalStates[c] = minimal.addLaidOutState(accept[i]);
+            }
+        }
+
+        // One representative per class is enough to find the transitions of the class
+        boolean[] done = new boolean[classCount];
+        for (int i = 0; i < n; i++) {
+            int c = blockOf[i] == deadClass ? -1 : classIndex[blockOf[i]];
+            if (c == -1 || done[c]) {
+                continue;
+            }
+            done[c] = true;
+
+            Map<Integer, Alphabet> labels = new HashMap<Integer, Alphabet>();
+            List<Integer> order = new ArrayList<Integer>();
+            for (int s = 0; s < k; s++) {
+                int target = blockOf[next[i * k + s]];
+                if (target == deadClass) {
+                    continue;
+                }
+                int t = classIndex[target];
+                Alphabet symbolClass = delta.getSymbolClass(symbols.charAt(s)).intersect(alphabet);
+                if (!labels.containsKey(t)) {
+                    labels.put(t, symbolClass);
+                    order.add(t);
+                } else {
+                    labels.put(t, labels.get(t).union(symbolClass));
+                }
+            }
+            for (int t : order) {
+                minimal.addTransition(minimalStates[c], minimalStates[t], labels.get(t).toString());
+            }
+        }
+
+        Map<State, State> classes = new HashMap<State, State>();
+        for (int i = 0; i < dead; i++) {
+            if (blockOf[i] != deadClass) {
+                classes.put(delta.getState(reachable.get(i)), minimalStates[classIndex[blockOf[i]]]);
+            }
+        }
+        return new MinimalForm(minimal, classes);
+    }
+
+    /**
+     * Hopcroft's partition refinement over a complete DFA given as a dense table.
+     */
+    private static class Refinement {
+        private final int n;
+        private final int k;
+        private final boolean[] accept;
+
+        /**
+         * Predecessors of every state by symbol, as one flat array: the predecessors of state t by symbol s are
+         * preds[predStart[s * (n + 1) + t]] up to preds[predStart[s * (n + 1) + t + 1]].
+         */
+        private final int[] preds;
+        private final int[] predStart;
+
+        /**
+         * The states, ordered so that every block is a contiguous range [first[b], end[b]). The states of a block marked
+         * during a split are moved to the front of its range, up to mid[b].
+         */
+        private final int[] elements;
+        private final int[] location;
+        private final int[] blockOf;
+        private final int[] first;
+        private final int[] end;
+        private final int[] mid;
+        private int blocks;
+
+        /**
+         * Pending splitters as (block, symbol) pairs, and which ones are pending.
+         */
+        private int[] pending;
+        private int pendingSize;
+        private final boolean[] isPending;
+
+        Refinement(int n, int k, int[] next, boolean[] accept) {
+            this.n = n;
+            this.k = k;
+            this.accept = accept;
+
+            predStart = new int[k * (n + 1) + 1];
+            for (int i = 0; i < n; i++) {
+                for (int s = 0; s < k; s++) {
+                    predStart[s * (n + 1) + next[i * k + s] + 1]++;
+                }
+            }
+            for (int i = 1; i < predStart.length; i++) {
+                predStart[i] += predStart[i - 1];
+            }
+            preds = new int[n * k];
+            int[] fill = Arrays.copyOf(predStart, predStart.length);
+            for (int i = 0; i < n; i++) {
+                for (int s = 0; s < k; s++) {
+                    preds[fill[s * (n + 1) + next[i * k + s]]++] = i;
+                }
+            }
+
+            elements = new int[n];
+            location = new int[n];
+            blockOf = new int[n];
+            first = new int[n];
+            end = new int[n];
+            mid = new int[n];
+            isPending = new boolean[n * k];
+            pending = new int[16];
+        }
+
+        int[] run() {
+            // Initial partition: accepting states, then the rest
+            int size = 0;
+            for (int pass = 0; pass < 2; pass++) {
+                int blockStart = size;
+                for (int i = 0; i < n; i++) {
+                    if (accept[i] == (pass == 0)) {
+                        elements[size] = i;
+                        location[i] = size++;
+                        blockOf[i] = blocks;
+                    }
+                }
+                if (size > blockStart) {
+                    first[blocks] = blockStart;
+                    end[blocks] = size;
+                    mid[blocks] = blockStart;
+                    blocks++;
+                }
+            }
+
+            // Either half will do as the first splitter, so take the smaller
+            int smallest = 0;
+            if (blocks == 2 && end[1] - first[1] < end[0] - first[0]) {
+                smallest = 1;
+            }
+            for (int s = 0; s < k; s++) {
+                push(smallest, s);
+            }
+
+            int[] splitter = new int[n];
+            int[] touched = new int[n];
+            while (pendingSize > 0) {
+                int s = pending[--pendingSize];
+                int b = pending[--pendingSize];
+                isPending[b * k + s] = false;
+
+                // Copy the splitter, since it may itself be split below
+                int splitterSize = end[b] - first[b];
+                System.arraycopy(elements, first[b], splitter, 0, splitterSize);
+
+                int touchedCount = 0;
+                for (int i = 0; i < splitterSize; i++) {
+                    int t = splitter[i];
+                    for (int p = predStart[s * (n + 1) + t]; p < predStart[s * (n + 1) + t + 1]; p++) {
+                        int x = preds[p];
+                        int block = blockOf[x];
+                        if (location[x] < mid[block]) {
+                            continue; // Already marked
+                        }
+                        if (mid[block] == first[block]) {
+                            touched[touchedCount++] = block;
+                        }
+                        swap(location[x], mid[block]++);
+                    }
+                }
+
+                for (int i = 0; i < touchedCount; i++) {
+                    split(touched[i]);
+                }
+            }
+            return blockOf;
+        }
+
+        /**
+         * Splits the marked states of a block off into a new block, unless the whole block was marked.
+         */
+        private void split(int b) {
+            if (mid[b] == end[b]) {
+                mid[b] = first[b];
+                return;
+            }
+
+            int created = blocks++;
+            first[created] = first[b];
+            end[created] = mid[b];
+            mid[created] = first[created];
+            first[b] = mid[b];
+            for (int i = first[created]; i < end[created]; i++) {
+                blockOf[elements[i]] = created;
+            }
+
+            for (int s = 0; s < k; s++) {
+                if (isPending[b * k + s]) {
+                    push(created, s);
+                } else if (end[created] - first[created] < end[b] - first[b]) {
+                    push(created, s);
+                } else {
+                    push(b, s);
+                }
+            }
+        }
+
+        private void swap(int i, int j) {
+            int a = elements[i];
+            int b = elements[j];
+            elements[i] = b;
+            elements[j] = a;
+            location[b] = i;
+            location[a] = j;
+        }
+
+        private void push(int b, int s) {
+            if (isPending[b * k + s]) {
+                return;
+            }
+            if (pendingSize + 2 > pending.length) {
+                pending = Arrays.copyOf(pending, 2 * pending.length);
+            }
+            pending[pendingSize++] = b;
+            pending[pendingSize++] = s;
+            isPending[b * k + s] = true;
+        }
+    }
+}
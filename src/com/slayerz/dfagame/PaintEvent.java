@@ -0,0 +1,21 @@
+package com.slayerz.dfagame;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JFR event for every frame the game board paints, so dropped frames can be lined up with GC pauses.
+ */
+@Name("com.slayerz.dfagame.Paint")
+@Label("Board Paint")
+@Category("DFA Game")
+@Description("A frame of the game board")
+class PaintEvent extends Event {
+
+    @Label("Board Rendered")
+    @Description("Whether any tile of the board had to be rendered, because the DFA or the zoom changed or the view moved onto it, rather than copied")
+    boolean rendered;
+}
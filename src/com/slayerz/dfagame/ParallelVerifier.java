@@ -0,0 +1,120 @@
+package com.slayerz.dfagame;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Checks two DFAs against each other on every string up to a length, splitting the strings by prefix into fork/join tasks.
+ * <p>
+ * Each task owns the subtree of strings starting with its prefix. It is handed the states both automata are in after
+ * reading that prefix, so the prefix is only ever walked once, and it either forks one task per symbol or, once the
+ * subtree is small, walks it depth first with {@link PrefixSimulation}. All tasks share one flag and stop as soon as any
+ * of them finds a mismatch.
+ */
+public class ParallelVerifier extends RecursiveTask<Boolean> {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Subtrees with at most this many levels left are tested by a single task.
+     */
+    public static final int SEQUENTIAL_LENGTH = 12;
+
+    private final Delta first;
+    private final Delta second;
+    private final String alphabet;
+    private final int firstState;
+    private final int secondState;
+    private final int remaining;
+    private final AtomicBoolean mismatch;
+
+    private ParallelVerifier(Delta first, Delta second, String alphabet, int firstState, int secondState, int remaining,
+                             AtomicBoolean mismatch) {
+        this.first = first;
+        this.second = second;
+        this.alphabet = alphabet;
+        this.firstState = firstState;
+        this.secondState = secondState;
+        this.remaining = remaining;
+        this.mismatch = mismatch;
+    }
+
+    /**
+     * Determines whether two DFAs agree on every string over an alphabet up to a certain length.
+     *
+     * @param firstStart The start state of the first DFA.
+     * @param first The transition function of the first DFA.
+     * @param secondStart The start state of the second DFA.
+     * @param second The transition function of the second DFA.
+     * @param alphabet The symbols the strings are made of.
+     * @param length The maximum length of the strings tested.
+     * @param parallelism The number of worker threads to use.
+     * @return True if the DFAs accept and reject the same strings, false otherwise.
+     */
+    public static boolean agree(State firstStart, Delta first, State secondStart, Delta second, String alphabet,
+                                int length, int parallelism) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.invoke(new ParallelVerifier(first, second, alphabet, first.getStateId(firstStart),
+                    second.getStateId(secondStart), length, new AtomicBoolean()));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Override
+    protected Boolean compute() {
+        if (mismatch.get()) {
+            return false;
+        }
+        if (accepts(first, firstState) != accepts(second, secondState)) {
+            mismatch.set(true);
+            return false;
+        }
+        // Both automata are stuck in their dead states, so they reject everything below here
+        if (firstState == Delta.NO_STATE && secondState == Delta.NO_STATE) {
+            return true;
+        }
+        if (remaining <= SEQUENTIAL_LENGTH) {
+            return testSubtree();
+        }
+
+        ParallelVerifier[] children = new ParallelVerifier[alphabet.length()];
+        for (int i = 0; i < children.length; i++) {
+            char c = alphabet.charAt(i);
+            children[i] = new ParallelVerifier(first, second, alphabet, first.GetNextState(firstState, c),
+                    second.GetNextState(secondState, c), remaining - 1, mismatch);
+        }
+        invokeAll(children);
+
+        for (ParallelVerifier child : children) {
+            if (!child.join()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tests every string of the subtree, walking it depth first from the states of the prefix.
+     */
+    private boolean testSubtree() {
+        boolean agreed = PrefixSimulation.walk(first, firstState, second, secondState, alphabet, remaining,
+                new PrefixSimulation.Sink() {
+                    @Override
+                    public boolean test(long rank, int length, boolean firstAccepts, boolean secondAccepts) {
+                        return firstAccepts == secondAccepts && !mismatch.get();
+                    }
+                });
+
+        if (!agreed) {
+            mismatch.set(true);
+        }
+        return agreed;
+    }
+
+    private static boolean accepts(Delta delta, int stateId) {
+        return stateId != Delta.NO_STATE && delta.getState(stateId).isAccept();
+    }
+}
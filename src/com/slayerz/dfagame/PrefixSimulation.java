@@ -0,0 +1,124 @@
+package com.slayerz.dfagame;
+
+/**
+ * Runs one or two DFAs on every string up to a length by walking the tree of strings depth first.
+ * <p>
+ * The current state of each automaton is carried down the tree, so every edge of the tree costs a single step no matter
+ * how long the prefix above it is. Visiting all strings up to length n therefore takes O(2^n) steps over a binary
+ * alphabet, rather than the O(n * 2^n) of running every string from the start state. Results are handed to a
+ * {@link Sink} as they are found instead of being collected.
+ */
+public class PrefixSimulation {
+
+    /**
+     * Receives the result for every string visited.
+     */
+    public interface Sink {
+        /**
+         * @param rank The rank of the string: shorter strings first, then by the order of the symbols in the alphabet.
+         * @param length The length of the string.
+         * @param first Whether the first DFA accepts the string.
+         * @param second Whether the second DFA accepts the string. Always false when only one DFA is simulated.
+         * @return True to keep going, false to stop the walk.
+         */
+        boolean test(long rank, int length, boolean first, boolean second);
+    }
+
+    private PrefixSimulation() {
+    }
+
+    /**
+     * Simulates one DFA on every string up to a length.
+     *
+     * @param start The start state of the DFA.
+     * @param delta The transition function of the DFA.
+     * @param alphabet The symbols the strings are made of.
+     * @param length The maximum length of the strings.
+     * @param sink Receives the results.
+     * @return True if every string was visited, false if the sink stopped the walk.
+     */
+    public static boolean walk(State start, Delta delta, String alphabet, int length, Sink sink) {
+        return walk(delta, delta.getStateId(start), null, Delta.NO_STATE, alphabet, length, sink);
+    }
+
+    /**
+     * Simulates two DFAs side by side on every string up to a length.
+     *
+     * @param firstStart The start state of the first DFA.
+     * @param first The transition function of the first DFA.
+     * @param secondStart The start state of the second DFA.
+     * @param second The transition function of the second DFA.
+     * @param alphabet The symbols the strings are made of.
+     * @param length The maximum length of the strings.
+     * @param sink Receives the results.
+     * @return True if every string was visited, false if the sink stopped the walk.
+     */
+    public static boolean walk(State firstStart, Delta first, State secondStart, Delta second, String alphabet,
+                               int length, Sink sink) {
+        return walk(first, first.getStateId(firstStart), second, second.getStateId(secondStart), alphabet, length, sink);
+    }
+
+    /**
+     * Simulates one or two DFAs from given states on every string up to a length.
+     *
+     * @param first The transition function of the first DFA.
+     * @param firstState The id of the state the first DFA starts in.
+     * @param second The transition function of the second DFA, or null to only simulate the first one.
+     * @param secondState The id of the state the second DFA starts in. Ignored if second is null.
+     * @param alphabet The symbols the strings are made of.
+     * @param length The maximum length of the strings.
+     * @param sink Receives the results.
+     * @return True if every string was visited, false if the sink stopped the walk.
+     */
+    public static boolean walk(Delta first, int firstState, Delta second, int secondState, String alphabet, int length,
+                               Sink sink) {
+        int base = alphabet.length();
+
+        // Rank of the first string of each length
+        long[] offsets = new long[length + 1];
+        long width = 1;
+        for (int n = 1; n <= length; n++) {
+            offsets[n] = offsets[n - 1] + width;
+            width *= base;
+        }
+
+        // One frame per level of the tree: the states reached, the value of the prefix and the next symbol to try
+        int[] p = new int[length + 1];
+        int[] q = new int[length + 1];
+        long[] value = new long[length + 1];
+        int[] nextSymbol = new int[length + 1];
+
+        p[0] = firstState;
+        q[0] = second == null ? Delta.NO_STATE : secondState;
+        if (!sink.test(0, 0, accepts(first, p[0]), accepts(second, q[0]))) {
+            return false;
+        }
+
+        int depth = 0;
+        while (depth >= 0) {
+            if (depth == length || nextSymbol[depth] == base) {
+                depth--;
+                continue;
+            }
+
+            int symbol = nextSymbol[depth]++;
+            char c = alphabet.charAt(symbol);
+            int child = depth + 1;
+
+            p[child] = first.GetNextState(p[depth], c);
+            q[child] = second == null ? Delta.NO_STATE : second.GetNextState(q[depth], c);
+            value[child] = value[depth] * base + symbol;
+            if (!sink.test(offsets[child] + value[child], child, accepts(first, p[child]), accepts(second, q[child]))) {
+                return false;
+            }
+
+            nextSymbol[child] = 0;
+            depth = child;
+        }
+        return true;
+    }
+
+    private static boolean accepts(Delta delta, int stateId) {
+        return delta != null && stateId != Delta.NO_STATE && delta.getState(stateId).isAccept();
+    }
+}
@@ -0,0 +1,450 @@
+package com.slayerz.dfagame;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Compiles the regexes used by the puzzles into DFAs over the game alphabet.
+ * <p>
+ * The supported syntax is union ({@code |}), concatenation, grouping ({@code (...)} and {@code (?:...)}), the
+ * quantifiers {@code *}, {@code +}, {@code ?}, {@code {n}}, {@code {n,}} and {@code {n,m}}, character classes
+ * ({@code [01]}, {@code [^0]}, {@code [0-9]}), the wildcard {@code .} and backslash escapes. The regex is parsed into a
+ * syntax tree, turned into an NFA (Thompson's construction) and then into a DFA by subset construction, so no backtracking
+ * is ever involved.
+ * <p>
+ * Character classes stay ranges throughout. Before the subset construction the alphabet is cut into classes of
+ * characters that no part of the regex tells apart, and each class is only ever tried once, so {@code [a-z]+} over all of
+ * Unicode takes no more work than {@code 1+} over the binary alphabet.
+ */
+public class RegexCompiler {
+
+    private final String regex;
+    private final Alphabet alphabet;
+    private int pos;
+
+    /**
+     * The NFA under construction. Every node has a list of epsilon targets and at most one labelled edge.
+     */
+    private final List<List<Integer>> epsilons;
+    private final List<Alphabet> edgeSymbols;
+    private final List<Integer> edgeTargets;
+
+    private RegexCompiler(String regex, Alphabet alphabet) {
+        this.regex = regex;
+        this.alphabet = alphabet;
+        epsilons = new ArrayList<List<Integer>>();
+        edgeSymbols = new ArrayList<Alphabet>();
+        edgeTargets = new ArrayList<Integer>();
+    }
+
+    /**
+     * Builds a DFA recognizing the same strings over an alphabet as a regex.
+     * The states are laid out row by row on the game grid, starting with the start state in its usual corner.
+     *
+     * @param regex The regex to compile.
+     * @param alphabet The symbols the DFA reads, taken literally. Symbols of the regex outside of it can never be matched.
+     * @return A DFA for the regex. Transitions into the dead state are left out.
+     * @throws IllegalArgumentException If the regex is malformed or uses syntax that isn't supported.
+     * @throws CancellationException If the calling thread is interrupted during the subset construction.
+     */
+    public static DFA compile(String regex, String alphabet) {
+        return compile(regex, Alphabet.ofChars(alphabet));
+    }
+
+    /**
+     * Builds a DFA recognizing the same strings over an alphabet as a regex.
+     * The states are laid out row by row on the game grid, starting with the start state in its usual corner.
+     *
+     * @param regex The regex to compile.
+     * @param alphabet The symbols the DFA reads. Symbols of the regex outside of it can never be matched.
+     * @return A DFA for the regex over the alphabet. Transitions into the dead state are left out.
+     * @throws IllegalArgumentException If the regex is malformed or uses syntax that isn't supported.
+     * @throws CancellationException If the calling thread is interrupted during the subset construction.
+     */
+    public static DFA compile(String regex, Alphabet alphabet) {
+        RegexCompiler compiler = new RegexCompiler(regex, alphabet);
+        Node tree = compiler.parseUnion();
+        if (compiler.pos != regex.length()) {
+            throw compiler.error("Unexpected '" + regex.charAt(compiler.pos) + "'");
+        }
+
+        int[] nfa = compiler.build(tree);
+        return compiler.determinize(nfa[0], nfa[1]);
+    }
+
+    // ---------------------------------------------------------------- parsing
+
+    private Node parseUnion() {
+        List<Node> options = new ArrayList<Node>();
+        options.add(parseConcat());
+        while (peek('|')) {
+            pos++;
+            options.add(parseConcat());
+        }
+        return options.size() == 1 ? options.get(0) : new Node(Node.UNION, options);
+    }
+
+    private Node parseConcat() {
+        List<Node> parts = new ArrayList<Node>();
+        while (pos < regex.length() && !peek('|') && !peek(')')) {
+            parts.add(parseRepeat());
+        }
+        return parts.size() == 1 ? parts.get(0) : new Node(Node.CONCAT, parts);
+    }
+
+    private Node parseRepeat() {
+        Node atom = parseAtom();
+        while (pos < regex.length()) {
+            char c = regex.charAt(pos);
+            if (c == '*') {
+                atom = Node.repeat(atom, 0, -1);
+            } else if (c == '+') {
+                atom = Node.repeat(atom, 1, -1);
+            } else if (c == '?') {
+                atom = Node.repeat(atom, 0, 1);
+            } else if (c == '{') {
+                atom = parseBounds(atom);
+                continue;
+            } else {
+                break;
+            }
+            pos++;
+        }
+        return atom;
+    }
+
+    private Node parseBounds(Node atom) {
+        int close = regex.indexOf('}', pos);
+        if (close < 0) {
+            throw error("Unclosed '{'");
+        }
+
+        String[] bounds = regex.substring(pos + 1, close).split(",", -1);
+        try {
+            int min = Integer.parseInt(bounds[0].trim());
+            int max = min;
+            if (bounds.length == 2) {
+                max = bounds[1].trim().isEmpty() ? -1 : Integer.parseInt(bounds[1].trim());
+            } else if (bounds.length > 2) {
+                throw error("Malformed repetition");
+            }
+            if (min < 0 || (max != -1 && max < min)) {
+                throw error("Malformed repetition");
+            }
+            pos = close + 1;
+            return Node.repeat(atom, min, max);
+        } catch (NumberFormatException e) {
+            throw error("Malformed repetition");
+        }
+    }
+
+    private Node parseAtom() {
+        char c = regex.charAt(pos++);
+        switch (c) {
+            case '(':
+                if (regex.startsWith("?:", pos)) {
+                    pos += 2;
+                }
+                Node inner = parseUnion();
+                if (!peek(')')) {
+                    throw error("Unclosed '('");
+                }
+                pos++;
+                return inner;
+            case '[':
+                return parseClass();
+            case '.':
+                return Node.symbols(alphabet);
+            case '\\':
+                if (pos == regex.length()) {
+                    throw error("Dangling '\\'");
+                }
+                return Node.symbols(Alphabet.ofChars(String.valueOf(regex.charAt(pos++))));
+            case '*':
+            case '+':
+            case '?':
+            case '{':
+                throw error("Nothing to repeat");
+            default:
+                return Node.symbols(Alphabet.ofChars(String.valueOf(c)));
+        }
+    }
+
+    private Node parseClass() {
+        boolean negated = peek('^');
+        if (negated) {
+            pos++;
+        }
+
+        Alphabet members = Alphabet.EMPTY;
+        boolean first = true;
+        while (pos < regex.length() && (first || regex.charAt(pos) != ']')) {
+            char low = regex.charAt(pos++);
+            if (low == '\\' && pos < regex.length()) {
+                low = regex.charAt(pos++);
+            }
+            char high = low;
+            if (pos + 1 < regex.length() && regex.charAt(pos) == '-' && regex.charAt(pos + 1) != ']') {
+                high = regex.charAt(pos + 1);
+                pos += 2;
+                if (high < low) {
+                    throw error("Bad range");
+                }
+            }
+            members = members.union(Alphabet.range(low, high));
+            first = false;
+        }
+        if (pos == regex.length()) {
+            throw error("Unclosed '['");
+        }
+        pos++;
+
+        return Node.symbols(negated ? alphabet.minus(members) : members);
+    }
+
+    private boolean peek(char c) {
+        return pos < regex.length() && regex.charAt(pos) == c;
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at index " + pos + " of regex " + regex);
+    }
+
+    // ---------------------------------------------------------------- NFA construction
+
+    private int newNode() {
+        epsilons.add(new ArrayList<Integer>());
+        edgeSymbols.add(null);
+        edgeTargets.add(-1);
+        return epsilons.size() - 1;
+    }
+
+    /**
+     * Builds a fragment of the NFA for a syntax tree.
+     *
+     * @return The entry and exit node of the fragment.
+     */
+    private int[] build(Node n) {
+        int in = newNode();
+        int out;
+
+        switch (n.kind) {
+            case Node.SYMBOLS:
+                out = newNode();
+                edgeSymbols.set(in, n.symbols);
+                edgeTargets.set(in, out);
+                break;
+            case Node.CONCAT:
+                out = in;
+                for (Node part : n.children) {
+                    int[] f = build(part);
+                    epsilons.get(out).add(f[0]);
+                    out = f[1];
+                }
+                break;
+            case Node.UNION:
+                out = newNode();
+                for (Node option : n.children) {
+                    int[] f = build(option);
+                    epsilons.get(in).add(f[0]);
+                    epsilons.get(f[1]).add(out);
+                }
+                break;
+            default: // REPEAT
+                Node body = n.children.get(0);
+                out = in;
+                for (int i = 0; i < n.min; i++) {
+                    int[] f = build(body);
+                    epsilons.get(out).add(f[0]);
+                    out = f[1];
+                }
+                if (n.max == -1) {
+                    int[] f = build(body);
+                    epsilons.get(out).add(f[0]);
+                    epsilons.get(f[1]).add(out);
+                } else if (n.max > n.min) {
+                    int end = newNode();
+                    for (int i = n.min; i < n.max; i++) {
+                        int[] f = build(body);
+                        epsilons.get(out).add(f[0]);
+                        epsilons.get(out).add(end);
+                        out = f[1];
+                    }
+                    epsilons.get(out).add(end);
+                    out = end;
+                }
+                break;
+        }
+        return new int[]{in, out};
+    }
+
+    // ---------------------------------------------------------------- subset construction
+
+    private DFA determinize(int nfaStart, int nfaAccept) {
+        Map<BitSet, Integer> ids = new HashMap<BitSet, Integer>();
+        List<BitSet> sets = new ArrayList<BitSet>();
+
+        BitSet first = closure(single(nfaStart));
+        ids.put(first, 0);
+        sets.add(first);
+
+        // Edges of the DFA grouped by (from, to), in discovery order
+        Map<Long, Alphabet> edges = new LinkedHashMap<Long, Alphabet>();
+        List<Alphabet> classes = symbolClasses();
+
+        for (int i = 0; i < sets.size(); i++) {
+            // The subset construction can blow up exponentially, so give whoever is waiting a way out
+            if (Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("Compilation of " + regex + " interrupted");
+            }
+            BitSet current = sets.get(i);
+            for (Alphabet symbolClass : classes) {
+                char c = symbolClass.low(0);
+                BitSet next = new BitSet();
+                for (int node = current.nextSetBit(0); node >= 0; node = current.nextSetBit(node + 1)) {
+                    Alphabet symbols = edgeSymbols.get(node);
+                    if (symbols != null && symbols.contains(c)) {
+                        next.set(edgeTargets.get(node));
+                    }
+                }
+                if (next.isEmpty()) {
+                    continue;
+                }
+
+                next = closure(next);
+                Integer target = ids.get(next);
+                if (target == null) {
+                    target = sets.size();
+                    ids.put(next, target);
+                    sets.add(next);
+                }
+
+                long key = ((long) i << 32) | target;
+                Alphabet label = edges.get(key);
+                edges.put(key, label == null ? symbolClass : label.union(symbolClass));
+            }
+        }
+
+        DFA dfa = new DFA(0, alphabet);
+        List<State> states = new ArrayList<State>();
+        for (int i = 0; i < sets.size(); i++) {
+            boolean accept = sets.get(i).get(nfaAccept);
+            if (i == 0) {
+                if (accept) {
+                    dfa.toggleAccept(dfa.getStart());
+                }
+                states.add(dfa.getStart());
+            } else {
+                states.add(dfa.addLaidOutState(accept));
+            }
+        }
+        for (Map.Entry<Long, Alphabet> edge : edges.entrySet()) {
+            int from = (int) (edge.getKey() >>> 32);
+            int to = (int) (long) edge.getKey();
+            dfa.addTransition(states.get(from), states.get(to), edge.getValue().toString());
+        }
+        return dfa;
+    }
+
+    /**
+     * Cuts the alphabet into classes of characters that every edge of the NFA either reads all of or none of. Every
+     * bound of every set read by an edge starts a new class.
+     */
+    private List<Alphabet> symbolClasses() {
+        TreeSet<Integer> starts = new TreeSet<Integer>();
+        List<Alphabet> sets = new ArrayList<Alphabet>(edgeSymbols);
+        sets.add(alphabet);
+        for (Alphabet set : sets) {
+            for (int i = 0; set != null && i < set.rangeCount(); i++) {
+                starts.add((int) set.low(i));
+                starts.add(set.high(i) + 1);
+            }
+        }
+
+        List<Alphabet> classes = new ArrayList<Alphabet>();
+        Integer low = starts.isEmpty() ? null : starts.first();
+        while (low != null) {
+            Integer next = starts.higher(low);
+            if (low <= Character.MAX_VALUE && alphabet.contains((char) (int) low)) {
+                int high = next == null ? Character.MAX_VALUE : next - 1;
+                classes.add(Alphabet.range((char) (int) low, (char) high));
+            }
+            low = next;
+        }
+        return classes;
+    }
+
+    private BitSet single(int node) {
+        BitSet set = new BitSet();
+        set.set(node);
+        return set;
+    }
+
+    private BitSet closure(BitSet nodes) {
+        BitSet result = (BitSet) nodes.clone();
+        int[] stack = new int[epsilons.size()];
+        int size = 0;
+        for (int node = nodes.nextSetBit(0); node >= 0; node = nodes.nextSetBit(node + 1)) {
+            stack[size++] = node;
+        }
+        while (size > 0) {
+            for (int next : epsilons.get(stack[--size])) {
+                if (!result.get(next)) {
+                    result.set(next);
+                    stack[size++] = next;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A node of the regex syntax tree.
+     */
+    private static class Node {
+        static final int SYMBOLS = 0;
+        static final int CONCAT = 1;
+        static final int UNION = 2;
+        static final int REPEAT = 3;
+
+        final int kind;
+        final List<Node> children;
+
+        /**
+         * For SYMBOLS nodes, the set of characters matched.
+         */
+        Alphabet symbols;
+
+        /**
+         * For REPEAT nodes, the bounds. A max of -1 means unbounded.
+         */
+        int min;
+        int max;
+
+        Node(int kind, List<Node> children) {
+            this.kind = kind;
+            this.children = children;
+        }
+
+        static Node symbols(Alphabet symbols) {
+            Node n = new Node(SYMBOLS, new ArrayList<Node>());
+            n.symbols = symbols;
+            return n;
+        }
+
+        static Node repeat(Node body, int min, int max) {
+            List<Node> children = new ArrayList<Node>();
+            children.add(body);
+            Node n = new Node(REPEAT, children);
+            n.min = min;
+            n.max = max;
+            return n;
+        }
+    }
+}
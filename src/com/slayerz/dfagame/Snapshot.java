@@ -0,0 +1,341 @@
+package com.slayerz.dfagame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable picture of a DFA as of one version, which any thread can read while the DFA keeps being edited.
+ * <p>
+ * Get the latest one from {@link DFA#getSnapshot()}: every edit of the DFA publishes a new one, so a snapshot never changes
+ * and is never seen half built. Snapshots share structure. Every state has a slot, the slots are kept in chunks of 32, and
+ * an edit copies the list of chunks and the chunks of the states it touched, not the rest. That makes a snapshot per edit
+ * cheap enough to keep a history of them for undo.
+ * <p>
+ * States are the State objects of the DFA, but they only stand for their identity here: whether a state accepts, where it
+ * is and where it leads are read from the snapshot, since the DFA may have changed them since.
+ */
+public final class Snapshot {
+
+    private static final int CHUNK_BITS = 5;
+    private static final int CHUNK = 1 << CHUNK_BITS;
+
+    private final Alphabet alphabet;
+    private final int boxDim;
+    private final boolean nondeterministic;
+    private final int version;
+
+    /**
+     * The states by slot, CHUNK slots to a chunk. Slot 0 holds the start state. An empty slot held a state that was removed.
+     */
+    private final Node[][] chunks;
+    private final int slotCount;
+    private final int stateCount;
+
+    /**
+     * The slot of every state, worked out the first time a state is looked up.
+     */
+    private volatile Map<State, Integer> slots;
+
+    /**
+     * @param alphabet The symbols the DFA reads.
+     * @param boxDim The width of the squares of the grid the DFA is laid out on.
+     * @param nondeterministic Whether the DFA is an NFA, see {@link DFA#isNondeterministic()}.
+     * @return A snapshot with no states, to build the first real one from.
+     */
+    static Snapshot empty(Alphabet alphabet, int boxDim, boolean nondeterministic) {
+        return new Snapshot(alphabet, boxDim, nondeterministic, 0, new Node[0][], 0, 0);
+    }
+
+    private Snapshot(Alphabet alphabet, int boxDim, boolean nondeterministic, int version, Node[][] chunks, int slotCount,
+                     int stateCount) {
+        this.alphabet = alphabet;
+        this.boxDim = boxDim;
+        this.nondeterministic = nondeterministic;
+        this.version = version;
+        this.chunks = chunks;
+        this.slotCount = slotCount;
+        this.stateCount = stateCount;
+    }
+
+    /**
+     * Makes the snapshot of the next version, sharing every chunk the change doesn't touch.
+     *
+     * @param version The version of the DFA the new snapshot is of.
+     * @param at The slots that changed. Slots past the last one are added.
+     * @param nodes What each of those slots holds now, or null if its state was removed.
+     * @return The new snapshot.
+     */
+    Snapshot update(int version, int[] at, Node[] nodes) {
+        int slotCount = this.slotCount;
+        for (int slot : at) {
+            slotCount = Math.max(slotCount, slot + 1);
+        }
+
+        Node[][] spine = Arrays.copyOf(chunks, (slotCount + CHUNK - 1) >> CHUNK_BITS);
+        int stateCount = this.stateCount;
+        for (int i = 0; i < at.length; i++) {
+            // A chunk is copied the first time the change touches it, and is still the old one until then
+            int chunk = at[i] >> CHUNK_BITS;
+            if (spine[chunk] == null) {
+                spine[chunk] = new Node[CHUNK];
+            } else if (chunk < chunks.length && spine[chunk] == chunks[chunk]) {
+                spine[chunk] = spine[chunk].clone();
+            }
+            Node before = spine[chunk][at[i] & (CHUNK - 1)];
+            stateCount += (nodes[i] == null ? 0 : 1) - (before == null ? 0 : 1);
+            spine[chunk][at[i] & (CHUNK - 1)] = nodes[i];
+        }
+        return new Snapshot(alphabet, boxDim, nondeterministic, version, spine, slotCount, stateCount);
+    }
+
+    /**
+     * @return The number of slots, including the empty ones. A new state takes the next one.
+     */
+    int slotCount() {
+        return slotCount;
+    }
+
+    /**
+     * @return The version of the DFA this is a snapshot of, as given by {@link DFA#getVersion()}.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * @return The symbols the DFA reads.
+     */
+    public Alphabet getAlphabet() {
+        return alphabet;
+    }
+
+    /**
+     * @return True if the DFA is an NFA.
+     */
+    public boolean isNondeterministic() {
+        return nondeterministic;
+    }
+
+    /**
+     * @return The start state.
+     */
+    public State getStart() {
+        return node(0).state;
+    }
+
+    /**
+     * @return The number of states.
+     */
+    public int stateCount() {
+        return stateCount;
+    }
+
+    /**
+     * @return Every state, the start state first and the rest in the order they were added.
+     */
+    public List<State> getStates() {
+        List<State> states = new ArrayList<State>(stateCount);
+        for (int slot = 0; slot < slotCount; slot++) {
+            Node n = node(slot);
+            if (n != null) {
+                states.add(n.state);
+            }
+        }
+        return states;
+    }
+
+    /**
+     * @param q Any state.
+     * @return True if q is a state of the DFA as of this snapshot.
+     */
+    public boolean contains(State q) {
+        return slots().containsKey(q);
+    }
+
+    /**
+     * @param q A state of the snapshot.
+     * @return True if q was an accept state as of this snapshot, whatever it is now.
+     * @throws IllegalArgumentException If q isn't a state of the snapshot.
+     */
+    public boolean isAccept(State q) {
+        return nodeOf(q).accept;
+    }
+
+    /**
+     * @param q A state of the snapshot.
+     * @return Where q is on the game grid.
+     * @throws IllegalArgumentException If q isn't a state of the snapshot.
+     */
+    public DFA.Coord locateState(State q) {
+        return nodeOf(q).location;
+    }
+
+    /**
+     * @param q A state of the snapshot.
+     * @return The transitions leaving q as of this snapshot. They're copies, so changing them changes nothing else.
+     * @throws IllegalArgumentException If q isn't a state of the snapshot.
+     */
+    public List<Transition> getTransitionsFrom(State q) {
+        Node n = nodeOf(q);
+        List<Transition> transitions = new ArrayList<Transition>(n.ends.length);
+        for (int i = 0; i < n.ends.length; i++) {
+            transitions.add(new Transition(q, n.ends[i], n.chars[i]));
+        }
+        return transitions;
+    }
+
+    /**
+     * @param q A state of the snapshot.
+     * @param symbol The symbol read.
+     * @return The state q leads to on the symbol, or null if it has no transition for it. If it has several, any one of
+     * them.
+     * @throws IllegalArgumentException If q isn't a state of the snapshot.
+     */
+    public State getNextState(State q, char symbol) {
+        Node n = nodeOf(q);
+        Alphabet[] symbols = n.symbols();
+        for (int i = 0; i < n.ends.length; i++) {
+            if (symbols[i].contains(symbol)) {
+                return n.ends[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Runs a string through the DFA as of this snapshot. Meant for the odd check from another thread; for anything heavier
+     * make a DFA with {@link #toDFA()} and use it. An NFA is always copied that way first.
+     *
+     * @param s The string.
+     * @return True if the DFA accepted the string as of this snapshot.
+     */
+    public boolean acceptsString(String s) {
+        if (nondeterministic) {
+            return toDFA().acceptsString(s);
+        }
+        State current = getStart();
+        for (int i = 0; i < s.length() && current != null; i++) {
+            current = getNextState(current, s.charAt(i));
+        }
+        return current != null && isAccept(current);
+    }
+
+    /**
+     * Builds a DFA of its own from the snapshot, with the same layout but new states and transitions and no listeners.
+     *
+     * @return A new DFA.
+     */
+    public DFA toDFA() {
+        DFA copy = new DFA(boxDim, alphabet, nondeterministic);
+        Map<State, State> copies = new HashMap<State, State>();
+        for (int slot = 0; slot < slotCount; slot++) {
+            Node n = node(slot);
+            if (n == null) {
+                continue;
+            }
+            if (slot == 0) {
+                if (n.accept) {
+                    copy.toggleAccept(copy.getStart());
+                }
+                copies.put(n.state, copy.getStart());
+            } else {
+                State c = new State(n.accept, copy.BOX_DIM, copy.STATE_RAD);
+                copy.addState(n.location.getR(), n.location.getC(), c);
+                copies.put(n.state, c);
+            }
+        }
+        for (int slot = 0; slot < slotCount; slot++) {
+            Node n = node(slot);
+            for (int i = 0; n != null && i < n.ends.length; i++) {
+                copy.addTransition(copies.get(n.state), copies.get(n.ends[i]), n.chars[i]);
+            }
+        }
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return "Snapshot of version " + version + " (" + stateCount + " states)";
+    }
+
+    private Node node(int slot) {
+        Node[] chunk = chunks[slot >> CHUNK_BITS];
+        return chunk == null ? null : chunk[slot & (CHUNK - 1)];
+    }
+
+    private Node nodeOf(State q) {
+        Integer slot = slots().get(q);
+        if (slot == null) {
+            throw new IllegalArgumentException("Not a state of " + this);
+        }
+        return node(slot);
+    }
+
+    private Map<State, Integer> slots() {
+        // Racing threads build equal maps, so it doesn't matter whose is kept
+        Map<State, Integer> slots = this.slots;
+        if (slots == null) {
+            slots = new IdentityHashMap<State, Integer>(stateCount);
+            for (int slot = 0; slot < slotCount; slot++) {
+                Node n = node(slot);
+                if (n != null) {
+                    slots.put(n.state, slot);
+                }
+            }
+            this.slots = slots;
+        }
+        return slots;
+    }
+
+    /**
+     * A state as of one version: whether it accepts, where it is and the transitions leaving it.
+     */
+    static final class Node {
+        private final State state;
+        private final DFA.Coord location;
+        private final boolean accept;
+        private final State[] ends;
+        private final String[] chars;
+
+        /**
+         * The characters of each transition, parsed the first time a string is run.
+         */
+        private volatile Alphabet[] symbols;
+
+        /**
+         * @param state The state.
+         * @param location Where the state is on the game grid.
+         * @param outgoing The transitions leaving the state. Only their ends and characters are kept.
+         */
+        Node(State state, DFA.Coord location, Collection<Transition> outgoing) {
+            this.state = state;
+            this.location = location;
+            accept = state.isAccept();
+            ends = new State[outgoing.size()];
+            chars = new String[outgoing.size()];
+            int i = 0;
+            for (Transition t : outgoing) {
+                ends[i] = t.getEnd();
+                chars[i] = t.getChars();
+                i++;
+            }
+        }
+
+        private Alphabet[] symbols() {
+            Alphabet[] symbols = this.symbols;
+            if (symbols == null) {
+                symbols = new Alphabet[chars.length];
+                for (int i = 0; i < chars.length; i++) {
+                    symbols[i] = Alphabet.parse(chars[i]);
+                }
+                this.symbols = symbols;
+            }
+            return symbols;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.slayerz.dfagame;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds the items whose bounding boxes meet an area, without looking at the rest.
+ * <p>
+ * The plane is cut into square cells and every item is listed in each cell its box covers, so a query only visits the cells
+ * of its area. Items whose box covers more than a few cells, such as arcs between states far apart, would be listed over
+ * and over; they're kept in a list of their own instead and checked on every query, which is cheap as long as they're a
+ * small share of the items.
+ *
+ * @param <T> The items. They're told apart by equals.
+ */
+final class SpatialIndex<T> {
+
+    /**
+     * Items covering more cells than this go to the list of large items.
+     */
+    private static final int MAX_CELLS = 16;
+
+    private static final int MIX = 0x9E3779B9;
+
+    private final int cellSize;
+
+    /**
+     * The items listed in each cell, keyed by {@link #key(int, int)}. Cells with no items have no entry.
+     */
+    private final Map<Long, List<Entry<T>>> cells = new HashMap<Long, List<Entry<T>>>();
+
+    private final Set<Entry<T>> large = new LinkedHashSet<Entry<T>>();
+
+    private final Map<T, Entry<T>> entries = new HashMap<T, Entry<T>>();
+
+    /**
+     * @param cellSize The width of the cells. Works best around the size of a typical item.
+     */
+    SpatialIndex(int cellSize) {
+        this.cellSize = Math.max(1, cellSize);
+    }
+
+    /**
+     * Adds an item, or moves it if it's already there.
+     *
+     * @param item The item.
+     * @param box Its bounding box.
+     */
+    void put(T item, Rectangle box) {
+        remove(item);
+        Entry<T> entry = new Entry<T>(item, new Rectangle(box));
+        entries.put(item, entry);
+
+        int x0 = cell(box.x), y0 = cell(box.y), x1 = cell(box.x + box.width), y1 = cell(box.y + box.height);
+        if ((long) (x1 - x0 + 1) * (y1 - y0 + 1) > MAX_CELLS) {
+            large.add(entry);
+            return;
+        }
+        for (int cx = x0; cx <= x1; cx++) {
+            for (int cy = y0; cy <= y1; cy++) {
+                List<Entry<T>> items = cells.get(key(cx, cy));
+                if (items == null) {
+                    items = new ArrayList<Entry<T>>(4);
+                    cells.put(key(cx, cy), items);
+                }
+                items.add(entry);
+            }
+        }
+    }
+
+    /**
+     * @param item An item. Nothing happens if it isn't in the index.
+     */
+    void remove(T item) {
+        Entry<T> entry = entries.remove(item);
+        if (entry == null || large.remove(entry)) {
+            return;
+        }
+        Rectangle box = entry.box;
+        for (int cx = cell(box.x); cx <= cell(box.x + box.width); cx++) {
+            for (int cy = cell(box.y); cy <= cell(box.y + box.height); cy++) {
+                List<Entry<T>> items = cells.get(key(cx, cy));
+                items.remove(entry);
+                if (items.isEmpty()) {
+                    cells.remove(key(cx, cy));
+                }
+            }
+        }
+    }
+
+    /**
+     * @param area An area.
+     * @return Every item whose bounding box meets the area, each once.
+     */
+    List<T> query(Rectangle area) {
+        List<T> found = new ArrayList<T>();
+        int x0 = cell(area.x), y0 = cell(area.y), x1 = cell(area.x + area.width), y1 = cell(area.y + area.height);
+
+        // An item covering several cells of the area is only reported from the first of them, its top left one
+        if ((long) (x1 - x0 + 1) * (y1 - y0 + 1) <= cells.size()) {
+            for (int cx = x0; cx <= x1; cx++) {
+                for (int cy = y0; cy <= y1; cy++) {
+                    List<Entry<T>> items = cells.get(key(cx, cy));
+                    if (items != null) {
+                        collect(items, cx, cy, x0, y0, area, found);
+                    }
+                }
+            }
+        } else {
+            // The area covers more cells than there are items in, so going through those is quicker
+            for (Map.Entry<Long, List<Entry<T>>> e : cells.entrySet()) {
+                int cx = (int) (e.getKey() >> 32), cy = (int) (long) e.getKey() ^ cx * MIX;
+                if (cx >= x0 && cx <= x1 && cy >= y0 && cy <= y1) {
+                    collect(e.getValue(), cx, cy, x0, y0, area, found);
+                }
+            }
+        }
+
+        for (Entry<T> entry : large) {
+            if (entry.box.intersects(area)) {
+                found.add(entry.item);
+            }
+        }
+        return found;
+    }
+
+    private void collect(List<Entry<T>> items, int cx, int cy, int x0, int y0, Rectangle area, List<T> found) {
+        for (Entry<T> entry : items) {
+            Rectangle box = entry.box;
+            if (cx == Math.max(cell(box.x), x0) && cy == Math.max(cell(box.y), y0) && box.intersects(area)) {
+                found.add(entry.item);
+            }
+        }
+    }
+
+    /**
+     * @return The number of items.
+     */
+    int size() {
+        return entries.size();
+    }
+
+    private int cell(int coordinate) {
+        return Math.floorDiv(coordinate, cellSize);
+    }
+
+    /**
+     * Packs a cell into a long. The column is mixed into the row, since Long.hashCode folds the halves together and
+     * would give every cell on a diagonal the same hash otherwise.
+     */
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | ((cy ^ cx * MIX) & 0xffffffffL);
+    }
+
+    /**
+     * An item along with its box, so queries don't have to look the box up.
+     */
+    private static final class Entry<T> {
+        private final T item;
+        private final Rectangle box;
+
+        Entry(T item, Rectangle box) {
+            this.item = item;
+            this.box = box;
+        }
+    }
+}
@@ -24,8 +24,20 @@ public class State {
     }
 
     public void draw(int r, int c, Graphics2D g2d) {
+        draw(r, c, g2d, true);
+    }
+
+    /**
+     * @param round False to draw a square, which is much quicker and looks the same when the state is only a few pixels
+     * wide.
+     */
+    public void draw(int r, int c, Graphics2D g2d, boolean round) {
         g2d.setPaint(isAccept ? Color.RED : Color.BLACK);
 
-        g2d.fillOval((int) (c * BOX_DIM) - RAD, (int) (r * BOX_DIM) - RAD, 2 * RAD, 2 * RAD);
+        if (round) {
+            g2d.fillOval((int) (c * BOX_DIM) - RAD, (int) (r * BOX_DIM) - RAD, 2 * RAD, 2 * RAD);
+        } else {
+            g2d.fillRect(c * BOX_DIM - RAD, r * BOX_DIM - RAD, 2 * RAD, 2 * RAD);
+        }
     }
 }
\ No newline at end of file
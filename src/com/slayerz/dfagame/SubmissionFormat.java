@@ -0,0 +1,147 @@
+package com.slayerz.dfagame;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads and writes DFAs as plain text, one declaration per line:
+ * <pre>
+ * # A comment
+ * alphabet a-z    The symbols the DFA reads, before any state. The binary alphabet if left out.
+ * nfa             Makes it an NFA, before any state. Its transitions may also read {@link DFA#EPSILON}.
+ * state q0        A rejecting state. The first state declared is the start state.
+ * accept q1       An accepting state.
+ * q0 q1 01        A transition from q0 to q1 on the characters 0 and 1. Ranges such as a-z work too.
+ * </pre>
+ * Names are any run of non-blank characters other than the keywords. States are laid out on the grid in the order they are
+ * declared, so a DFA read from a file can be shown on the game board as is.
+ */
+public class SubmissionFormat {
+
+    private SubmissionFormat() {
+    }
+
+    /**
+     * Reads a DFA.
+     *
+     * @param in The text to read. It isn't closed.
+     * @return The DFA described.
+     * @throws IOException If the text can't be read.
+     * @throws IllegalArgumentException If the text isn't a well formed DFA.
+     */
+    public static DFA read(Reader in) throws IOException {
+        return read(in, Alphabet.BINARY);
+    }
+
+    /**
+     * Reads a DFA.
+     *
+     * @param in The text to read. It isn't closed.
+     * @param alphabet The alphabet of the DFA if the text doesn't declare one.
+     * @return The DFA described.
+     * @throws IOException If the text can't be read.
+     * @throws IllegalArgumentException If the text isn't a well formed DFA.
+     */
+    public static DFA read(Reader in, Alphabet alphabet) throws IOException {
+        BufferedReader lines = new BufferedReader(in);
+        DFA dfa = null;
+        boolean nondeterministic = false;
+        Map<String, State> byName = new HashMap<String, State>();
+
+        String line;
+        int number = 0;
+        while ((line = lines.readLine()) != null) {
+            number++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            String[] words = line.split("\\s+");
+            if (words.length == 2 && words[0].equals("alphabet")) {
+                if (dfa != null) {
+                    throw error(number, "The alphabet has to come before the states");
+                }
+                alphabet = Alphabet.parse(words[1]);
+            } else if (words.length == 1 && words[0].equals("nfa")) {
+                if (dfa != null) {
+                    throw error(number, "nfa has to come before the states");
+                }
+                nondeterministic = true;
+            } else if (words.length == 2 && (words[0].equals("state") || words[0].equals("accept"))) {
+                if (dfa == null) {
+                    dfa = new DFA(0, alphabet, nondeterministic);
+                }
+                if (byName.containsKey(words[1])) {
+                    throw error(number, "State " + words[1] + " declared twice");
+                }
+                boolean accept = words[0].equals("accept");
+                State q;
+                if (byName.isEmpty()) {
+                    q = dfa.getStart();
+                    if (accept) {
+                        dfa.toggleAccept(q);
+                    }
+                } else {
+                    q = dfa.addLaidOutState(accept);
+                }
+                byName.put(words[1], q);
+            } else if (words.length == 3) {
+                State from = byName.get(words[0]);
+                State to = byName.get(words[1]);
+                if (from == null || to == null) {
+                    throw error(number, "Undeclared state " + (from == null ? words[0] : words[1]));
+                }
+                dfa.addTransition(from, to, words[2]);
+            } else {
+                throw error(number, "Expected a state or a transition");
+            }
+        }
+
+        if (dfa == null) {
+            throw new IllegalArgumentException("No states declared");
+        }
+        return dfa;
+    }
+
+    /**
+     * Writes a DFA in the format read by {@link #read(Reader)}. States are named q0, q1, ... with the start state first.
+     *
+     * @param dfa The DFA to write.
+     * @param out Where to write it. It's flushed but not closed.
+     */
+    public static void write(DFA dfa, Writer out) {
+        PrintWriter printer = new PrintWriter(out);
+        Delta delta = dfa.getTransitionFunction();
+        if (!dfa.getAlphabet().equals(Alphabet.BINARY)) {
+            printer.println("alphabet " + dfa.getAlphabet());
+        }
+        if (dfa.isNondeterministic()) {
+            printer.println("nfa");
+        }
+
+        // Name states by id, which puts the start state first
+        for (int id = 0; id < delta.stateCount(); id++) {
+            State q = delta.getState(id);
+            if (q != null && dfa.locateState(q) != null) {
+                printer.println((q.isAccept() ? "accept q" : "state q") + id);
+            }
+        }
+        for (State q : dfa.getStates()) {
+            for (Transition t : dfa.getTransitionsFrom(q)) {
+                printer.println("q" + delta.getStateId(t.getStart()) + " q" + delta.getStateId(t.getEnd()) + " "
+                        + t.getChars());
+            }
+        }
+        printer.flush();
+    }
+
+    private static IllegalArgumentException error(int line, String message) {
+        return new IllegalArgumentException(message + " on line " + line);
+    }
+}
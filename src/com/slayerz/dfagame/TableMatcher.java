@@ -0,0 +1,109 @@
+package com.slayerz.dfagame;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A matcher that interprets a flat transition table. Used for DFAs too large to be generated as code the JIT would still
+ * compile, where a loop over a table beats a huge method left to the bytecode interpreter.
+ */
+final class TableMatcher extends Matcher {
+
+    /**
+     * Characters below this are looked up in a flat table, the rest by binary search over the classes.
+     */
+    private static final int LATIN = 256;
+
+    /**
+     * The first character of every symbol class, in ascending order. The first class starts at character 0.
+     */
+    private final char[] classStarts;
+
+    private final int[] latinColumns;
+
+    /**
+     * The next state for (state, column) at state * width + column, or {@link #DEAD}. State 0 is the start state.
+     */
+    private final int[] table;
+
+    private final int width;
+
+    /**
+     * @param classStarts The first character of every symbol class.
+     * @param next The next state for every state and class, or -1 for the dead state. State 0 is the start state.
+     * @param accept Whether each state is an accept state.
+     */
+    TableMatcher(char[] classStarts, int[][] next, boolean[] accept) {
+        super(accept);
+        this.classStarts = classStarts;
+        width = classStarts.length;
+
+        table = new int[next.length * width];
+        for (int q = 0; q < next.length; q++) {
+            System.arraycopy(next[q], 0, table, q * width, width);
+        }
+
+        latinColumns = new int[LATIN];
+        int column = 0;
+        for (int c = 0; c < LATIN; c++) {
+            while (column + 1 < width && classStarts[column + 1] <= c) {
+                column++;
+            }
+            latinColumns[c] = column;
+        }
+    }
+
+    @Override
+    public int run(char[] s, int from, int to, int state) {
+        for (int i = from; i < to && state != DEAD; i++) {
+            state = table[state * width + columnOf(s[i])];
+        }
+        return state;
+    }
+
+    @Override
+    public int run(byte[] s, int from, int to, int state) {
+        for (int i = from; i < to && state != DEAD; i++) {
+            state = table[state * width + latinColumns[s[i] & 0xff]];
+        }
+        return state;
+    }
+
+    @Override
+    public int run(CharSequence s, int from, int to, int state) {
+        for (int i = from; i < to && state != DEAD; i++) {
+            state = table[state * width + columnOf(s.charAt(i))];
+        }
+        return state;
+    }
+
+    @Override
+    public int run(ByteBuffer s, int from, int to, int state) {
+        for (int i = from; i < to && state != DEAD; i++) {
+            state = table[state * width + latinColumns[s.get(i) & 0xff]];
+        }
+        return state;
+    }
+
+    @Override
+    public boolean isGenerated() {
+        return false;
+    }
+
+    private int columnOf(char c) {
+        if (c < LATIN) {
+            return latinColumns[c];
+        }
+        // The last class starting at or before c
+        int lo = 0;
+        int hi = width - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (classStarts[mid] <= c) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+}
@@ -35,7 +35,8 @@ public class Transition {
     }
 
     public boolean accepts(String l) {
-        return chars.contains(l);
+        // Characters may be given as ranges, so "b" is read by "a-z"
+        return !l.isEmpty() && Alphabet.parse(chars).containsAll(Alphabet.ofChars(l));
     }
 
     @Override
@@ -0,0 +1,202 @@
+package com.slayerz.dfagame;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+
+/**
+ * Remembers the outcome of checking DFAs against regexes, so checking the same language again is a lookup.
+ * <p>
+ * Outcomes are keyed by the {@link Fingerprint} of the DFA and the regex, so a DFA that was only moved around, or a
+ * submission built differently but accepting the same strings, hits the same entry. Compiled regexes are kept as well. Both
+ * are evicted least recently used first once the cache is full.
+ * <p>
+ * NFAs are checked against the cached regexes but their outcomes aren't kept, since fingerprinting an NFA would take its
+ * whole DFA, which checking it lazily avoids building.
+ * <p>
+ * The cache is safe to share between threads. Nothing is held locked while checking, so two threads may check the same
+ * language at once on a miss; they come to the same outcome.
+ */
+public class VerificationCache {
+
+    private final Map<Key, Outcome> outcomes;
+    private final Map<Key, DFA> targets;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param capacity The most outcomes to keep, and the most compiled regexes.
+     */
+    public VerificationCache(final int capacity) {
+        // Access ordered, so the eldest entry is the least recently used one
+        outcomes = new LinkedHashMap<Key, Outcome>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Outcome> eldest) {
+                if (size() > capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+        targets = new LinkedHashMap<Key, DFA>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, DFA> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Finds the shortest string a DFA gets wrong, as {@link DFA#findCounterexample(String)} does, unless a DFA with the
+     * same language was already checked against the regex.
+     *
+     * @param dfa The DFA to check. It isn't modified, but it mustn't be changed by another thread during the check.
+     * @param regex The regex the DFA should match.
+     * @return The counterexample, or null if the DFA matches the regex.
+     * @throws IllegalArgumentException If the regex can't be compiled.
+     * @throws CancellationException If the calling thread is interrupted during the check. Nothing is cached then.
+     */
+    public Counterexample findCounterexample(DFA dfa, String regex) {
+        return findCounterexample(dfa, regex, null);
+    }
+
+    /**
+     * Finds the shortest string a DFA gets wrong, like {@link #findCounterexample(DFA, String)}, for callers that have
+     * already compiled the regex.
+     *
+     * @param dfa The DFA to check. It isn't modified, but it mustn't be changed by another thread during the check.
+     * @param regex The regex the DFA should match, which outcomes are kept under.
+     * @param target The minimal DFA of the regex over the alphabet of the DFA, or null to compile it if it's needed.
+     * @return The counterexample, or null if the DFA matches the regex.
+     * @throws IllegalArgumentException If the regex has to be compiled and can't be.
+     * @throws CancellationException If the calling thread is interrupted during the check. Nothing is cached then.
+     */
+    public Counterexample findCounterexample(DFA dfa, String regex, DFA target) {
+        if (dfa.isNondeterministic()) {
+            synchronized (this) {
+                misses++;
+            }
+            return dfa.findCounterexample(target != null ? target : target(dfa.getAlphabet(), regex));
+        }
+
+        Key key = new Key(Fingerprint.of(dfa), regex);
+        synchronized (this) {
+            Outcome known = outcomes.get(key);
+            if (known != null) {
+                hits++;
+                return known.counterexample;
+            }
+            misses++;
+        }
+
+        Counterexample counterexample = dfa.findCounterexample(target != null ? target : target(dfa.getAlphabet(), regex));
+        synchronized (this) {
+            outcomes.put(key, new Outcome(counterexample));
+        }
+        return counterexample;
+    }
+
+    /**
+     * @return The minimal DFA of the regex over the alphabet, compiled on first use.
+     */
+    private DFA target(Alphabet alphabet, String regex) {
+        Key key = new Key(alphabet, regex);
+        synchronized (this) {
+            DFA target = targets.get(key);
+            if (target != null) {
+                return target;
+            }
+        }
+
+        DFA target = RegexCompiler.compile(regex, alphabet).minimize().getDFA();
+        synchronized (this) {
+            targets.put(key, target);
+        }
+        return target;
+    }
+
+    /**
+     * @return The number of checks answered from the cache.
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * @return The number of checks that had to be run.
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * @return The number of outcomes dropped to make room for newer ones.
+     */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * @return The share of checks answered from the cache, or 0 if there were none.
+     */
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * @return The number of outcomes held.
+     */
+    public synchronized int size() {
+        return outcomes.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d hits, %d misses (%.1f%% hit rate), %d evictions, %d held", hits, misses,
+                100 * getHitRate(), evictions, outcomes.size());
+    }
+
+    /**
+     * A language, or an alphabet, along with a regex.
+     */
+    private static final class Key {
+        private final Object language;
+        private final String regex;
+
+        Key(Object language, String regex) {
+            this.language = language;
+            this.regex = regex;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return language.equals(other.language) && regex.equals(other.regex);
+        }
+
+        @Override
+        public int hashCode() {
+            return new HashCodeBuilder(23, 53).append(language).append(regex).toHashCode();
+        }
+    }
+
+    /**
+     * The outcome of a check, which may be that there's no counterexample.
+     */
+    private static final class Outcome {
+        private final Counterexample counterexample;
+
+        Outcome(Counterexample counterexample) {
+            this.counterexample = counterexample;
+        }
+    }
+}
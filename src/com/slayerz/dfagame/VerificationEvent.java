@@ -0,0 +1,32 @@
+package com.slayerz.dfagame;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JFR event for every check of a DFA against a target language, so slow checks can be lined up with GC pauses and other
+ * activity in a flight recording. Costs next to nothing when no recording is running.
+ */
+@Name("com.slayerz.dfagame.Verification")
+@Label("DFA Verification")
+@Category("DFA Game")
+@Description("A DFA checked against a regex or another DFA")
+class VerificationEvent extends Event {
+
+    @Label("Method")
+    String method;
+
+    @Label("Regex")
+    @Description("The regex checked against, or null when checking against a DFA")
+    String regex;
+
+    @Label("States")
+    @Description("The number of states of the DFA being checked")
+    int states;
+
+    @Label("Matched")
+    boolean matched;
+}
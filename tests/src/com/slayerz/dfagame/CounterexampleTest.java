@@ -0,0 +1,129 @@
+package com.slayerz.dfagame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Checks {@link DFA#findCounterexample(String)} against brute force: trying every string in order of length, then in
+ * alphabet order, the first one the DFA and {@code java.util.regex} disagree on is the counterexample. DFAs are random, the
+ * regex's own DFA, or that DFA with one accept bit flipped, so there are both correct and incorrect ones.
+ */
+public class CounterexampleTest {
+
+    private static final String[] LEAVES = {"0", "1", ".", "[01]"};
+    private static final int CASES = 1500;
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        int correct = 0;
+        for (int i = 0; i < CASES; i++) {
+            String regex = randomRegex(1 + random.nextInt(6), random);
+            DFA target = RegexCompiler.compile(regex, DFA.ALPHABET);
+            DFA dfa;
+            switch (i % 3) {
+                case 0:
+                    dfa = randomDFA(1 + random.nextInt(6), random);
+                    break;
+                case 1:
+                    dfa = RegexCompiler.compile(regex, DFA.ALPHABET);
+                    break;
+                default:
+                    dfa = RegexCompiler.compile(regex, DFA.ALPHABET);
+                    List<State> states = new ArrayList<State>(dfa.getStates());
+                    dfa.toggleAccept(states.get(random.nextInt(states.size())));
+                    break;
+            }
+
+            // Equivalent DFAs have equal minimal forms, so strings up to their combined size tell any difference
+            String expected = firstDisagreement(dfa, Pattern.compile(regex),
+                    dfa.minimize().size() + target.minimize().size());
+            Counterexample found = dfa.findCounterexample(regex);
+            if (expected == null) {
+                check(found == null, "Found " + found + " for " + regex + " on a correct DFA");
+                correct++;
+            } else {
+                check(found != null, "Found nothing for " + regex + ", but the DFA gets \"" + expected + "\" wrong");
+                check(found.getString().equals(expected), "Found \"" + found.getString() + "\" for " + regex
+                        + " instead of \"" + expected + "\"");
+                check(found.isAcceptedByDFA() == dfa.acceptsString(expected), "Wrong side accepts \"" + expected + "\"");
+            }
+        }
+        check(correct > CASES / 10 && correct < CASES * 9 / 10, "Too few cases on one side: " + correct);
+        System.out.println("CounterexampleTest passed");
+    }
+
+    /**
+     * @return The first string in order of length and then alphabet order that the DFA gets wrong, or null if it gets
+     * every string up to the given length right.
+     */
+    private static String firstDisagreement(DFA dfa, Pattern pattern, int length) {
+        List<String> strings = new ArrayList<String>();
+        strings.add("");
+        for (int i = 0; i < strings.size(); i++) {
+            String s = strings.get(i);
+            if (dfa.acceptsString(s) != pattern.matcher(s).matches()) {
+                return s;
+            }
+            if (s.length() < length) {
+                for (char c : DFA.ALPHABET.toCharArray()) {
+                    strings.add(s + c);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Builds a DFA with random transitions and accept states, some of its rules missing.
+     */
+    private static DFA randomDFA(int size, Random random) {
+        DFA dfa = new DFA(0);
+        List<State> states = new ArrayList<State>();
+        states.add(dfa.getStart());
+        if (random.nextBoolean()) {
+            dfa.toggleAccept(dfa.getStart());
+        }
+        for (int i = 1; i < size; i++) {
+            states.add(dfa.addLaidOutState(random.nextBoolean()));
+        }
+        for (State q : states) {
+            State zero = random.nextInt(6) == 0 ? null : states.get(random.nextInt(size));
+            State one = random.nextInt(6) == 0 ? null : states.get(random.nextInt(size));
+            if (zero != null && zero == one) {
+                dfa.addTransition(q, zero, "01");
+            } else {
+                if (zero != null) {
+                    dfa.addTransition(q, zero, "0");
+                }
+                if (one != null) {
+                    dfa.addTransition(q, one, "1");
+                }
+            }
+        }
+        return dfa;
+    }
+
+    private static String randomRegex(int size, Random random) {
+        if (size <= 1) {
+            String leaf = LEAVES[random.nextInt(LEAVES.length)];
+            return random.nextInt(3) == 0 ? leaf + "*" : leaf;
+        }
+        int left = 1 + random.nextInt(size - 1);
+        switch (random.nextInt(3)) {
+            case 0:
+                return "(" + randomRegex(left, random) + "|" + randomRegex(size - left, random) + ")";
+            case 1:
+                return randomRegex(left, random) + randomRegex(size - left, random);
+            default:
+                return "(" + randomRegex(size - 1, random) + ")*";
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.slayerz.dfagame;
+
+import java.util.Random;
+
+/**
+ * Checks {@link Equivalence} against brute force on random pairs of small DFAs, some of them equivalent by construction.
+ * Two DFAs with n and m states, plus a dead state each, that disagree on some string already disagree on one of length at
+ * most n + m, so trying every string up to that length decides equivalence.
+ */
+public class EquivalenceTest {
+
+    private static final String ALPHABET = "01";
+    private static final int MAX_STATES = 6;
+    private static final int PAIRS = 3000;
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        int equivalent = 0;
+        for (int i = 0; i < PAIRS; i++) {
+            Automaton first = Automaton.random(1 + random.nextInt(MAX_STATES), random);
+            Automaton second;
+            switch (i % 3) {
+                case 0:
+                    second = Automaton.random(1 + random.nextInt(MAX_STATES), random);
+                    break;
+                case 1:
+                    second = first.split(random);
+                    break;
+                default:
+                    second = first.split(random).mutate(random);
+                    break;
+            }
+
+            boolean expected = agree(first, second, first.size() + second.size());
+            check(expected || i % 3 != 1, "A split copy should be equivalent to the original\n" + first + second);
+            check(Equivalence.equivalent(first.start(), first.delta, second.start(), second.delta) == expected,
+                    "Expected " + (expected ? "equivalent" : "different") + ":\n" + first + second);
+            check(Equivalence.equivalent(second.start(), second.delta, first.start(), first.delta) == expected,
+                    "Not symmetric:\n" + first + second);
+            if (expected) {
+                equivalent++;
+            }
+        }
+        check(equivalent > PAIRS / 10 && equivalent < PAIRS * 9 / 10, "Too few pairs on one side: " + equivalent);
+        System.out.println("EquivalenceTest passed");
+    }
+
+    /**
+     * @return True if both automata accept the same strings of up to the given length.
+     */
+    private static boolean agree(Automaton first, Automaton second, int length) {
+        int[] word = new int[length];
+        for (int n = 0; n <= length; n++) {
+            // Every string of length n in turn, counting in base |ALPHABET|
+            while (true) {
+                if (first.accepts(word, n) != second.accepts(word, n)) {
+                    return false;
+                }
+                int i = n - 1;
+                while (i >= 0 && word[i] == ALPHABET.length() - 1) {
+                    word[i--] = 0;
+                }
+                if (i < 0) {
+                    break;
+                }
+                word[i]++;
+            }
+        }
+        return true;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    /**
+     * A DFA kept both as a plain table, which the brute force runs on, and as a Delta, which Equivalence runs on.
+     */
+    private static final class Automaton {
+        /**
+         * The next state of every state on every symbol, or -1 for the dead state. State 0 is the start state.
+         */
+        private final int[][] next;
+        private final boolean[] accept;
+        private final State[] states;
+        private final Delta delta = new Delta();
+
+        Automaton(int[][] next, boolean[] accept) {
+            this.next = next;
+            this.accept = accept;
+            states = new State[next.length];
+            for (int i = 0; i < states.length; i++) {
+                states[i] = new State(accept[i], 0, 0);
+                delta.addState(states[i]);
+            }
+            for (int i = 0; i < states.length; i++) {
+                for (int c = 0; c < ALPHABET.length(); c++) {
+                    if (next[i][c] >= 0) {
+                        delta.addRule(new Transition(states[i], states[next[i][c]], String.valueOf(ALPHABET.charAt(c))));
+                    }
+                }
+            }
+        }
+
+        /**
+         * Builds a DFA with random transitions and accept states, some of its rules missing.
+         */
+        static Automaton random(int size, Random random) {
+            int[][] next = new int[size][ALPHABET.length()];
+            boolean[] accept = new boolean[size];
+            for (int i = 0; i < size; i++) {
+                accept[i] = random.nextBoolean();
+                for (int c = 0; c < ALPHABET.length(); c++) {
+                    next[i][c] = random.nextInt(8) == 0 ? -1 : random.nextInt(size);
+                }
+            }
+            return new Automaton(next, accept);
+        }
+
+        /**
+         * @return An equivalent DFA with two copies of every state, each transition going to either copy of its target.
+         */
+        Automaton split(Random random) {
+            int size = next.length;
+            int[][] twins = new int[2 * size][ALPHABET.length()];
+            boolean[] twinAccept = new boolean[2 * size];
+            for (int i = 0; i < 2 * size; i++) {
+                twinAccept[i] = accept[i % size];
+                for (int c = 0; c < ALPHABET.length(); c++) {
+                    int target = next[i % size][c];
+                    twins[i][c] = target < 0 ? -1 : target + (random.nextBoolean() ? size : 0);
+                }
+            }
+            return new Automaton(twins, twinAccept);
+        }
+
+        /**
+         * @return A copy with one accept bit flipped or one transition moved, which may or may not change the language.
+         */
+        Automaton mutate(Random random) {
+            int[][] changed = new int[next.length][];
+            for (int i = 0; i < next.length; i++) {
+                changed[i] = next[i].clone();
+            }
+            boolean[] changedAccept = accept.clone();
+            int q = random.nextInt(next.length);
+            if (random.nextBoolean()) {
+                changedAccept[q] = !changedAccept[q];
+            } else {
+                changed[q][random.nextInt(ALPHABET.length())] = random.nextInt(next.length + 1) - 1;
+            }
+            return new Automaton(changed, changedAccept);
+        }
+
+        State start() {
+            return states[0];
+        }
+
+        int size() {
+            return next.length;
+        }
+
+        boolean accepts(int[] word, int length) {
+            int q = 0;
+            for (int i = 0; i < length && q >= 0; i++) {
+                q = next[q][word[i]];
+            }
+            return q >= 0 && accept[q];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder s = new StringBuilder();
+            for (int i = 0; i < next.length; i++) {
+                s.append(accept[i] ? "accept q" : "state q").append(i);
+                for (int c = 0; c < ALPHABET.length(); c++) {
+                    s.append(' ').append(ALPHABET.charAt(c)).append("->").append(next[i][c] < 0 ? "dead" : "q" + next[i][c]);
+                }
+                s.append('\n');
+            }
+            return s.toString();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.slayerz.dfagame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Checks {@link LazyDFA} against plain set simulation of random NFAs with epsilon transitions, on every string up to a length and
+ * on longer random ones. Small caches are checked too, so that clearing the cache and falling back to set simulation are
+ * covered, along with the DFA {@link LazyDFA#toDFA()} determinizes the NFA into.
+ */
+public class LazyDFATest {
+
+    private static final String ALPHABET = "01";
+    private static final int NFAS = 500;
+    private static final int MAX_STATES = 7;
+    private static final int LENGTH = 7;
+    private static final int LONG_STRINGS = 20;
+    private static final int LONG_LENGTH = 60;
+    private static final int[] CACHE_SIZES = {2, 3, LazyDFA.DEFAULT_CACHE_SIZE};
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        int accepted = 0;
+        int total = 0;
+        long resets = 0;
+        long fallbacks = 0;
+        for (int run = 0; run < NFAS; run++) {
+            DFA nfa = randomNFA(random);
+            List<String> strings = new ArrayList<String>();
+            strings.add("");
+            for (int i = 0; strings.get(i).length() < LENGTH; i++) {
+                for (char c : ALPHABET.toCharArray()) {
+                    strings.add(strings.get(i) + c);
+                }
+            }
+            for (int i = 0; i < LONG_STRINGS; i++) {
+                StringBuilder s = new StringBuilder();
+                for (int j = random.nextInt(LONG_LENGTH); j > 0; j--) {
+                    s.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+                }
+                strings.add(s.toString());
+            }
+
+            DFA determinized = new LazyDFA(nfa, LazyDFA.DEFAULT_CACHE_SIZE).toDFA();
+            check(!determinized.isNondeterministic(), "toDFA() gave an NFA");
+            for (int cacheSize : CACHE_SIZES) {
+                LazyDFA lazy = new LazyDFA(nfa, cacheSize);
+                for (String s : strings) {
+                    boolean expected = simulate(nfa, s);
+                    check(lazy.matches(s) == expected, "matches(" + s + ") should be " + expected + " with a cache of "
+                            + cacheSize);
+                    check(lazy.simulate(s, 0, s.length()) == expected, "simulate(" + s + ") should be " + expected);
+                    String padded = "1" + s + "0";
+                    check(lazy.matches(padded, 1, padded.length() - 1) == expected, "matches(" + padded
+                            + ", 1, " + (padded.length() - 1) + ") should be " + expected);
+                    check(lazy.getCachedSetCount() <= cacheSize, "The cache grew past " + cacheSize);
+                }
+                resets += lazy.getResetCount();
+                fallbacks += lazy.getFallbackCount();
+            }
+            for (String s : strings) {
+                boolean expected = simulate(nfa, s);
+                check(nfa.acceptsString(s) == expected, "acceptsString(" + s + ") should be " + expected);
+                check(determinized.acceptsString(s) == expected, "toDFA() should " + (expected ? "" : "not ")
+                        + "accept " + s);
+                if (expected) {
+                    accepted++;
+                }
+                total++;
+            }
+        }
+        check(accepted > total / 10 && accepted < total * 9 / 10, "Too lopsided: " + accepted + " of " + total
+                + " accepted");
+        check(resets > 0, "The cache was never cleared");
+        check(fallbacks > 0, "Never fell back to set simulation");
+        System.out.println("LazyDFATest passed");
+    }
+
+    private static DFA randomNFA(Random random) {
+        int size = 1 + random.nextInt(MAX_STATES);
+        DFA nfa = new DFA(0, Alphabet.BINARY, true);
+        List<State> states = new ArrayList<State>();
+        states.add(nfa.getStart());
+        if (random.nextBoolean()) {
+            nfa.toggleAccept(nfa.getStart());
+        }
+        for (int i = 1; i < size; i++) {
+            states.add(nfa.addLaidOutState(random.nextInt(3) == 0));
+        }
+        String symbols = ALPHABET + DFA.EPSILON;
+        for (State from : states) {
+            for (State to : states) {
+                if (random.nextInt(size) > 1) {
+                    continue;
+                }
+                StringBuilder label = new StringBuilder();
+                for (char c : symbols.toCharArray()) {
+                    if (random.nextBoolean()) {
+                        label.append(c);
+                    }
+                }
+                if (label.length() > 0) {
+                    nfa.addTransition(from, to, label.toString());
+                }
+            }
+        }
+        return nfa;
+    }
+
+    /**
+     * @return Whether some run of the NFA on s ends in an accept state, following the transitions one state at a time.
+     */
+    private static boolean simulate(DFA nfa, String s) {
+        Set<State> current = closure(nfa, Collections.singleton(nfa.getStart()));
+        for (char c : s.toCharArray()) {
+            Set<State> next = new HashSet<State>();
+            for (State q : current) {
+                for (Transition t : nfa.getTransitionsFrom(q)) {
+                    if (t.getChars().indexOf(c) >= 0) {
+                        next.add(t.getEnd());
+                    }
+                }
+            }
+            current = closure(nfa, next);
+        }
+        for (State q : current) {
+            if (q.isAccept()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Set<State> closure(DFA nfa, Set<State> states) {
+        Set<State> closure = new HashSet<State>(states);
+        List<State> pending = new ArrayList<State>(states);
+        while (!pending.isEmpty()) {
+            State q = pending.remove(pending.size() - 1);
+            for (Transition t : nfa.getTransitionsFrom(q)) {
+                if (t.getChars().indexOf(DFA.EPSILON) >= 0 && closure.add(t.getEnd())) {
+                    pending.add(t.getEnd());
+                }
+            }
+        }
+        return closure;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.slayerz.dfagame;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that the matchers {@link MatcherCompiler} generates, the {@link TableMatcher} it falls back to and
+ * {@link DFA#acceptsString(String)} agree on random DFAs, both small enough to generate and too large to.
+ */
+public class MatcherCompilerTest {
+
+    private static final Alphabet ALPHABET = Alphabet.parse("a-e");
+
+    /**
+     * Read by no DFA, so it sends every one of them to the dead state.
+     */
+    private static final char OUTSIDE = 'z';
+
+    private static final int[] SIZES = {1, 2, 5, 50, 200, 2000};
+    private static final int SEEDS = 5;
+    private static final int STRINGS = 500;
+
+    public static void main(String[] args) {
+        boolean sawGenerated = false;
+        boolean sawTable = false;
+        for (int size : SIZES) {
+            for (long seed = 0; seed < SEEDS; seed++) {
+                Random random = new Random(31 * size + seed);
+                DFA dfa = randomDFA(size, random);
+                Matcher compiled = MatcherCompiler.compile(dfa);
+                Matcher table = MatcherCompiler.compile(dfa, false);
+                check(!table.isGenerated(), "Asked for a table but got a generated matcher");
+                sawGenerated |= compiled.isGenerated();
+                sawTable |= !compiled.isGenerated();
+
+                for (int i = 0; i < STRINGS; i++) {
+                    String s = randomString(random.nextInt(40), random);
+                    boolean expected = dfa.acceptsString(s);
+                    check(compiled, s, expected, size, seed);
+                    check(table, s, expected, size, seed);
+                }
+            }
+        }
+        check(sawGenerated, "No DFA was small enough to generate a matcher for");
+        check(sawTable, "No DFA was large enough to fall back to a table, raise the largest size past "
+                + MatcherCompiler.HUGE_METHOD_LIMIT + " bytes of code");
+        System.out.println("MatcherCompilerTest passed");
+    }
+
+    /**
+     * Runs every overload of a matcher on a string, whole and in two chunks.
+     */
+    private static void check(Matcher matcher, String s, boolean expected, int size, long seed) {
+        String where = (matcher.isGenerated() ? "Generated" : "Table") + " matcher of DFA " + size + "/" + seed + " on \""
+                + s + "\"";
+        char[] chars = s.toCharArray();
+        byte[] bytes = s.getBytes(StandardCharsets.ISO_8859_1);
+        int split = s.length() / 2;
+
+        check(matcher.matches(s) == expected, where);
+        check(matcher.matches(chars, 0, chars.length) == expected, where + " as char[]");
+        check(matcher.matches(bytes, 0, bytes.length) == expected, where + " as byte[]");
+        check(matcher.matches(ByteBuffer.wrap(bytes), 0, bytes.length) == expected, where + " as ByteBuffer");
+        check(matcher.isAccept(matcher.run(chars, split, chars.length, matcher.run(chars, 0, split, Matcher.START)))
+                == expected, where + " in chunks");
+    }
+
+    /**
+     * Builds a DFA over {@link #ALPHABET} with random transitions and accept states, some of them missing so the dead
+     * state is reached.
+     */
+    private static DFA randomDFA(int size, Random random) {
+        DFA dfa = new DFA(0, ALPHABET);
+        List<State> states = new ArrayList<State>();
+        states.add(dfa.getStart());
+        if (random.nextBoolean()) {
+            dfa.toggleAccept(dfa.getStart());
+        }
+        for (int i = 1; i < size; i++) {
+            states.add(dfa.addLaidOutState(random.nextBoolean()));
+        }
+        for (State q : states) {
+            for (int c = 0; c < ALPHABET.size(); c++) {
+                if (random.nextInt(10) > 0) {
+                    dfa.addTransition(q, states.get(random.nextInt(size)), String.valueOf(ALPHABET.charAt(c)));
+                }
+            }
+        }
+        return dfa;
+    }
+
+    private static String randomString(int length, Random random) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = random.nextInt(50) == 0 ? OUTSIDE : ALPHABET.charAt(random.nextInt(ALPHABET.size()));
+        }
+        return new String(chars);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
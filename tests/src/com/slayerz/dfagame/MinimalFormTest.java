@@ -0,0 +1,173 @@
+package com.slayerz.dfagame;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Checks {@link MinimalForm} against brute force on random DFAs with missing rules and unreachable states. Two states of a
+ * DFA with n states and a dead state that accept different strings already differ on one of length less than n, so the
+ * strings up to that length tell which states the minimal DFA must keep apart.
+ */
+public class MinimalFormTest {
+
+    private static final String ALPHABET = "01";
+    private static final int MAX_STATES = 7;
+    private static final int DFAS = 1500;
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        for (int i = 0; i < DFAS; i++) {
+            int size = 1 + random.nextInt(MAX_STATES);
+            int[][] next = new int[size][ALPHABET.length()];
+            boolean[] accept = new boolean[size];
+            for (int q = 0; q < size; q++) {
+                accept[q] = random.nextInt(3) == 0;
+                for (int c = 0; c < ALPHABET.length(); c++) {
+                    next[q][c] = random.nextInt(6) == 0 ? -1 : random.nextInt(size);
+                }
+            }
+            check(next, accept);
+        }
+        System.out.println("MinimalFormTest passed");
+    }
+
+    private static void check(int[][] next, boolean[] accept) {
+        List<State> states = new ArrayList<State>();
+        DFA dfa = build(next, accept, states);
+        MinimalForm minimal = dfa.minimize();
+        DFA min = minimal.getDFA();
+        String where = "\n" + describe(next, accept);
+
+        // The language is kept
+        int length = next.length + min.getStates().size();
+        for (String s : strings(length)) {
+            check(min.acceptsString(s) == dfa.acceptsString(s), "The minimal DFA disagrees on \"" + s + "\"" + where);
+        }
+
+        // States are merged exactly when no string tells them apart, and dead states are left out
+        boolean[] reachable = reachable(next);
+        Map<String, State> classes = new HashMap<String, State>();
+        for (int q = 0; q < next.length; q++) {
+            String signature = signature(next, accept, q);
+            State merged = minimal.classOf(states.get(q));
+            if (q == 0) {
+                check(merged == min.getStart(), "The start state isn't merged into the start state" + where);
+            }
+            if (q == 0 && !signature.contains("1")) {
+                // The empty language, which is the lone start state
+                continue;
+            }
+            if (!reachable[q] || !signature.contains("1")) {
+                check(merged == null, "State " + q + " is unreachable or dead but has a class" + where);
+                continue;
+            }
+            check(merged != null, "State " + q + " has no class" + where);
+            if (classes.containsKey(signature)) {
+                check(classes.get(signature) == merged, "State " + q + " wasn't merged with its equal" + where);
+            } else {
+                check(!classes.containsValue(merged), "State " + q + " was merged with a different state" + where);
+                classes.put(signature, merged);
+            }
+        }
+        // The start state stays even when its language is empty
+        check(minimal.size() == Math.max(1, classes.size()), "Expected " + classes.size() + " states but got "
+                + minimal.size() + where);
+        check(min.minimize().size() == minimal.size(), "Minimizing again changed the size" + where);
+    }
+
+    /**
+     * Builds the DFA, putting all the symbols that lead from one state to another on a single transition.
+     */
+    private static DFA build(int[][] next, boolean[] accept, List<State> states) {
+        DFA dfa = new DFA(0);
+        states.add(dfa.getStart());
+        if (accept[0]) {
+            dfa.toggleAccept(dfa.getStart());
+        }
+        for (int q = 1; q < next.length; q++) {
+            states.add(dfa.addLaidOutState(accept[q]));
+        }
+        for (int q = 0; q < next.length; q++) {
+            Map<Integer, String> labels = new LinkedHashMap<Integer, String>();
+            for (int c = 0; c < ALPHABET.length(); c++) {
+                if (next[q][c] >= 0) {
+                    String label = labels.containsKey(next[q][c]) ? labels.get(next[q][c]) : "";
+                    labels.put(next[q][c], label + ALPHABET.charAt(c));
+                }
+            }
+            for (Map.Entry<Integer, String> label : labels.entrySet()) {
+                dfa.addTransition(states.get(q), states.get(label.getKey()), label.getValue());
+            }
+        }
+        return dfa;
+    }
+
+    private static boolean[] reachable(int[][] next) {
+        boolean[] seen = new boolean[next.length];
+        List<Integer> queue = new ArrayList<Integer>();
+        seen[0] = true;
+        queue.add(0);
+        for (int i = 0; i < queue.size(); i++) {
+            for (int target : next[queue.get(i)]) {
+                if (target >= 0 && !seen[target]) {
+                    seen[target] = true;
+                    queue.add(target);
+                }
+            }
+        }
+        return seen;
+    }
+
+    /**
+     * @return Whether q leads to acceptance on each string shorter than the number of states, as a string of 0s and 1s.
+     */
+    private static String signature(int[][] next, boolean[] accept, int q) {
+        StringBuilder signature = new StringBuilder();
+        for (String s : strings(next.length - 1)) {
+            int p = q;
+            for (int i = 0; i < s.length() && p >= 0; i++) {
+                p = next[p][ALPHABET.indexOf(s.charAt(i))];
+            }
+            signature.append(p >= 0 && accept[p] ? '1' : '0');
+        }
+        return signature.toString();
+    }
+
+    /**
+     * @return Every string over the alphabet of up to the given length, shortest first.
+     */
+    private static List<String> strings(int length) {
+        List<String> strings = new ArrayList<String>();
+        strings.add("");
+        for (int i = 0; i < strings.size(); i++) {
+            if (strings.get(i).length() < length) {
+                for (char c : ALPHABET.toCharArray()) {
+                    strings.add(strings.get(i) + c);
+                }
+            }
+        }
+        return strings;
+    }
+
+    private static String describe(int[][] next, boolean[] accept) {
+        StringBuilder s = new StringBuilder();
+        for (int q = 0; q < next.length; q++) {
+            s.append(accept[q] ? "accept q" : "state q").append(q);
+            for (int c = 0; c < ALPHABET.length(); c++) {
+                s.append(' ').append(ALPHABET.charAt(c)).append("->").append(next[q][c] < 0 ? "dead" : "q" + next[q][c]);
+            }
+            s.append('\n');
+        }
+        return s.toString();
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
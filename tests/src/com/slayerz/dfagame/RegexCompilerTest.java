@@ -0,0 +1,88 @@
+package com.slayerz.dfagame;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Checks that DFAs compiled by {@link RegexCompiler} accept exactly the strings {@code java.util.regex} matches, on fixed
+ * edge cases and random regexes over the game alphabet, for every string up to {@link #LENGTH} symbols.
+ */
+public class RegexCompilerTest {
+
+    private static final String[] FIXED = {
+            "", "0", "0*", "(0|1)*", "(0|1)*1(0|1){3}", "(?:01)*", "[^1]*", ".?1+", "0{2,}1{0,2}", "((0*)*|1)+",
+            "[0-1]{3}", "(0|)1", "()*",
+    };
+
+    private static final String[] LEAVES = {"0", "1", ".", "[01]", "[^0]", "[^1]", "[0-1]"};
+    private static final int REGEXES = 1500;
+    private static final int LENGTH = 8;
+
+    public static void main(String[] args) {
+        for (String regex : FIXED) {
+            check(regex);
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < REGEXES; i++) {
+            check(randomRegex(1 + random.nextInt(8), random));
+        }
+        System.out.println("RegexCompilerTest passed");
+    }
+
+    private static void check(String regex) {
+        DFA dfa = RegexCompiler.compile(regex, DFA.ALPHABET);
+        Pattern pattern = Pattern.compile(regex);
+        for (int length = 0; length <= LENGTH; length++) {
+            for (int bits = 0; bits < 1 << length; bits++) {
+                StringBuilder s = new StringBuilder();
+                for (int i = length - 1; i >= 0; i--) {
+                    s.append(DFA.ALPHABET.charAt((bits >> i) & 1));
+                }
+                boolean expected = pattern.matcher(s).matches();
+                if (dfa.acceptsString(s.toString()) != expected) {
+                    throw new AssertionError("The DFA of " + regex + (expected ? " rejects " : " accepts ") + "\"" + s
+                            + "\"");
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds a random regex. Quantifiers are never stacked directly, since {@code java.util.regex} reads {@code 0*+} as a
+     * possessive star rather than a repeated one.
+     */
+    private static String randomRegex(int size, Random random) {
+        if (size <= 1) {
+            return quantify(LEAVES[random.nextInt(LEAVES.length)], random);
+        }
+        int left = 1 + random.nextInt(size - 1);
+        switch (random.nextInt(3)) {
+            case 0:
+                return "(" + randomRegex(left, random) + "|" + randomRegex(size - left, random) + ")";
+            case 1:
+                return randomRegex(left, random) + randomRegex(size - left, random);
+            default:
+                return quantify((random.nextBoolean() ? "(" : "(?:") + randomRegex(size - 1, random) + ")", random);
+        }
+    }
+
+    private static String quantify(String atom, Random random) {
+        int min = random.nextInt(3);
+        switch (random.nextInt(8)) {
+            case 0:
+                return atom + "*";
+            case 1:
+                return atom + "+";
+            case 2:
+                return atom + "?";
+            case 3:
+                return atom + "{" + min + "}";
+            case 4:
+                return atom + "{" + min + ",}";
+            case 5:
+                return atom + "{" + min + "," + (min + random.nextInt(3)) + "}";
+            default:
+                return atom;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.slayerz.dfagame;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+/**
+ * Checks that DFAs written by {@link SubmissionFormat} read back the same, including over alphabets with characters that
+ * have to be escaped to survive the format's splitting on whitespace, and NFAs with epsilon transitions.
+ */
+public class SubmissionFormatTest {
+
+    private static final Alphabet[] ALPHABETS = {
+            Alphabet.BINARY,
+            Alphabet.range('a', 'c').union(Alphabet.ofChars(" ")),
+            Alphabet.ofChars("\t\n\r "),
+            Alphabet.ofChars("-\\"),
+            Alphabet.range('\u0000', '\u001f'),
+            Alphabet.ofChars("\u00a0\u2028\u3000"),
+            Alphabet.range('!', '~'),
+    };
+
+    public static void main(String[] args) throws IOException {
+        for (Alphabet alphabet : ALPHABETS) {
+            String spec = alphabet.toString();
+            check(Alphabet.parse(spec).equals(alphabet), "Alphabet " + spec + " doesn't parse back");
+
+            DFA dfa = new DFA(0, alphabet);
+            State accept = dfa.addLaidOutState(true);
+            dfa.addTransition(dfa.getStart(), accept, spec);
+            dfa.addTransition(accept, dfa.getStart(), spec);
+
+            StringWriter out = new StringWriter();
+            SubmissionFormat.write(dfa, out);
+            DFA read = SubmissionFormat.read(new StringReader(out.toString()));
+            check(read.getAlphabet().equals(alphabet), "Alphabet " + spec + " changed in\n" + out);
+            check(read.getStates().size() == 2, "States lost in\n" + out);
+            for (State q : read.getStates()) {
+                for (Transition t : read.getTransitionsFrom(q)) {
+                    check(Alphabet.parse(t.getChars()).equals(alphabet), "Transition on " + spec + " changed in\n" + out);
+                }
+            }
+        }
+
+        // Guesses which 1 to move on and then moves on epsilon, so it only survives if the nfa declaration does
+        DFA nfa = new DFA(0, Alphabet.BINARY, true);
+        State second = nfa.addLaidOutState(false);
+        State last = nfa.addLaidOutState(false);
+        State end = nfa.addLaidOutState(true);
+        nfa.addTransition(nfa.getStart(), nfa.getStart(), "01");
+        nfa.addTransition(nfa.getStart(), second, "1");
+        nfa.addTransition(second, last, String.valueOf(DFA.EPSILON));
+        nfa.addTransition(last, end, "01");
+        nfa.addTransition(end, end, "0");
+
+        StringWriter out = new StringWriter();
+        SubmissionFormat.write(nfa, out);
+        DFA read = SubmissionFormat.read(new StringReader(out.toString()));
+        check(read.isNondeterministic(), "The NFA was read back as a DFA from\n" + out);
+        check(read.getStates().size() == 4, "States lost in\n" + out);
+        check(read.isEquivalentTo(nfa), "The NFA changed in\n" + out);
+        System.out.println("SubmissionFormatTest passed");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
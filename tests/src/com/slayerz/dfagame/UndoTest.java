@@ -0,0 +1,129 @@
+package com.slayerz.dfagame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks undo and redo against a record of the DFA after every edit. Random sequences of edits add and remove states,
+ * add transitions and toggle accept states, running past the history limit. Everything is then undone one edit at a
+ * time, redone, and finally half undone before a new edit, which should forget the rest.
+ */
+public class UndoTest {
+
+    private static final String[] LABELS = {"0", "1", "01"};
+    private static final int RUNS = 300;
+    private static final int LIMIT = 100;
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        int longest = 0;
+        for (int run = 0; run < RUNS; run++) {
+            DFA dfa = new DFA(0);
+            // Every state ever added, so states brought back by undo keep their place in the record
+            List<State> created = new ArrayList<State>();
+            created.add(dfa.getStart());
+            List<String> history = new ArrayList<String>();
+            history.add(describe(dfa, created));
+
+            int edits = random.nextInt(2 * LIMIT);
+            for (int edit = 0; edit < edits; edit++) {
+                int version = dfa.getVersion();
+                edit(dfa, created, random);
+                if (dfa.getVersion() != version) {
+                    history.add(describe(dfa, created));
+                }
+            }
+            int undoable = Math.min(history.size() - 1, LIMIT);
+            longest = Math.max(longest, undoable);
+
+            int at = history.size() - 1;
+            for (int i = 0; i < undoable; i++) {
+                check(dfa.undo(), "Undo " + i + " of " + undoable + " failed");
+                at--;
+                expect(dfa, created, history.get(at), "after undo " + i);
+            }
+            check(!dfa.undo(), "Undid more than " + undoable + " edits");
+            for (int i = 0; i < undoable; i++) {
+                check(dfa.redo(), "Redo " + i + " of " + undoable + " failed");
+                at++;
+                expect(dfa, created, history.get(at), "after redo " + i);
+            }
+            check(!dfa.redo(), "Redid more than " + undoable + " edits");
+
+            for (int i = 0; i < undoable / 2; i++) {
+                dfa.undo();
+            }
+            int version = dfa.getVersion();
+            while (dfa.getVersion() == version) {
+                edit(dfa, created, random);
+            }
+            check(!dfa.redo(), "An edit after undo should leave nothing to redo");
+            String edited = describe(dfa, created);
+            check(dfa.undo(), "The edit after undo could not be undone");
+            expect(dfa, created, history.get(history.size() - 1 - undoable / 2), "after undoing the new edit");
+            check(dfa.redo(), "The edit after undo could not be redone");
+            expect(dfa, created, edited, "after redoing the new edit");
+        }
+        check(longest == LIMIT, "No run went past the history limit");
+        System.out.println("UndoTest passed");
+    }
+
+    private static void edit(DFA dfa, List<State> created, Random random) {
+        List<State> states = new ArrayList<State>(dfa.getStates());
+        int choice = random.nextInt(10);
+        if (choice < 2) {
+            State q = new State(false, dfa.BOX_DIM, dfa.STATE_RAD);
+            if (dfa.addState(1 + random.nextInt(4), 1 + random.nextInt(5), q)) {
+                created.add(q);
+            }
+        } else if (choice < 3) {
+            dfa.removeState(dfa.locateState(states.get(random.nextInt(states.size()))));
+        } else if (choice < 5) {
+            dfa.toggleAccept(states.get(random.nextInt(states.size())));
+        } else {
+            State from = states.get(random.nextInt(states.size()));
+            State to = states.get(random.nextInt(states.size()));
+            dfa.addTransition(from, to, LABELS[random.nextInt(LABELS.length)]);
+        }
+    }
+
+    private static void expect(DFA dfa, List<State> created, String expected, String when) {
+        String actual = describe(dfa, created);
+        check(actual.equals(expected), "Expected " + expected + " " + when + " but was " + actual);
+        // Which of two rules for a character wins isn't kept by a snapshot, so only valid DFAs can be compared
+        check(!dfa.isValid() || dfa.isEquivalentTo(dfa.snapshot()), "The snapshot disagrees with the DFA " + when);
+    }
+
+    /**
+     * @return Each state of the DFA by the order it was added in, with its location, whether it accepts, and its
+     * transitions.
+     */
+    private static String describe(DFA dfa, List<State> created) {
+        StringBuilder description = new StringBuilder();
+        for (int i = 0; i < created.size(); i++) {
+            State q = created.get(i);
+            DFA.Coord at = dfa.locateState(q);
+            if (at == null) {
+                continue;
+            }
+            description.append(i).append('@').append(at.getR()).append(',').append(at.getC());
+            description.append(q.isAccept() ? "+" : "").append(" {");
+            for (int j = 0; j < created.size(); j++) {
+                for (Transition t : dfa.getTransitionsFrom(q)) {
+                    if (t.getEnd() == created.get(j)) {
+                        description.append(' ').append(j).append(':').append(t.getChars());
+                    }
+                }
+            }
+            description.append(" } ");
+        }
+        return description.toString();
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.slayerz.dfagame;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Checks the validity a DFA keeps track of as it's edited against a count made from scratch after every edit. Random
+ * sequences of edits add and remove states and add transitions, including ones that make a state nondeterministic.
+ */
+public class ValidityTest {
+
+    private static final String ALPHABET = "01";
+    private static final String[] LABELS = {"0", "1", "01"};
+    private static final int RUNS = 200;
+    private static final int EDITS = 100;
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        int valid = 0;
+        for (int run = 0; run < RUNS; run++) {
+            DFA dfa = new DFA(0);
+            List<State> states = new ArrayList<State>();
+            states.add(dfa.getStart());
+            // The transitions added, as (from, to, label), which a state's removal takes with it
+            List<Object[]> transitions = new ArrayList<Object[]>();
+            int column = 1;
+
+            for (int edit = 0; edit < EDITS; edit++) {
+                int choice = random.nextInt(10);
+                if (choice < 1 || states.size() == 1) {
+                    State q = new State(false, dfa.BOX_DIM, dfa.STATE_RAD);
+                    dfa.addState(2, ++column, q);
+                    states.add(q);
+                } else if (choice < 2) {
+                    // Never the start state, which can't be removed
+                    State q = states.remove(1 + random.nextInt(states.size() - 1));
+                    dfa.removeState(dfa.locateState(q));
+                    for (int i = transitions.size() - 1; i >= 0; i--) {
+                        if (transitions.get(i)[0] == q || transitions.get(i)[1] == q) {
+                            transitions.remove(i);
+                        }
+                    }
+                } else {
+                    State from = states.get(random.nextInt(states.size()));
+                    State to = states.get(random.nextInt(states.size()));
+                    if (!connected(transitions, from, to)) {
+                        String label = LABELS[random.nextInt(LABELS.length)];
+                        dfa.addTransition(from, to, label);
+                        transitions.add(new Object[]{from, to, label});
+                    }
+                }
+                check(dfa, states, transitions);
+                if (dfa.isValid()) {
+                    valid++;
+                }
+            }
+        }
+        check(valid > RUNS, "Too few edits left the DFA valid: " + valid);
+        System.out.println("ValidityTest passed");
+    }
+
+    private static boolean connected(List<Object[]> transitions, State from, State to) {
+        for (Object[] t : transitions) {
+            if (t[0] == from && t[1] == to) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void check(DFA dfa, List<State> states, List<Object[]> transitions) {
+        Map<State, String> missing = new HashMap<State, String>();
+        Map<State, String> duplicates = new HashMap<State, String>();
+        for (State q : states) {
+            StringBuilder lacking = new StringBuilder();
+            StringBuilder repeated = new StringBuilder();
+            for (char c : ALPHABET.toCharArray()) {
+                int count = 0;
+                for (Object[] t : transitions) {
+                    if (t[0] == q && ((String) t[2]).indexOf(c) >= 0) {
+                        count++;
+                    }
+                }
+                if (count == 0) {
+                    lacking.append(c);
+                } else if (count > 1) {
+                    repeated.append(c);
+                }
+            }
+            if (lacking.length() > 0) {
+                missing.put(q, lacking.toString());
+            }
+            if (repeated.length() > 0) {
+                duplicates.put(q, repeated.toString());
+            }
+        }
+
+        check(dfa.isValid() == (missing.isEmpty() && duplicates.isEmpty()), "isValid() is " + dfa.isValid()
+                + " with missing " + missing.values() + " and duplicate " + duplicates.values());
+        check(dfa.getMissingTransitions().equals(missing), "Missing " + dfa.getMissingTransitions().values()
+                + " instead of " + missing.values());
+        check(dfa.getDuplicateTransitions().equals(duplicates), "Duplicate " + dfa.getDuplicateTransitions().values()
+                + " instead of " + duplicates.values());
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}